@@ -0,0 +1,39 @@
+import java.util.Objects;
+
+/**
+ * Checks.java
+ * The failing checks used by the self-check main methods, e.g. java DoseCounts.
+ *
+ * A check that does not hold throws an AssertionError naming what was checked, so a main
+ * that finishes without one has passed. Unlike the assert statement these run without -ea.
+ *
+ * @author Milo Keys
+ * @version October 18, 2026
+ */
+final class Checks {
+    private Checks() {
+    }
+
+    /**
+     * @param condition what should hold
+     * @param what a description of the check, for the error
+     * @throws AssertionError if the condition is false
+     */
+    static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError("Check failed: " + what);
+        }
+    }
+
+    /**
+     * @param expected the expected value
+     * @param actual the value found
+     * @param what a description of the value, for the error
+     * @throws AssertionError if the values differ
+     */
+    static void checkEquals(Object expected, Object actual, String what) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError("Check failed: " + what + ": expected " + expected + " but was " + actual);
+        }
+    }
+}
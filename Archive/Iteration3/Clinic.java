@@ -1,3 +1,6 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Date;
 
 /**
@@ -11,6 +14,11 @@ public class Clinic {
     private ClinicModel model;
     private ClinicView view;
     private ClinicController controller;
+    private ClinicStore store;
+    private ReminderScheduler reminders;
+    // Reminders are checked hourly, the first time a minute after startup
+    private static final int REMINDER_DELAY_MS = 60 * 1000;
+    private static final int REMINDER_PERIOD_MS = 60 * 60 * 1000;
 
     /**
      * Constructs a new Clinic with default values.
@@ -31,6 +39,39 @@ public class Clinic {
         this.controller = new ClinicController(model, view);
     }
 
+    /**
+     * Constructs a Clinic whose register is kept on disk in the given directory.
+     * The saved register is loaded on startup and every change is logged as it happens.
+     * Reminders of due doses are sent on a timer, written to files in a reminders
+     * folder of the directory, until the clinic shuts down.
+     * 
+     * @param name The name of the clinic
+     * @param address The physical address of the clinic
+     * @param dataDirectory The directory to keep the register in
+     * @throws IOException if the saved register or the reminder ledger cannot be read
+     */
+    public Clinic(String name, String address, Path dataDirectory) throws IOException {
+        this(name, address);
+        this.store = new ClinicStore(dataDirectory);
+        store.load(model);
+        this.reminders = new ReminderScheduler(model, new FileReminderSender(dataDirectory.resolve("reminders")),
+                dataDirectory.resolve("reminders.ledger"));
+        reminders.start(REMINDER_DELAY_MS, REMINDER_PERIOD_MS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                reminders.close();
+            } catch (IOException e) {
+                System.err.println("Could not save reminder ledger: " + e.getMessage());
+            }
+            try {
+                store.close();
+            } catch (IOException e) {
+                System.err.println("Could not save clinic register: " + e.getMessage());
+            }
+        }));
+        controller.refreshView();
+    }
+
     /**
      * Gets the clinic name.
      * 
@@ -123,13 +164,20 @@ public class Clinic {
      * 
      * @param args Command line arguments (not used)
      */
-    public static void main(String[] args) {
-        // Create a Clinic instance
-        Clinic clinic = new Clinic("City Clinic", "123 Main Street");
+    public static void main(String[] args) throws IOException {
+        // Create a Clinic instance, keeping its register in ./clinic-data
+        Clinic clinic = new Clinic("City Clinic", "123 Main Street", Paths.get("clinic-data"));
         
+        // Only seed the sample data the first time, later runs load it from disk
+        if (clinic.model.getPatientCount() > 0) {
+            System.out.println(clinic);
+            clinic.view.show();
+            return;
+        }
+
         // Demonstrate operations
         clinic.getImmunizationReport();
-        
+
         // Create and add a sample monthly return
         Return april = new Return(
             "City Clinic", "Metro Zone", "Central Region", "April 2025",
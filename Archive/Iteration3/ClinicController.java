@@ -1,10 +1,18 @@
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.text.ParseException;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 
 /**
  * The Controller component of the Clinic MVC architecture.
@@ -16,6 +24,10 @@ import javax.swing.JOptionPane;
 class ClinicController {
     private ClinicModel model;
     private ClinicView view;
+    // The visits currently shown in the visits table, so a selected row maps back to its Visit
+    private ArrayList<Visit> shownVisits = new ArrayList<>();
+    // True when the visits table is out of date; it is filled again when the visits tab is shown
+    private boolean visitsStale = true;
 
     /**
      * Constructs a new ClinicController with specified model and view.
@@ -27,8 +39,15 @@ class ClinicController {
         this.model = model;
         this.view = view;
         view.controller = this;
+        view.setInventories(model.getVaccineInventory(), model.getVitaminInventory());
+        view.setPatients(model);
         CreatePatientButtonListener();
         CreateVisitButtonListener();
+        view.addTabChangeListener(e -> {
+            if (visitsStale && view.isVisitsTabSelected()) {
+                showVisits(model.getVisits());
+            }
+        });
     }
 
     /**
@@ -47,8 +66,11 @@ class ClinicController {
         @Override
         public void actionPerformed(ActionEvent e) {
                 String selectedPatientID = view.getSelectedPatientId();
-                //one liner to find the first patient that matchs the ID
                 ImmunizationPatient PatientToBeRemoved = model.getPatientByPatientID(selectedPatientID);
+                if (PatientToBeRemoved == null) {
+                    view.displayMessage("No patient selected.");
+                    return;
+                }
 
                 int response = JOptionPane.showConfirmDialog(
                     null,
@@ -65,17 +87,72 @@ class ClinicController {
         }
         );
 
+        view.addImportPatientsButtonListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                File file = view.chooseRegisterFile();
+                if (file != null) {
+                    importRegister(file);
+                }
+            }
+        });
+
         view.addSearchPatientButtonListener((ActionListener) new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
                 if (view.getSearchText() != null) {
-                    ImmunizationPatient p = model.getPatientByPatientID(view.getSearchText());
+                    view.filterPatients(view.getSearchText());
+                    ImmunizationPatient p = model.findPatient(view.getSearchText().trim());
                     view.showSearchResult(p);
                 }
             }
         }
         );
     }
+    /**
+     * Imports a register file in the background. Chunks of the file are parsed in
+     * parallel off the event thread and each chunk is added to the model, in file
+     * order, on the event thread as it arrives. The import waits for each chunk to
+     * be added before handing over the next, so a busy event thread holds back the
+     * parsing instead of letting parsed chunks pile up.
+     * 
+     * @param file the register text file
+     */
+    public void importRegister(File file) {
+        view.setImportEnabled(false);
+        new SwingWorker<RegisterImporter.ImportReport, Void>() {
+            private int duplicates;
+
+            @Override
+            protected RegisterImporter.ImportReport doInBackground() throws Exception {
+                return new RegisterImporter().importParallel(file.toPath(), RegisterImporter.DEFAULT_CHUNK_BYTES,
+                        ForkJoinPool.commonPool(), batch -> addOnEventThread(batch));
+            }
+
+            private void addOnEventThread(List<ImmunizationPatient> batch) {
+                try {
+                    SwingUtilities.invokeAndWait(() -> duplicates += batch.size() - model.addPatients(batch));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Register import interrupted");
+                } catch (InvocationTargetException e) {
+                    throw new IllegalStateException("Could not add imported patients", e.getCause());
+                }
+            }
+
+            @Override
+            protected void done() {
+                view.setImportEnabled(true);
+                try {
+                    RegisterImporter.ImportReport report = get();
+                    view.displayMessage(report + (duplicates > 0 ? "\n" + duplicates + " already registered" : ""));
+                } catch (Exception error) {
+                    view.displayMessage("Failed to import register: " + error.getMessage());
+                }
+            }
+        }.execute();
+    }
+
     /**
      * Creates the ActionListeners required for patient tab's buttons,
      */
@@ -94,8 +171,8 @@ class ClinicController {
             @Override
             public void actionPerformed(ActionEvent e) {
                 int selectedIndex = view.getSelectedVisitIndex();
-                if (selectedIndex >= 0) {
-                    Visit visitToRemove = model.getVisits().get(selectedIndex);
+                if (selectedIndex >= 0 && selectedIndex < shownVisits.size()) {
+                    Visit visitToRemove = shownVisits.get(selectedIndex);
                     int response = JOptionPane.showConfirmDialog(
                         null,
                         "Are you sure you want to delete this visit?\n" +
@@ -106,8 +183,8 @@ class ClinicController {
                         JOptionPane.WARNING_MESSAGE
                     );
                     if (response == JOptionPane.YES_OPTION) {
-                        model.getVisits().remove(selectedIndex);
-                        view.updateVisitsTable(model.getVisits());
+                        model.removeVisit(visitToRemove);
+                        showVisits(model.getVisits());
                         view.displayMessage("Visit deleted successfully.");
                     }
                 } else {
@@ -123,8 +200,7 @@ class ClinicController {
                 if (searchText != null && !searchText.isEmpty()) {
                     if (searchText.contains("/")) {
                         try {
-                            var date = ClinicView.dateFormat.parse(searchText);
-                            view.updateVisitsTable((ArrayList<Visit>) model.getVisitByDate(date, ClinicView.dateFormat));
+                            showVisits(searchVisitsByDate(searchText.trim()));
                         } catch (Exception error) {
                             JOptionPane.showMessageDialog(
                                 null,
@@ -135,17 +211,62 @@ class ClinicController {
                         }
                     }
                     else {
-                        List<Visit> filteredVisits = model.getVisits().stream()
-                        .filter(v -> v.getPatient().getPatientId().equals(searchText))
-                        .collect(Collectors.toList());
-                        view.updateVisitsTable((ArrayList<Visit>) filteredVisits);
+                        showVisits(model.getVisitsByPatientID(searchText.trim()));
                     }
                 } else {
-                    view.updateVisitsTable(model.getVisits());
+                    showVisits(model.getVisits());
                 }
             }
         });
     }
+
+    /**
+     * Looks up visits from the visits-tab search text. Accepts a single day
+     * (dd/MM/yyyy), a month (MM/yyyy) or a range (dd/MM/yyyy - dd/MM/yyyy).
+     * 
+     * @param searchText the text entered in the search field
+     * @return the matching visits in date order
+     * @throws ParseException if the text is not one of the accepted formats
+     */
+    private ArrayList<Visit> searchVisitsByDate(String searchText) throws ParseException {
+        if (searchText.contains("-")) {
+            String[] range = searchText.split("-");
+            if (range.length != 2) {
+                throw new ParseException(searchText, 0);
+            }
+            Date from = ClinicView.dateFormat.parse(range[0].trim());
+            Date to = ClinicView.dateFormat.parse(range[1].trim());
+            return model.getVisitsBetween(from, to);
+        }
+        String[] parts = searchText.split("/");
+        if (parts.length == 2) {
+            return model.getVisitsInMonth(Integer.parseInt(parts[1].trim()), Integer.parseInt(parts[0].trim()));
+        }
+        return model.getVisitsOnDay(ClinicView.dateFormat.parse(searchText));
+    }
+
+    /**
+     * Shows a list of visits in the visits table and remembers it for row selection.
+     * 
+     * @param visits the visits to show
+     */
+    private void showVisits(ArrayList<Visit> visits) {
+        visitsStale = false;
+        shownVisits = new ArrayList<>(visits);
+        view.updateVisitsTable(shownVisits);
+    }
+    /**
+     * Shows every visit in the visits table if it is on screen, or leaves the table to be
+     * filled when the visits tab is next shown, so the visits are only built when needed.
+     */
+    private void refreshVisits() {
+        if (view.isVisitsTabSelected()) {
+            showVisits(model.getVisits());
+        } else {
+            visitsStale = true;
+        }
+    }
+
     /**
      * Finds a Patient by their patientID
      * Facade
@@ -174,24 +295,22 @@ class ClinicController {
      * @param patient The patient to add
      */
     public void addNewPatient(ImmunizationPatient patient) {
-        if (patient != null) {
-            model.addPatient(patient);
+        if (patient != null && model.addPatient(patient)) {
             view.displayMessage("Patient added successfully.");
-            view.updatePatientsTable(model.getPatients());
         } else {
             view.displayMessage("Failed to add patient.");
         }
     }
 
     /**
-     * Adds a new patient to the clinic.
+     * Removes a patient, and their visits, from the clinic.
      * 
-     * @param patient The patient to add
+     * @param patient The patient to remove
      */
     public void removePatient(ImmunizationPatient patient) {
         if (model.removePatient(patient)) {
             view.displayMessage("Patient removed successfully.");
-            view.updatePatientsTable(model.getPatients());
+            refreshVisits();
         } else {
             view.displayMessage("Failed to removed patient.");
         }
@@ -204,8 +323,17 @@ class ClinicController {
      */
     public void recordNewVisit(Visit visit) {
         model.addVisit(visit);
-        view.updateVisitsTable(model.getVisits());
-        view.displayMessage("Visit recorded successfully.");
+        refreshVisits();
+
+        // Take the administered doses out of stock
+        Inventory inventory = model.getVaccineInventory();
+        StringBuilder shortages = new StringBuilder();
+        for (Vaccine vaccine : visit.getDosesAdministered()) {
+            if (inventory.contains(vaccine.getID()) && !inventory.consume(vaccine.getID(), 1)) {
+                shortages.append("\n").append(vaccine.getName()).append(" is out of stock.");
+            }
+        }
+        view.displayMessage("Visit recorded successfully." + shortages);
     }
 
     /**
@@ -227,7 +355,27 @@ class ClinicController {
     public void generateImmunizationReport() {
         StringBuilder report = new StringBuilder();
         report.append("Clinic Immunization Report for ").append(model.getName()).append(":\n");
-        report.append("No immunizations recorded.\n");
+
+        List<Vaccine> vaccines = model.getVaccineCatalogue().getVaccines();
+        if (model.getPatientCount() == 0 || vaccines.isEmpty()) {
+            report.append("No immunizations recorded.\n");
+        } else {
+            EligibilityEngine.DueMatrix due = new EligibilityEngine()
+                    .evaluate(model.getPatients(), vaccines, EpochDays.today());
+            report.append(String.format("%-24s %8s %8s %8s %8s%n", "Vaccine", "Overdue", "Due now", "Due soon", "Complete"));
+            for (int v = 0; v < due.getVaccineCount(); v++) {
+                report.append(String.format("%-24s %8d %8d %8d %8d%n", due.getVaccine(v).getName(),
+                        due.count(EligibilityEngine.Status.OVERDUE, v),
+                        due.count(EligibilityEngine.Status.DUE_NOW, v),
+                        due.count(EligibilityEngine.Status.DUE_SOON, v),
+                        due.count(EligibilityEngine.Status.COMPLETE, v)));
+            }
+            report.append("\nDue or overdue today:\n");
+            for (ImmunizationPatient patient : due.getPatients(EligibilityEngine.Status.OVERDUE,
+                    EligibilityEngine.Status.DUE_NOW)) {
+                report.append(patient.getPatientId()).append("  ").append(patient.getName()).append("\n");
+            }
+        }
         view.displayImmunizationReport(report.toString());
     }
 
@@ -239,6 +387,12 @@ class ClinicController {
         report.append("Monthly Return Report for ").append(model.getName())
               .append(" (").append(model.getAddress()).append(")\n");
         report.append("================================================\n");
+
+        // This month so far, from the running dose counts
+        LocalDate today = LocalDate.now();
+        report.append(model.buildMonthlyReturn(today.getYear(), today.getMonthValue(), model.getAddress(), ""))
+              .append("\n");
+        report.append("------------------------------------------------\n");
         
         if (model.getMonthlyReturns().isEmpty()) {
             report.append("No monthly returns recorded.\n");
@@ -252,6 +406,16 @@ class ClinicController {
         view.displayMonthlyReport(report.toString());
     }
 
+    /**
+     * Reloads the patients and visits tables from the model,
+     * e.g. after a saved register has been loaded.
+     * The visits table is filled when it is next shown.
+     */
+    public void refreshView() {
+        view.refreshPatientsTable();
+        refreshVisits();
+    }
+
     /**
      * Displays the clinic's details.
      */
@@ -1,8 +1,9 @@
 import java.util.List;
+import java.util.Map;
 import java.util.Date;
-import java.text.DateFormat;
 import java.util.ArrayList;
-import java.util.stream.Collectors;
+import java.util.HashMap;
+import java.util.TreeMap;
 
 /**
  * The Model component of the Clinic MVC architecture.
@@ -16,7 +17,85 @@ class ClinicModel {
     private String address;
     private ArrayList<ImmunizationPatient> patients;
     private ArrayList<Return> monthlyReturns;
-    private ArrayList<Visit> visits;
+
+    // Primary index: patientId -> patient
+    private HashMap<String, ImmunizationPatient> patientsById;
+    // patientId -> position in patients, so a patient is removed without searching the list
+    private HashMap<String, Integer> patientPositions = new HashMap<>();
+    // Secondary indexes resolve to a patientId, which is then looked up in the primary index
+    private HashMap<String, String> patientIdByNationalId;
+    private HashMap<String, String> patientIdByInsuranceNumber;
+    private HashMap<String, String> patientIdByOutPatientNumber;
+    // A mother can have several children registered, so this one is a multimap
+    private HashMap<String, List<String>> patientIdsByMotherId;
+    // Visits bucketed by the epoch day they happened on, sorted by day
+    private TreeMap<Long, List<Visit>> visitsByDay;
+    // Visits of each patient, kept in visit-date order
+    private HashMap<String, List<Visit>> visitsByPatientId;
+    private int visitCount;
+    // The number given to the last visit added, see Visit.getNumber
+    private int lastVisitNumber;
+    // Durable log of changes, null when the model is in-memory only
+    private ClinicStore store;
+    // Saved register rows that have not been turned into objects yet, see loadSnapshot
+    private ClinicSnapshot snapshot;
+    private HashMap<String, Integer> unloadedPatientRows = new HashMap<>();
+    // The patient list holds null for a saved patient not built yet, snapshot row r at position snapshotBase + r
+    private int snapshotBase;
+    private boolean visitsUnloaded;
+    // Visits added while the saved ones are still unbuilt, indexed after them by loadAllVisits
+    private final ArrayList<Visit> visitsAddedBeforeLoad = new ArrayList<>();
+    // Stock on hand, keyed by catalogue ID
+    private Inventory vaccineInventory;
+    private final VaccineCatalogue vaccineCatalogue = new VaccineCatalogue();
+    private Inventory vitaminInventory;
+    // Doses given by month, vaccine, dose and age band, built on first use and then kept up to date
+    private ReturnAggregator returnAggregator;
+    // Doses given to patients since removed, which past returns keep; saved with the snapshot
+    private final ReturnAggregator removedPatientDoses = new ReturnAggregator();
+    // Patients by next due day, built on first use and then kept up to date, see getDueQueue
+    private DueQueue dueQueue;
+    private final ImmunizationPatient.DoseListener dueListener = (patient, vaccine, doseNumber, day) -> {
+        if (dueQueue != null) {
+            dueQueue.update(patient);
+        }
+    };
+    // Counts and logs doses given on a visit after it was added
+    private final Visit.DoseListener visitListener = (visit, vaccine, doseNumber) -> {
+        if (returnAggregator != null) {
+            returnAggregator.doseAdded(visit, vaccine, doseNumber);
+        }
+        if (store != null) {
+            store.doseAdded(visit, vaccine);
+        }
+    };
+    private final ArrayList<PatientListener> patientListeners = new ArrayList<>();
+
+    /**
+     * Told when patients are added to or removed from the list returned by getPatients,
+     * e.g. to update a table showing it one row at a time. Building a saved patient on
+     * first use does not change the list, so it is not reported.
+     */
+    public interface PatientListener {
+        /**
+         * Called after patients have been appended to the list.
+         *
+         * @param first the position of the first patient added
+         * @param last the position of the last patient added
+         */
+        void patientsAdded(int first, int last);
+
+        /**
+         * Called after a patient has been taken out of the list. The last patient in the
+         * list has been moved into the removed patient's place; no other patient moves.
+         *
+         * @param index the position the patient was at
+         * @param patient the patient removed
+         * @param movedFrom the position the last patient was moved from, the new size of
+         *        the list; equal to index if the removed patient was the last
+         */
+        void patientRemoved(int index, ImmunizationPatient patient, int movedFrom);
+    }
 
     /**
      * Constructs a new ClinicModel with specified name and address.
@@ -28,8 +107,30 @@ class ClinicModel {
         this.name = name;
         this.address = address;
         this.patients = new ArrayList<>();
-        this.visits = new ArrayList<>();
         this.monthlyReturns = new ArrayList<>();
+        this.patientsById = new HashMap<>();
+        this.patientIdByNationalId = new HashMap<>();
+        this.patientIdByInsuranceNumber = new HashMap<>();
+        this.patientIdByOutPatientNumber = new HashMap<>();
+        this.patientIdsByMotherId = new HashMap<>();
+        this.visitsByDay = new TreeMap<>();
+        this.visitsByPatientId = new HashMap<>();
+        this.vaccineInventory = new Inventory("vaccine");
+        this.vitaminInventory = new Inventory("vitamin");
+        this.vaccineInventory.addListener(new Inventory.Listener() {
+            @Override
+            public void itemsChanged() {
+                vaccineCatalogue.update(vaccineInventory);
+                if (dueQueue != null) {
+                    dueQueue.setCatalogue(vaccineCatalogue.getVaccines(), patients, snapshot, snapshotBase);
+                }
+            }
+
+            @Override
+            public void stockChanged(int row, Inventory.Item item) {
+                // running out of stock does not change when a dose is due
+            }
+        });
     }
 
     /**
@@ -62,10 +163,56 @@ class ClinicModel {
 
     /**
      * Gets the list of patients.
+     * Removing a patient moves the last patient into its place, so after a removal the
+     * list is no longer in the order patients were added.
      * 
      * @return List of Patient objects
      */
-    public ArrayList<ImmunizationPatient> getPatients() { return patients; }
+    public ArrayList<ImmunizationPatient> getPatients() {
+        loadAllPatients();
+        return patients;
+    }
+
+    /**
+     * Registers a listener for patients added to or removed from the clinic.
+     *
+     * @param listener the listener to add
+     */
+    public void addPatientListener(PatientListener listener) {
+        patientListeners.add(listener);
+    }
+
+    /**
+     * Unregisters a patient listener.
+     *
+     * @param listener the listener to remove
+     */
+    public void removePatientListener(PatientListener listener) {
+        patientListeners.remove(listener);
+    }
+
+    /**
+     * Gets the number of patients on record without loading any saved ones.
+     * 
+     * @return the number of patients
+     */
+    public int getPatientCount() { return patients.size(); }
+
+    /**
+     * Gets the patient at a position in the list returned by getPatients, building only
+     * that patient if it is still in a saved register, e.g. for a table row on screen.
+     *
+     * @param index the position, from 0 to getPatientCount() - 1
+     * @return the patient
+     */
+    public ImmunizationPatient getPatientAt(int index) {
+        ImmunizationPatient patient = patients.get(index);
+        if (patient == null) {
+            patient = buildSavedPatient(index - snapshotBase);
+            releaseSnapshotIfLoaded();
+        }
+        return patient;
+    }
 
     /**
      * Gets the list of monthly returns.
@@ -75,38 +222,387 @@ class ClinicModel {
     public ArrayList<Return> getMonthlyReturns() { return monthlyReturns; }
 
     /**
-     * Gets the list of visits.
+     * Gets the clinic's vaccine stock.
+     * 
+     * @return The vaccine inventory
+     */
+    public Inventory getVaccineInventory() { return vaccineInventory; }
+
+    /**
+     * Gets the clinic's vitamin stock.
+     * 
+     * @return The vitamin inventory
+     */
+    public Inventory getVitaminInventory() { return vitaminInventory; }
+
+    /**
+     * Gets the patients ordered by when their next vaccine dose is due. The queue is built
+     * from every patient the first time it is asked for, then kept up to date as patients
+     * are added or removed and doses are recorded, so finding who is due today does not
+     * scan the whole register. Saved patients not built yet are queued from their snapshot
+     * rows, and built only when read from the queue.
+     * 
+     * @return the due queue
+     */
+    public DueQueue getDueQueue() {
+        if (dueQueue == null) {
+            DueQueue queue = new DueQueue(vaccineCatalogue.getVaccines(), this::getPatientByPatientID);
+            queue.setCatalogue(vaccineCatalogue.getVaccines(), patients, snapshot, snapshotBase);
+            dueQueue = queue;
+        }
+        return dueQueue;
+    }
+
+    /**
+     * Lists the patients with a vaccine dose due on or before today.
+     * 
+     * @return the patients, earliest due first
+     */
+    public List<ImmunizationPatient> getPatientsDueToday() {
+        return getDueQueue().getDueBy(EpochDays.today());
+    }
+
+    /**
+     * Gets the running counts of doses given, for monthly returns. The counts are built
+     * from every visit, and the doses of patients since removed, the first time they are
+     * asked for, then kept up to date as visits are added and removed and doses are given.
+     * 
+     * @return the aggregator
+     */
+    public ReturnAggregator getReturnAggregator() {
+        if (returnAggregator == null) {
+            loadAllVisits();
+            ReturnAggregator aggregator = new ReturnAggregator();
+            for (List<Visit> day : visitsByDay.values()) {
+                for (Visit visit : day) {
+                    aggregator.visitAdded(visit);
+                }
+            }
+            aggregator.addAll(removedPatientDoses);
+            returnAggregator = aggregator;
+        }
+        return returnAggregator;
+    }
+
+    /**
+     * Builds the monthly return of this clinic from the doses given that month.
+     * 
+     * @param year the year
+     * @param month the month, 1 to 12
+     * @param metro the metro or city area
+     * @param region the administrative region
+     * @return the return
+     */
+    public Return buildMonthlyReturn(int year, int month, String metro, String region) {
+        return getReturnAggregator().toReturn(name, metro, region, year, month);
+    }
+
+    /**
+     * Gets the clinic's vaccines, one shared object per vaccine, kept in step with the
+     * vaccine inventory.
+     *
+     * @return the vaccine catalogue
+     */
+    public VaccineCatalogue getVaccineCatalogue() { return vaccineCatalogue; }
+
+    /**
+     * Gets the list of visits in date order.
+     * The list is a copy, so changes to it do not affect the clinic's records.
      * 
      * @return List of Visit objects
      */
-    public ArrayList<Visit> getVisits() { return visits; }
+    public ArrayList<Visit> getVisits() {
+        loadAllVisits();
+        ArrayList<Visit> all = new ArrayList<>(visitCount);
+        for (List<Visit> bucket : visitsByDay.values()) {
+            all.addAll(bucket);
+        }
+        return all;
+    }
+
+    /** @return the patient list as held, with null for a saved patient not built yet, for saving the register */
+    List<ImmunizationPatient> getPatientSlots() {
+        return patients;
+    }
+
+    /** @return the snapshot unbuilt patients and visits are still read from, or null if everything is built */
+    ClinicSnapshot getSavedRegister() {
+        return snapshot;
+    }
+
+    /** @return the position in the patient list of the saved register's first patient */
+    int getSnapshotBase() {
+        return snapshotBase;
+    }
+
+    /** @return true if the saved register's visits have not been built yet */
+    boolean hasUnbuiltVisits() {
+        return visitsUnloaded;
+    }
+
+    /**
+     * Gets the visits that have been built, for saving the register: every visit, or while
+     * the saved visits are unbuilt, the visits added since they were loaded.
+     *
+     * @return a new list of the visits
+     */
+    ArrayList<Visit> getBuiltVisits() {
+        return visitsUnloaded ? new ArrayList<>(visitsAddedBeforeLoad) : getVisits();
+    }
+
+    /** @return the doses given to patients since removed, for saving with the register */
+    ReturnAggregator getRemovedPatientDoses() {
+        return removedPatientDoses;
+    }
+
+    /** @return the number given to the last visit added, for saving with the register */
+    int getLastVisitNumber() {
+        return lastVisitNumber;
+    }
 
     /**
-     * Adds a patient to the clinic's records.
+     * Gets the number of visits on record.
+     * 
+     * @return the number of visits
+     */
+    public int getVisitCount() {
+        return visitsUnloaded ? visitCount + snapshot.getVisitCount() + visitsAddedBeforeLoad.size() : visitCount;
+    }
+
+    /**
+     * Adds a patient to the clinic's records and registers it in every index.
+     * A patient whose ID is already registered is rejected.
      * 
      * @param patient The patient to add
      * @return true if patient was added successfully
      */
     public boolean addPatient(ImmunizationPatient patient) {
-        return patients.add(patient);
+        if (patient == null || patient.getPatientId() == null
+                || patientsById.containsKey(patient.getPatientId())
+                || unloadedPatientRows.containsKey(patient.getPatientId())) {
+            return false;
+        }
+        appendPatient(patient);
+        indexPatient(patient);
+        if (dueQueue != null) {
+            dueQueue.update(patient);
+        }
+        if (store != null) {
+            store.patientAdded(patient);
+        }
+        firePatientsAdded(patients.size() - 1);
+        return true;
     }
 
     /**
-     * Adds a patient to the clinic's records.
+     * Adds a batch of patients, e.g. from a register import. Duplicates within the
+     * batch or of registered patients are skipped. The batch is logged as one unit
+     * rather than a record per patient.
      * 
-     * @param visit The visit to add
+     * @param batch The patients to add
+     * @return the number of patients added
+     */
+    public int addPatients(List<ImmunizationPatient> batch) {
+        List<ImmunizationPatient> added = new ArrayList<>(batch.size());
+        int first = patients.size();
+        patients.ensureCapacity(first + batch.size());
+        for (ImmunizationPatient patient : batch) {
+            if (patient == null || patient.getPatientId() == null
+                    || patientsById.containsKey(patient.getPatientId())
+                    || unloadedPatientRows.containsKey(patient.getPatientId())) {
+                continue;
+            }
+            appendPatient(patient);
+            indexPatient(patient);
+            if (dueQueue != null) {
+                dueQueue.update(patient);
+            }
+            added.add(patient);
+        }
+        if (store != null && !added.isEmpty()) {
+            store.patientsAdded(added);
+        }
+        firePatientsAdded(first);
+        return added.size();
+    }
+
+    /**
+     * Removes a patient from the clinic's records and from every index. Their visits go
+     * with them, but the doses given on them stay in the monthly return counts.
+     * 
+     * @param patient The patient to remove
+     * @return true if patient was removed successfully
      */
     public boolean removePatient(ImmunizationPatient patient) {
-        return patients.remove(patient);
+        if (patient == null || getPatientByPatientID(patient.getPatientId()) != patient) {
+            return false;
+        }
+        loadAllVisits();
+        unindexPatient(patient);
+        if (dueQueue != null) {
+            dueQueue.remove(patient);
+        }
+        List<Visit> patientVisits = visitsByPatientId.remove(patient.getPatientId());
+        if (patientVisits != null) {
+            for (Visit visit : patientVisits) {
+                removeFromDayIndex(visit, false);
+                visit.setDoseListener(null);
+                int band = returnAggregator == null ? -1 : returnAggregator.forget(visit);
+                removedPatientDoses.addHistory(visit, band);
+            }
+        }
+        // move the last patient into the gap rather than shifting every later patient up
+        int index = patientPositions.remove(patient.getPatientId());
+        int movedFrom = patients.size() - 1;
+        getPatientAt(movedFrom); // a saved patient is only found by its position while unbuilt
+        ImmunizationPatient moved = patients.remove(movedFrom);
+        if (index != movedFrom) {
+            patients.set(index, moved);
+            patientPositions.put(moved.getPatientId(), index);
+        }
+        if (store != null) {
+            store.patientRemoved(patient);
+        }
+        for (PatientListener listener : patientListeners) {
+            listener.patientRemoved(index, patient, movedFrom);
+        }
+        return true;
     }
 
     /**
      * Adds a visit to the clinic's records.
+     * While the saved visits are still unbuilt the visit is held back and indexed after
+     * them, so adding a visit, e.g. replaying the log at startup, does not build them all.
      * 
      * @param visit The visit to add
+     * @throws IllegalArgumentException if the visit has no date or no patient ID
      */
     public void addVisit(Visit visit) {
-        visits.add(visit);
+        checkVisit(visit);
+        if (visit.getNumber() == 0) {
+            visit.setNumber(++lastVisitNumber);
+        } else {
+            lastVisitNumber = Math.max(lastVisitNumber, visit.getNumber()); // replayed from the log
+        }
+        visit.setDoseListener(visitListener);
+        if (visitsUnloaded) {
+            visitsAddedBeforeLoad.add(visit);
+        } else {
+            indexVisit(visit);
+        }
+        if (store != null) {
+            store.visitAdded(visit);
+        }
+    }
+
+    /**
+     * Registers a visit in the day and patient indexes. The visit is checked before
+     * any index is touched, so a bad visit leaves them as they were.
+     * 
+     * @param visit The visit to index
+     * @throws IllegalArgumentException if the visit has no date or no patient ID
+     */
+    private void indexVisit(Visit visit) {
+        checkVisit(visit);
+        long day = EpochDays.of(visit.getVisitDate());
+        visitsByDay.computeIfAbsent(day, k -> new ArrayList<>()).add(visit);
+        visitCount++;
+        if (returnAggregator != null) {
+            returnAggregator.visitAdded(visit);
+        }
+
+        // insert after any visits on the same or earlier days so the list stays in date order
+        List<Visit> patientVisits = visitsByPatientId.computeIfAbsent(visit.getPatient().getPatientId(), k -> new ArrayList<>());
+        int low = 0;
+        int high = patientVisits.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (EpochDays.of(patientVisits.get(mid).getVisitDate()) <= day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        patientVisits.add(low, visit);
+    }
+
+    private static void checkVisit(Visit visit) {
+        if (visit.getVisitDate() == null || visit.getPatient() == null || visit.getPatient().getPatientId() == null) {
+            throw new IllegalArgumentException("A visit needs a date and a patient with an ID");
+        }
+    }
+
+    /**
+     * Removes a visit from the clinic's records.
+     * 
+     * @param visit The visit to remove
+     * @return true if the visit was removed
+     */
+    public boolean removeVisit(Visit visit) {
+        loadAllVisits();
+        if (!removeFromDayIndex(visit, true)) {
+            return false;
+        }
+        visit.setDoseListener(null);
+        String patientId = visit.getPatient().getPatientId();
+        List<Visit> patientVisits = visitsByPatientId.get(patientId);
+        if (patientVisits != null) {
+            patientVisits.remove(visit);
+            if (patientVisits.isEmpty()) {
+                visitsByPatientId.remove(patientId);
+            }
+        }
+        if (store != null) {
+            store.visitRemoved(visit);
+        }
+        return true;
+    }
+
+    /**
+     * Finds a visit by the number it was given, e.g. one named in the log. Visits added
+     * since the saved register was loaded are looked through first, so replaying the log
+     * only builds the saved visits for a record about one of them.
+     *
+     * @param patientId the ID of the visit's patient
+     * @param number the visit number
+     * @return the visit, or null if there is none with the number
+     */
+    Visit findVisit(String patientId, int number) {
+        for (int i = visitsAddedBeforeLoad.size() - 1; i >= 0; i--) {
+            if (visitsAddedBeforeLoad.get(i).getNumber() == number) {
+                return visitsAddedBeforeLoad.get(i);
+            }
+        }
+        loadAllVisits();
+        for (Visit visit : visitsByPatientId.getOrDefault(patientId, List.of())) {
+            if (visit.getNumber() == number) {
+                return visit;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes a visit from its day bucket.
+     * 
+     * @param visit The visit to remove
+     * @param uncount whether to take its doses back out of the monthly return counts
+     * @return true if the visit was in the index
+     */
+    private boolean removeFromDayIndex(Visit visit, boolean uncount) {
+        long day = EpochDays.of(visit.getVisitDate());
+        List<Visit> bucket = visitsByDay.get(day);
+        if (bucket == null || !bucket.remove(visit)) {
+            return false;
+        }
+        if (bucket.isEmpty()) {
+            visitsByDay.remove(day);
+        }
+        visitCount--;
+        if (uncount && returnAggregator != null) {
+            returnAggregator.visitRemoved(visit);
+        }
+        return true;
     }
 
     /**
@@ -116,7 +612,55 @@ class ClinicModel {
      * @return true if return was added successfully
      */
     public boolean addMonthlyReturn(Return r) {
-        return monthlyReturns.add(r);
+        monthlyReturns.add(r);
+        if (store != null) {
+            store.returnAdded(r);
+        }
+        return true;
+    }
+
+    /**
+     * Attaches a durable store that every later change is logged to.
+     * Called by ClinicStore once it has replayed its files into this model.
+     * 
+     * @param store the store to log to, or null to stop logging
+     */
+    void setStore(ClinicStore store) { this.store = store; }
+
+    /**
+     * Loads a saved register into this empty model without building its patients
+     * and visits. The indexes are filled from the snapshot's ID columns and the patient
+     * list gets a placeholder for each saved patient; a patient object is only built
+     * when it is first looked up, and visits are built the first time any visit is asked for. The model closes the snapshot once
+     * everything has been built.
+     * 
+     * @param saved the snapshot to load
+     */
+    void loadSnapshot(ClinicSnapshot saved) {
+        this.snapshot = saved;
+        dueQueue = null; // rebuilt with the saved patients on next use
+        snapshotBase = patients.size();
+        patients.ensureCapacity(snapshotBase + saved.getPatientCount());
+        for (int row = 0; row < saved.getPatientCount(); row++) {
+            String id = saved.getPatientId(row);
+            unloadedPatientRows.put(id, row);
+            patientPositions.put(id, patients.size());
+            patients.add(null);
+            putKey(patientIdByNationalId, saved.getNationalId(row), id);
+            putKey(patientIdByInsuranceNumber, saved.getInsuranceNumber(row), id);
+            putKey(patientIdByOutPatientNumber, saved.getOutPatientNumber(row), id);
+            String motherId = saved.getMotherId(row);
+            if (!isBlank(motherId)) {
+                patientIdsByMotherId.computeIfAbsent(motherId, k -> new ArrayList<>(2)).add(id);
+            }
+        }
+        visitsUnloaded = saved.getVisitCount() > 0;
+        lastVisitNumber = Math.max(lastVisitNumber, saved.getLastVisitNumber());
+        for (int row = 0; row < saved.getReturnCount(); row++) {
+            monthlyReturns.add(saved.getReturn(row));
+        }
+        saved.readRemovedPatientDoses(removedPatientDoses);
+        releaseSnapshotIfLoaded();
     }
 
     /**
@@ -126,23 +670,292 @@ class ClinicModel {
      * @return returns the Patient null if not found
      */
     public ImmunizationPatient getPatientByPatientID(String ID) {
-        return patients
-            .stream().
-            filter(patient -> patient.getPatientId().equals(ID)).
-            findFirst().
-            orElse(null);
+        if (ID == null) {
+            return null;
+        }
+        ImmunizationPatient patient = patientsById.get(ID);
+        if (patient == null && !unloadedPatientRows.isEmpty()) {
+            Integer row = unloadedPatientRows.get(ID);
+            if (row != null) {
+                patient = buildSavedPatient(row);
+                releaseSnapshotIfLoaded();
+            }
+        }
+        return patient;
     }
 
     /**
-     * Finds a Patient by their patientID
+     * Finds a Patient by their national identification number
      * 
-     * @param ID the ID of the patient
+     * @param nationalID the national ID of the patient
+     * @return returns the Patient null if not found
+     */
+    public ImmunizationPatient getPatientByNationalID(String nationalID) {
+        return getPatientByPatientID(lookup(patientIdByNationalId, nationalID));
+    }
+
+    /**
+     * Finds a Patient by their health insurance number
+     * 
+     * @param insuranceNumber the health insurance number of the patient
+     * @return returns the Patient null if not found
+     */
+    public ImmunizationPatient getPatientByHealthInsuranceNumber(String insuranceNumber) {
+        return getPatientByPatientID(lookup(patientIdByInsuranceNumber, insuranceNumber));
+    }
+
+    /**
+     * Finds a Patient by their out-patient number
+     * 
+     * @param outPatientNumber the out-patient number of the patient
+     * @return returns the Patient null if not found
+     */
+    public ImmunizationPatient getPatientByOutPatientNumber(String outPatientNumber) {
+        return getPatientByPatientID(lookup(patientIdByOutPatientNumber, outPatientNumber));
+    }
+
+    /**
+     * Finds every Patient registered under a mother's ID
+     * 
+     * @param motherID the ID of the mother
+     * @return the children of the mother, empty if none are registered
+     */
+    public List<ImmunizationPatient> getPatientsByMotherID(String motherID) {
+        List<ImmunizationPatient> children = new ArrayList<>();
+        if (motherID == null) {
+            return children;
+        }
+        for (String id : patientIdsByMotherId.getOrDefault(motherID, List.of())) {
+            children.add(getPatientByPatientID(id)); // builds a child still in the saved register
+        }
+        return children;
+    }
+
+    /**
+     * Finds a Patient by any of their identifiers, trying the patient ID first
+     * and then the national ID, health insurance number and out-patient number.
+     * 
+     * @param key the identifier to search for
      * @return returns the Patient null if not found
      */
-    public List<Visit> getVisitByDate(Date date, DateFormat dateFor) {
-        return visits
-            .stream()
-            .filter(visit -> dateFor.format(visit.getVisitDate()).equals(dateFor.format(date)))
-            .collect(Collectors.toList());
+    public ImmunizationPatient findPatient(String key) {
+        ImmunizationPatient patient = getPatientByPatientID(key);
+        if (patient == null) {
+            patient = getPatientByNationalID(key);
+        }
+        if (patient == null) {
+            patient = getPatientByHealthInsuranceNumber(key);
+        }
+        if (patient == null) {
+            patient = getPatientByOutPatientNumber(key);
+        }
+        return patient;
+    }
+
+    /**
+     * Finds every visit of a patient, in date order
+     * 
+     * @param patientID the ID of the patient
+     * @return the patient's visits, empty if none
+     */
+    public ArrayList<Visit> getVisitsByPatientID(String patientID) {
+        loadAllVisits();
+        List<Visit> patientVisits = patientID == null ? null : visitsByPatientId.get(patientID);
+        return patientVisits == null ? new ArrayList<>() : new ArrayList<>(patientVisits);
+    }
+
+    /**
+     * Finds every visit that happened on the given day
+     * 
+     * @param date any time on the day to search
+     * @return the visits on that day, empty if none
+     */
+    public ArrayList<Visit> getVisitsOnDay(Date date) {
+        loadAllVisits();
+        List<Visit> bucket = visitsByDay.get(EpochDays.of(date));
+        return bucket == null ? new ArrayList<>() : new ArrayList<>(bucket);
+    }
+
+    /**
+     * Finds every visit between two days, inclusive, in date order
+     * 
+     * @param from any time on the first day of the range
+     * @param to any time on the last day of the range
+     * @return the visits in the range, empty if none
+     */
+    public ArrayList<Visit> getVisitsBetween(Date from, Date to) {
+        return getVisitsBetween(EpochDays.of(from), EpochDays.of(to));
+    }
+
+    /**
+     * Finds every visit in a calendar month, in date order
+     * 
+     * @param year the year of the month
+     * @param month the month, 1 to 12
+     * @return the visits in the month, empty if none
+     */
+    public ArrayList<Visit> getVisitsInMonth(int year, int month) {
+        return getVisitsBetween(EpochDays.firstOfMonth(year, month), EpochDays.lastOfMonth(year, month));
+    }
+
+    /**
+     * Finds every visit between two epoch days, inclusive, in date order
+     * 
+     * @param fromDay the first epoch day of the range
+     * @param toDay the last epoch day of the range
+     * @return the visits in the range, empty if none
+     */
+    public ArrayList<Visit> getVisitsBetween(long fromDay, long toDay) {
+        loadAllVisits();
+        ArrayList<Visit> result = new ArrayList<>();
+        if (fromDay > toDay) {
+            return result;
+        }
+        for (List<Visit> bucket : visitsByDay.subMap(fromDay, true, toDay, true).values()) {
+            result.addAll(bucket);
+        }
+        return result;
+    }
+
+    /**
+     * Builds every saved patient that has not been looked up yet.
+     */
+    private void loadAllPatients() {
+        if (unloadedPatientRows.isEmpty()) {
+            return;
+        }
+        int[] rows = unloadedPatientRows.values().stream().mapToInt(Integer::intValue).toArray();
+        for (int row : rows) {
+            buildSavedPatient(row);
+        }
+        releaseSnapshotIfLoaded();
+    }
+
+    /**
+     * Builds a saved patient into its placeholder in the patient list and indexes it.
+     */
+    private ImmunizationPatient buildSavedPatient(int row) {
+        ImmunizationPatient patient = snapshot.getPatient(row);
+        unloadedPatientRows.remove(patient.getPatientId());
+        patients.set(snapshotBase + row, patient);
+        patientsById.put(patient.getPatientId(), patient);
+        patient.setDoseListener(dueListener);
+        return patient;
+    }
+
+    /**
+     * Builds every saved visit, and the patients they belong to, then indexes any visits
+     * added since the snapshot was loaded.
+     */
+    private void loadAllVisits() {
+        if (!visitsUnloaded) {
+            return;
+        }
+        visitsUnloaded = false;
+        ClinicSnapshot saved = snapshot; // may be released part way through, its rows stay readable
+        for (int row = 0; row < saved.getVisitCount(); row++) {
+            Visit visit = saved.getVisit(row);
+            getPatientByPatientID(visit.getPatient().getPatientId());
+            visit.setDoseListener(visitListener);
+            indexVisit(visit);
+        }
+        for (Visit visit : visitsAddedBeforeLoad) {
+            indexVisit(visit);
+        }
+        visitsAddedBeforeLoad.clear();
+        releaseSnapshotIfLoaded();
+    }
+
+    /**
+     * Appends a patient to the list and records its position.
+     */
+    private void appendPatient(ImmunizationPatient patient) {
+        patientPositions.put(patient.getPatientId(), patients.size());
+        patients.add(patient);
+    }
+
+    /**
+     * Tells the patient listeners about the patients appended from a position on, if any.
+     */
+    private void firePatientsAdded(int first) {
+        if (first < patients.size()) {
+            for (PatientListener listener : patientListeners) {
+                listener.patientsAdded(first, patients.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Closes the snapshot once nothing is left to build from it.
+     */
+    private void releaseSnapshotIfLoaded() {
+        if (snapshot != null && unloadedPatientRows.isEmpty() && !visitsUnloaded) {
+            try {
+                snapshot.close();
+            } catch (java.io.IOException e) {
+                // every row has been built, so the snapshot is no longer needed either way
+            }
+            snapshot = null;
+        }
+    }
+
+    /**
+     * Registers a patient in the primary and secondary indexes.
+     * Blank identifiers are not indexed.
+     * 
+     * @param patient the patient to index
+     */
+    private void indexPatient(ImmunizationPatient patient) {
+        String id = patient.getPatientId();
+        patientsById.put(id, patient);
+        patient.setDoseListener(dueListener);
+        putKey(patientIdByNationalId, patient.getNationalIdentificationNumber(), id);
+        putKey(patientIdByInsuranceNumber, patient.getHealthInsuranceNumber(), id);
+        putKey(patientIdByOutPatientNumber, patient.getOutPatientNumber(), id);
+        if (!isBlank(patient.getMotherId())) {
+            patientIdsByMotherId.computeIfAbsent(patient.getMotherId(), k -> new ArrayList<>(2)).add(id);
+        }
+    }
+
+    /**
+     * Removes a patient from the primary and secondary indexes.
+     * Secondary entries are only removed if they still point at this patient.
+     * 
+     * @param patient the patient to unindex
+     */
+    private void unindexPatient(ImmunizationPatient patient) {
+        String id = patient.getPatientId();
+        patientsById.remove(id);
+        patient.setDoseListener(null);
+        removeKey(patientIdByNationalId, patient.getNationalIdentificationNumber(), id);
+        removeKey(patientIdByInsuranceNumber, patient.getHealthInsuranceNumber(), id);
+        removeKey(patientIdByOutPatientNumber, patient.getOutPatientNumber(), id);
+        List<String> siblings = patientIdsByMotherId.get(patient.getMotherId());
+        if (siblings != null) {
+            siblings.remove(id);
+            if (siblings.isEmpty()) {
+                patientIdsByMotherId.remove(patient.getMotherId());
+            }
+        }
+    }
+
+    private static void putKey(Map<String, String> index, String key, String patientId) {
+        if (!isBlank(key)) {
+            index.put(key, patientId);
+        }
+    }
+
+    private static void removeKey(Map<String, String> index, String key, String patientId) {
+        if (!isBlank(key)) {
+            index.remove(key, patientId);
+        }
+    }
+
+    private static String lookup(Map<String, String> index, String key) {
+        return key == null ? null : index.get(key);
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
     }
 }
\ No newline at end of file
@@ -0,0 +1,811 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ClinicSnapshot.java
+ * Compact binary snapshot of a clinic register, read through a memory-mapped file.
+ *
+ * Patients, visits, vaccines and returns are stored as fixed-width rows of ints and
+ * doubles (dates as epoch days), and strings are stored in a dictionary and referred
+ * to by their code. Opening a snapshot only maps the file; a patient or visit
+ * object is built the first time its row is asked for and cached after that.
+ *
+ * File layout, all big-endian:
+ * <pre>
+ *   header      magic, version, generation, row counts, last visit number, removed row count
+ *   vaccines    id, name, brand, dosageML, numOfDosage, interval, minAge,
+ *               adminMode, adminLocation, diseases, minWeightKG
+ *   patients    id, name, outPatientNo, insuranceNo, nationalId, address, sex, motherId,
+ *               dob (epoch day), age, weightKG, first dose entry, dose entry count
+ *   doses       vaccine row, dose count, NULL_DAY   (how many doses of a vaccine, per vaccine)
+ *               vaccine row, dose number, epoch day  (one dated dose, per DoseHistory entry)
+ *   visits      patient row, date (epoch day), remarks, first pool entry, pool entry count,
+ *               visit number
+ *   pool        vaccine row of each dose administered in a visit
+ *   returns     centre, metro, region, month, administered, used, wastage,
+ *               vitamin A deficiency, AEFI, boxes used, incinerated, pit
+ *   removed     month, vaccine row, dose number, age band, doses   (doses of removed patients)
+ *   dictionary  (count + 1) byte offsets, then UTF-8 bytes
+ * </pre>
+ *
+ * @author Milo Keys
+ * @version October 18, 2026
+ */
+class ClinicSnapshot implements Closeable {
+    private static final int MAGIC = 0x434C4E42; // "CLNB"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 52;
+    private static final int NULL_CODE = -1;
+    private static final int NULL_DAY = Integer.MIN_VALUE;
+    private static final char DISEASE_SEPARATOR = '\u001F';
+
+    private static final int VACCINE_BYTES = 52;
+    private static final int PATIENT_BYTES = 56;
+    private static final int DOSE_BYTES = 12;
+    private static final int VISIT_BYTES = 24;
+    private static final int POOL_BYTES = 4;
+    private static final int RETURN_BYTES = 52;
+    private static final int REMOVED_BYTES = 20;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long generation;
+    private final int vaccineCount, patientCount, doseCount, visitCount, poolCount, returnCount, removedCount, dictCount;
+    private final int vaccineBase, patientBase, doseBase, visitBase, poolBase, returnBase, removedBase, dictBase,
+            dictBytesBase;
+
+    // rows decoded so far
+    private final String[] strings;
+    private final Vaccine[] vaccines;
+    private final ImmunizationPatient[] patients;
+    private final Visit[] visits;
+    // Hands out the clinic's own Vaccine objects in place of decoded rows; null to keep the decoded ones
+    private final VaccineCatalogue catalogue;
+
+    private ClinicSnapshot(Path file, VaccineCatalogue catalogue) throws IOException {
+        this.catalogue = catalogue;
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("Not a clinic snapshot: " + file);
+        }
+        generation = buffer.getLong(8);
+        vaccineCount = buffer.getInt(16);
+        patientCount = buffer.getInt(20);
+        doseCount = buffer.getInt(24);
+        visitCount = buffer.getInt(28);
+        poolCount = buffer.getInt(32);
+        returnCount = buffer.getInt(36);
+        dictCount = buffer.getInt(40);
+        removedCount = buffer.getInt(48);
+
+        vaccineBase = HEADER_BYTES;
+        patientBase = vaccineBase + vaccineCount * VACCINE_BYTES;
+        doseBase = patientBase + patientCount * PATIENT_BYTES;
+        visitBase = doseBase + doseCount * DOSE_BYTES;
+        poolBase = visitBase + visitCount * VISIT_BYTES;
+        returnBase = poolBase + poolCount * POOL_BYTES;
+        removedBase = returnBase + returnCount * RETURN_BYTES;
+        dictBase = removedBase + removedCount * REMOVED_BYTES;
+        dictBytesBase = dictBase + (dictCount + 1) * 4;
+
+        strings = new String[dictCount];
+        vaccines = new Vaccine[vaccineCount];
+        patients = new ImmunizationPatient[patientCount];
+        visits = new Visit[visitCount];
+    }
+
+    /**
+     * Maps a snapshot file. Nothing but the header is read until rows are asked for.
+     *
+     * @param file the snapshot file
+     * @return the opened snapshot
+     * @throws IOException if the file cannot be mapped or is not a snapshot
+     */
+    public static ClinicSnapshot open(Path file) throws IOException {
+        return new ClinicSnapshot(file, null);
+    }
+
+    /**
+     * Maps a snapshot file whose vaccines are to be the catalogue's objects, so patients and
+     * visits built from it share the Vaccine objects the rest of the clinic uses.
+     *
+     * @param file the snapshot file
+     * @param catalogue the clinic's vaccine catalogue
+     * @return the opened snapshot
+     * @throws IOException if the file cannot be mapped or is not a snapshot
+     */
+    public static ClinicSnapshot open(Path file, VaccineCatalogue catalogue) throws IOException {
+        return new ClinicSnapshot(file, catalogue);
+    }
+
+    /** @return the log generation this snapshot was taken at */
+    public long getGeneration() { return generation; }
+
+    /** @return the number of patients in the snapshot */
+    public int getPatientCount() { return patientCount; }
+
+    /** @return the number of visits in the snapshot */
+    public int getVisitCount() { return visitCount; }
+
+    /** @return the number given to the last visit added before the snapshot was taken */
+    public int getLastVisitNumber() { return buffer.getInt(44); }
+
+    /** @return the number of monthly returns in the snapshot */
+    public int getReturnCount() { return returnCount; }
+
+    /**
+     * Gets a patient's ID without building the patient.
+     *
+     * @param row the patient row
+     * @return the patient ID
+     */
+    public String getPatientId(int row) { return patientString(row, 0); }
+
+    /** @return the national ID of a patient row, without building the patient */
+    public String getNationalId(int row) { return patientString(row, 16); }
+
+    /** @return the health insurance number of a patient row, without building the patient */
+    public String getInsuranceNumber(int row) { return patientString(row, 12); }
+
+    /** @return the out-patient number of a patient row, without building the patient */
+    public String getOutPatientNumber(int row) { return patientString(row, 8); }
+
+    /** @return the mother ID of a patient row, without building the patient */
+    public String getMotherId(int row) { return patientString(row, 28); }
+
+    /**
+     * Gets the patient in a row, building it on first access.
+     *
+     * @param row the patient row
+     * @return the patient, the same object on every call
+     */
+    public synchronized ImmunizationPatient getPatient(int row) {
+        ImmunizationPatient p = patients[row];
+        if (p == null) {
+            int at = patientBase + row * PATIENT_BYTES;
+            int dob = buffer.getInt(at + 32);
+            p = new ImmunizationPatient(
+                    string(buffer.getInt(at)),
+                    dob == NULL_DAY ? null : EpochDays.toDate(dob),
+                    string(buffer.getInt(at + 4)),
+                    string(buffer.getInt(at + 8)),
+                    string(buffer.getInt(at + 12)),
+                    string(buffer.getInt(at + 16)),
+                    string(buffer.getInt(at + 20)),
+                    string(buffer.getInt(at + 24)),
+                    buffer.getInt(at + 36),
+                    string(buffer.getInt(at + 28)),
+                    null,
+                    buffer.getDouble(at + 40));
+            int first = buffer.getInt(at + 48);
+            int count = buffer.getInt(at + 52);
+            for (int i = first; i < first + count; i++) {
+                int dose = doseBase + i * DOSE_BYTES;
+                Vaccine vaccine = getVaccine(buffer.getInt(dose));
+                if (buffer.getInt(dose + 8) == NULL_DAY) {
+                    p.restoreDoseCount(vaccine, buffer.getInt(dose + 4));
+                } else {
+                    p.restoreDose(vaccine, buffer.getInt(dose + 4), buffer.getInt(dose + 8));
+                }
+            }
+            patients[row] = p;
+        }
+        return p;
+    }
+
+    /**
+     * Gets the visit in a row, building it (and its patient) on first access.
+     * Doses are attached to the visit without being counted against the patient
+     * again, since the patient rows already hold the dose counts.
+     *
+     * @param row the visit row
+     * @return the visit, the same object on every call
+     */
+    public synchronized Visit getVisit(int row) {
+        Visit v = visits[row];
+        if (v == null) {
+            int at = visitBase + row * VISIT_BYTES;
+            v = new Visit(getPatient(buffer.getInt(at)), EpochDays.toDate(buffer.getInt(at + 4)),
+                    string(buffer.getInt(at + 8)));
+            v.setNumber(buffer.getInt(at + 20));
+            int first = buffer.getInt(at + 12);
+            int count = buffer.getInt(at + 16);
+            for (int i = first; i < first + count; i++) {
+                v.restoreDose(getVaccine(buffer.getInt(poolBase + i * POOL_BYTES)));
+            }
+            visits[row] = v;
+        }
+        return v;
+    }
+
+    /**
+     * Builds the monthly return in a row.
+     *
+     * @param row the return row
+     * @return a new Return
+     */
+    public synchronized Return getReturn(int row) {
+        int at = returnBase + row * RETURN_BYTES;
+        return new Return(string(buffer.getInt(at)), string(buffer.getInt(at + 4)),
+                string(buffer.getInt(at + 8)), string(buffer.getInt(at + 12)),
+                buffer.getInt(at + 16), buffer.getInt(at + 20), buffer.getDouble(at + 24),
+                buffer.getInt(at + 32), buffer.getInt(at + 36), buffer.getInt(at + 40),
+                buffer.getInt(at + 44), buffer.getInt(at + 48));
+    }
+
+    /**
+     * Builds every vaccine row, e.g. to copy rows that refer to them by row.
+     *
+     * @return the vaccines, by row
+     */
+    synchronized Vaccine[] getVaccines() {
+        for (int row = 0; row < vaccineCount; row++) {
+            getVaccine(row);
+        }
+        return vaccines.clone();
+    }
+
+    /**
+     * Adds the saved doses of patients since removed to an aggregator.
+     *
+     * @param into the aggregator to add them to
+     */
+    public synchronized void readRemovedPatientDoses(ReturnAggregator into) {
+        for (int row = 0; row < removedCount; row++) {
+            int at = removedBase + row * REMOVED_BYTES;
+            into.add(buffer.getInt(at), getVaccine(buffer.getInt(at + 4)), buffer.getInt(at + 8),
+                    buffer.getInt(at + 12), buffer.getInt(at + 16));
+        }
+    }
+
+    /**
+     * Finds the vaccine a saved patient is due for first, read from the patient and dose
+     * rows without building the patient. Gives what DueQueue works out for the built patient.
+     *
+     * @param row the patient row
+     * @param catalogue the vaccines the patient can be due for
+     * @param due set to the due epoch day in due[0]
+     * @return the vaccine's position in the catalogue, or -1 if nothing is due
+     */
+    public synchronized int getEarliestDue(int row, List<Vaccine> catalogue, long[] due) {
+        int at = patientBase + row * PATIENT_BYTES;
+        int first = buffer.getInt(at + 48);
+        int count = buffer.getInt(at + 52);
+        // dose count and latest dose day per vaccine ID, replayed the way building the patient does
+        int[] ids = new int[count];
+        int[] counts = new int[count];
+        int[] lastDays = new int[count];
+        int given = 0;
+        for (int i = first; i < first + count; i++) {
+            int dose = doseBase + i * DOSE_BYTES;
+            int id = buffer.getInt(vaccineBase + buffer.getInt(dose) * VACCINE_BYTES);
+            int v = 0;
+            while (v < given && ids[v] != id) {
+                v++;
+            }
+            if (v == given) {
+                ids[v] = id;
+                lastDays[v] = DoseHistory.NO_DAY;
+                given++;
+            }
+            int day = buffer.getInt(dose + 8);
+            if (day == NULL_DAY) {
+                counts[v] = buffer.getInt(dose + 4);
+            } else {
+                counts[v] = Math.max(counts[v], buffer.getInt(dose + 4));
+                lastDays[v] = Math.max(lastDays[v], day);
+            }
+        }
+        int dob = buffer.getInt(at + 32);
+        int age = buffer.getInt(at + 36);
+        double weight = buffer.getDouble(at + 40);
+        int best = -1;
+        for (int c = 0; c < catalogue.size(); c++) {
+            Vaccine vaccine = catalogue.get(c);
+            if (weight > 0 && weight < vaccine.getMinWeightKG()) {
+                continue;
+            }
+            int v = 0;
+            while (v < given && ids[v] != vaccine.getID()) {
+                v++;
+            }
+            long eligibleDay = ImmunizationPatient.eligibleDay(vaccine, dob == NULL_DAY ? DoseHistory.NO_DAY : dob, age);
+            long day = v < given ? DoseHistory.nextDueDay(vaccine, eligibleDay, counts[v], lastDays[v])
+                    : DoseHistory.nextDueDay(vaccine, eligibleDay, 0, DoseHistory.NO_DAY);
+            if (day != DoseHistory.NO_DAY && (best < 0 || day < due[0])) {
+                best = c;
+                due[0] = day;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Unmaps the snapshot. Objects already built stay valid.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private synchronized String patientString(int row, int offset) {
+        return string(buffer.getInt(patientBase + row * PATIENT_BYTES + offset));
+    }
+
+    private Vaccine getVaccine(int row) {
+        Vaccine v = vaccines[row];
+        if (v == null) {
+            int at = vaccineBase + row * VACCINE_BYTES;
+            String diseases = string(buffer.getInt(at + 40));
+            ArrayList<String> diseaseList = null;
+            if (diseases != null) {
+                diseaseList = new ArrayList<>();
+                if (!diseases.isEmpty()) {
+                    diseaseList.addAll(Arrays.asList(diseases.split(String.valueOf(DISEASE_SEPARATOR), -1)));
+                }
+            }
+            v = new Vaccine(buffer.getInt(at), string(buffer.getInt(at + 4)), string(buffer.getInt(at + 8)),
+                    buffer.getDouble(at + 12), buffer.getInt(at + 20), buffer.getInt(at + 24),
+                    buffer.getInt(at + 28), string(buffer.getInt(at + 32)), string(buffer.getInt(at + 36)),
+                    diseaseList, buffer.getDouble(at + 44));
+            if (catalogue != null) {
+                v = catalogue.intern(v);
+            }
+            vaccines[row] = v;
+        }
+        return v;
+    }
+
+    private String string(int code) {
+        if (code == NULL_CODE) {
+            return null;
+        }
+        String s = strings[code];
+        if (s == null) {
+            int start = buffer.getInt(dictBase + code * 4);
+            int end = buffer.getInt(dictBase + (code + 1) * 4);
+            byte[] bytes = new byte[end - start];
+            buffer.get(dictBytesBase + start, bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+            strings[code] = s;
+        }
+        return s;
+    }
+
+    /**
+     * Writes a model to a snapshot file.
+     *
+     * @param file the file to write
+     * @param model the model to write
+     * @param generation the log generation the snapshot belongs to
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, ClinicModel model, long generation) throws IOException {
+        encode(model, generation).writeTo(file);
+    }
+
+    /**
+     * Encodes the rows of a model that have been built, to be written to a file later, e.g. on
+     * another thread. Built rows are the only ones that can have changed, so they are encoded
+     * now; rows still unbuilt in the snapshot the model was loaded from are left to be copied
+     * straight from its mapped bytes when writing, without building them. Only the returned
+     * writer and that snapshot's bytes are read when writing, so the model can go on changing.
+     *
+     * @param model the model to encode
+     * @param generation the log generation the snapshot belongs to
+     * @return the encoded snapshot
+     */
+    static Writer encode(ClinicModel model, long generation) {
+        Writer writer = new Writer();
+        try {
+            writer.encode(model, generation);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // only in-memory streams are written
+        }
+        return writer;
+    }
+
+    /**
+     * Encodes the model section by section, collecting strings into the dictionary as it goes,
+     * then copies in the unbuilt rows of the snapshot the model was loaded from and writes the
+     * sections out to a file.
+     *
+     * Built patients and visits are encoded first into rows of their own, with their dose and
+     * pool entries counted from 0; assemble() then lays every row out in the model's order,
+     * renumbering entries and, for copied rows, strings, vaccine rows and patient rows.
+     */
+    static final class Writer {
+        private static final int NONE = -1; // no built row, or a source string not copied yet
+
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final ByteArrayOutputStream dictionary = new ByteArrayOutputStream();
+        private int[] dictionaryEnds = new int[256];
+        private int dictionaryCount;
+        private final Map<Vaccine, Integer> vaccineRows = new IdentityHashMap<>();
+        private final Map<ImmunizationPatient, Integer> patientRows = new IdentityHashMap<>();
+
+        private final ByteArrayOutputStream vaccineBytes = new ByteArrayOutputStream();
+        private final DataOutputStream vaccineOut = new DataOutputStream(vaccineBytes);
+
+        private long generation;
+        private int lastVisitNumber;
+        private int patientCount, doseCount, visitCount, poolCount, returnCount, removedCount;
+        private ByteArrayOutputStream patientBytes, doseBytes, visitBytes, poolBytes, returnBytes, removedBytes;
+
+        // Built rows, encoded by encode(); builtPatient[i] is the built row of patient i, or NONE
+        private int[] builtPatient;
+        private ByteArrayOutputStream builtPatientBytes, builtDoseBytes, builtVisitBytes, builtPoolBytes;
+        private int builtVisitCount;
+        // The snapshot unbuilt rows are copied from, null if everything was built
+        private ClinicSnapshot source;
+        private int sourceBase;
+        private boolean copyVisits;
+        private Vaccine[] sourceVaccines;
+        private int[] sourceCodes;
+        private byte[] scratch = new byte[64];
+        private boolean assembled;
+
+        private Writer() {
+        }
+
+        private void encode(ClinicModel model, long generation) throws IOException {
+            List<ImmunizationPatient> slots = model.getPatientSlots();
+            List<Visit> visitList = model.getBuiltVisits();
+            List<Return> returnList = model.getMonthlyReturns();
+            this.generation = generation;
+            lastVisitNumber = model.getLastVisitNumber();
+            patientCount = slots.size();
+            returnCount = returnList.size();
+            source = model.getSavedRegister();
+            if (source != null) {
+                sourceBase = model.getSnapshotBase();
+                copyVisits = model.hasUnbuiltVisits();
+                sourceVaccines = source.getVaccines();
+                sourceCodes = new int[source.dictCount];
+                Arrays.fill(sourceCodes, NONE);
+            }
+
+            builtPatient = new int[patientCount];
+            builtPatientBytes = new ByteArrayOutputStream();
+            builtDoseBytes = new ByteArrayOutputStream();
+            DataOutputStream patientOut = new DataOutputStream(builtPatientBytes);
+            DataOutputStream doseOut = new DataOutputStream(builtDoseBytes);
+            int built = 0;
+            int builtDoses = 0;
+            for (int i = 0; i < patientCount; i++) {
+                ImmunizationPatient p = slots.get(i);
+                if (p == null) {
+                    builtPatient[i] = NONE;
+                    continue;
+                }
+                builtPatient[i] = built++;
+                patientRows.put(p, i);
+                patientOut.writeInt(code(p.getPatientId()));
+                patientOut.writeInt(code(p.getName()));
+                patientOut.writeInt(code(p.getOutPatientNumber()));
+                patientOut.writeInt(code(p.getHealthInsuranceNumber()));
+                patientOut.writeInt(code(p.getNationalIdentificationNumber()));
+                patientOut.writeInt(code(p.getAddress()));
+                patientOut.writeInt(code(p.getSex()));
+                patientOut.writeInt(code(p.getMotherId()));
+                patientOut.writeInt(p.getDateOfBirth() == null ? NULL_DAY : (int) EpochDays.of(p.getDateOfBirth()));
+                patientOut.writeInt(p.getAge());
+                patientOut.writeDouble(p.getWeightKG());
+                patientOut.writeInt(builtDoses);
+                int firstDose = builtDoses;
+                // Counts first, then the dated doses, which only ever raise them
+                DoseCounts counts = p.getDoseCounts();
+                for (int slot = 0; counts != null && slot < counts.capacity(); slot++) {
+                    if (counts.getVaccineAt(slot) != null) {
+                        doseOut.writeInt(vaccineRow(counts.getVaccineAt(slot)));
+                        doseOut.writeInt(counts.getCountAt(slot));
+                        doseOut.writeInt(NULL_DAY);
+                        builtDoses++;
+                    }
+                }
+                DoseHistory history = p.getDoseHistory();
+                for (int d = 0; history != null && d < history.size(); d++) {
+                    Vaccine vaccine = counts.getVaccine(history.getVaccineId(d));
+                    if (vaccine != null) {
+                        doseOut.writeInt(vaccineRow(vaccine));
+                        doseOut.writeInt(history.getDoseNumber(d));
+                        doseOut.writeInt(history.getDay(d));
+                        builtDoses++;
+                    }
+                }
+                patientOut.writeInt(builtDoses - firstDose);
+            }
+
+            builtVisitCount = visitList.size();
+            builtVisitBytes = new ByteArrayOutputStream(visitList.size() * VISIT_BYTES);
+            builtPoolBytes = new ByteArrayOutputStream();
+            DataOutputStream visitOut = new DataOutputStream(builtVisitBytes);
+            DataOutputStream poolOut = new DataOutputStream(builtPoolBytes);
+            int builtPool = 0;
+            for (Visit v : visitList) {
+                visitOut.writeInt(patientRows.get(v.getPatient()));
+                visitOut.writeInt((int) EpochDays.of(v.getVisitDate()));
+                visitOut.writeInt(code(v.getRemarks()));
+                visitOut.writeInt(builtPool);
+                List<Vaccine> given = v.getDosesAdministered();
+                visitOut.writeInt(given.size());
+                for (Vaccine vaccine : given) {
+                    poolOut.writeInt(vaccineRow(vaccine));
+                    builtPool++;
+                }
+                visitOut.writeInt(v.getNumber());
+            }
+
+            returnBytes = new ByteArrayOutputStream(returnList.size() * RETURN_BYTES);
+            DataOutputStream returnOut = new DataOutputStream(returnBytes);
+            for (Return r : returnList) {
+                returnOut.writeInt(code(r.getImmunizationCentre()));
+                returnOut.writeInt(code(r.getMetro()));
+                returnOut.writeInt(code(r.getRegion()));
+                returnOut.writeInt(code(r.getMonth()));
+                returnOut.writeInt(r.getTotalDosesAdministered());
+                returnOut.writeInt(r.getTotalDosesUsed());
+                returnOut.writeDouble(r.getWastageRate());
+                returnOut.writeInt(r.getVitaminADeficiency());
+                returnOut.writeInt(r.getVitaminAAEFIReported());
+                returnOut.writeInt(r.getSafetyBoxesUsed());
+                returnOut.writeInt(r.getSafetyBoxesDisposedIncinerator());
+                returnOut.writeInt(r.getSafetyBoxesDisposedPit());
+            }
+
+            removedBytes = new ByteArrayOutputStream();
+            DataOutputStream removedOut = new DataOutputStream(removedBytes);
+            ReturnAggregator removed = model.getRemovedPatientDoses();
+            for (int month : removed.getMonthsCounted()) {
+                ReturnAggregator.MonthCounts counts = removed.getMonth(month / 12, month % 12 + 1);
+                for (int vaccineId : counts.getVaccineIds()) {
+                    for (int dose = 0; dose <= counts.getMaxDose(vaccineId); dose++) {
+                        for (int band = 0; band < ReturnAggregator.BANDS; band++) {
+                            int doses = counts.get(vaccineId, dose, band);
+                            if (doses != 0) {
+                                removedOut.writeInt(month);
+                                removedOut.writeInt(vaccineRow(counts.getVaccine(vaccineId)));
+                                removedOut.writeInt(dose);
+                                removedOut.writeInt(band);
+                                removedOut.writeInt(doses);
+                                removedCount++;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Lays out the patient, dose, visit and pool sections in the model's order: built rows
+         * from what encode() wrote, and unbuilt rows copied from the source snapshot.
+         */
+        private void assemble() throws IOException {
+            patientBytes = new ByteArrayOutputStream(patientCount * PATIENT_BYTES);
+            doseBytes = new ByteArrayOutputStream();
+            DataOutputStream patientOut = new DataOutputStream(patientBytes);
+            DataOutputStream doseOut = new DataOutputStream(doseBytes);
+            ByteBuffer builtRows = ByteBuffer.wrap(builtPatientBytes.toByteArray());
+            byte[] builtDoses = builtDoseBytes.toByteArray();
+            for (int i = 0; i < patientCount; i++) {
+                if (builtPatient[i] == NONE) {
+                    copyPatient(i - sourceBase, patientOut, doseOut);
+                    continue;
+                }
+                int at = builtPatient[i] * PATIENT_BYTES;
+                int first = builtRows.getInt(at + 48);
+                int count = builtRows.getInt(at + 52);
+                patientOut.write(builtRows.array(), at, 48);
+                patientOut.writeInt(doseCount);
+                patientOut.writeInt(count);
+                doseOut.write(builtDoses, first * DOSE_BYTES, count * DOSE_BYTES);
+                doseCount += count;
+            }
+            builtPatientBytes = null;
+            builtDoseBytes = null;
+
+            visitBytes = new ByteArrayOutputStream();
+            poolBytes = new ByteArrayOutputStream();
+            DataOutputStream visitOut = new DataOutputStream(visitBytes);
+            DataOutputStream poolOut = new DataOutputStream(poolBytes);
+            if (copyVisits) {
+                // saved visits come before those added since, as the model indexes them
+                for (int row = 0; row < source.visitCount; row++) {
+                    copyVisit(row, visitOut, poolOut);
+                }
+            }
+            ByteBuffer builtVisits = ByteBuffer.wrap(builtVisitBytes.toByteArray());
+            byte[] builtPool = builtPoolBytes.toByteArray();
+            for (int v = 0; v < builtVisitCount; v++) {
+                int at = v * VISIT_BYTES;
+                int first = builtVisits.getInt(at + 12);
+                int count = builtVisits.getInt(at + 16);
+                visitOut.write(builtVisits.array(), at, 12);
+                visitOut.writeInt(poolCount);
+                visitOut.writeInt(count);
+                visitOut.writeInt(builtVisits.getInt(at + 20));
+                poolOut.write(builtPool, first * POOL_BYTES, count * POOL_BYTES);
+                poolCount += count;
+                visitCount++;
+            }
+            builtVisitBytes = null;
+            builtPoolBytes = null;
+            assembled = true;
+        }
+
+        /**
+         * Copies an unbuilt patient row and its dose entries from the source snapshot.
+         */
+        private void copyPatient(int row, DataOutputStream patientOut, DataOutputStream doseOut) throws IOException {
+            ByteBuffer from = source.buffer;
+            int at = source.patientBase + row * PATIENT_BYTES;
+            for (int field = 0; field < 32; field += 4) {
+                patientOut.writeInt(copyCode(from.getInt(at + field)));
+            }
+            patientOut.writeInt(from.getInt(at + 32));
+            patientOut.writeInt(from.getInt(at + 36));
+            patientOut.writeDouble(from.getDouble(at + 40));
+            int first = from.getInt(at + 48);
+            int count = from.getInt(at + 52);
+            patientOut.writeInt(doseCount);
+            patientOut.writeInt(count);
+            for (int i = first; i < first + count; i++) {
+                int dose = source.doseBase + i * DOSE_BYTES;
+                doseOut.writeInt(vaccineRow(sourceVaccines[from.getInt(dose)]));
+                doseOut.writeInt(from.getInt(dose + 4));
+                doseOut.writeInt(from.getInt(dose + 8));
+            }
+            doseCount += count;
+        }
+
+        /**
+         * Copies an unbuilt visit row and its pool entries from the source snapshot. No saved
+         * patient has been removed or moved while the saved visits are unbuilt, so the visit's
+         * patient is still at the same place after any patients that came before the snapshot.
+         */
+        private void copyVisit(int row, DataOutputStream visitOut, DataOutputStream poolOut) throws IOException {
+            ByteBuffer from = source.buffer;
+            int at = source.visitBase + row * VISIT_BYTES;
+            visitOut.writeInt(sourceBase + from.getInt(at));
+            visitOut.writeInt(from.getInt(at + 4));
+            visitOut.writeInt(copyCode(from.getInt(at + 8)));
+            int first = from.getInt(at + 12);
+            int count = from.getInt(at + 16);
+            visitOut.writeInt(poolCount);
+            visitOut.writeInt(count);
+            visitOut.writeInt(from.getInt(at + 20));
+            for (int i = first; i < first + count; i++) {
+                poolOut.writeInt(vaccineRow(sourceVaccines[from.getInt(source.poolBase + i * POOL_BYTES)]));
+            }
+            poolCount += count;
+            visitCount++;
+        }
+
+        /**
+         * Writes the encoded snapshot to a file, copying in the unbuilt rows first.
+         *
+         * @param file the file to write
+         * @throws IOException if the file cannot be written
+         */
+        void writeTo(Path file) throws IOException {
+            if (!assembled) {
+                assemble();
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(generation);
+                out.writeInt(vaccineRows.size());
+                out.writeInt(patientCount);
+                out.writeInt(doseCount);
+                out.writeInt(visitCount);
+                out.writeInt(poolCount);
+                out.writeInt(returnCount);
+                out.writeInt(dictionaryCount);
+                out.writeInt(lastVisitNumber);
+                out.writeInt(removedCount);
+                vaccineBytes.writeTo(out);
+                patientBytes.writeTo(out);
+                doseBytes.writeTo(out);
+                visitBytes.writeTo(out);
+                poolBytes.writeTo(out);
+                returnBytes.writeTo(out);
+                removedBytes.writeTo(out);
+                out.writeInt(0);
+                for (int i = 0; i < dictionaryCount; i++) {
+                    out.writeInt(dictionaryEnds[i]);
+                }
+                dictionary.writeTo(out);
+            }
+        }
+
+        private int vaccineRow(Vaccine v) throws IOException {
+            Integer row = vaccineRows.get(v);
+            if (row != null) {
+                return row;
+            }
+            row = vaccineRows.size();
+            vaccineRows.put(v, row);
+            vaccineOut.writeInt(v.getID());
+            vaccineOut.writeInt(code(v.getName()));
+            vaccineOut.writeInt(code(v.getBrand()));
+            vaccineOut.writeDouble(v.getDosageML());
+            vaccineOut.writeInt(v.getNumOfDosage());
+            vaccineOut.writeInt(v.getInterval());
+            vaccineOut.writeInt(v.getMinAge());
+            vaccineOut.writeInt(code(v.adminMode));
+            vaccineOut.writeInt(code(v.adminLocation));
+            List<String> diseases = v.getDiseasesTreated();
+            vaccineOut.writeInt(diseases == null ? NULL_CODE : code(String.join(String.valueOf(DISEASE_SEPARATOR), diseases)));
+            vaccineOut.writeDouble(v.getMinWeightKG());
+            return row;
+        }
+
+        private int code(String s) {
+            if (s == null) {
+                return NULL_CODE;
+            }
+            Integer code = codes.get(s);
+            if (code == null) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                code = addString(bytes, 0, bytes.length);
+                codes.put(s, code);
+            }
+            return code;
+        }
+
+        /**
+         * Gives a string of the source snapshot a code in this one, copying its bytes across
+         * the first time without decoding it. It may end up stored twice if a built row has
+         * the same string, which costs a few bytes but nothing else.
+         */
+        private int copyCode(int sourceCode) {
+            if (sourceCode == NULL_CODE) {
+                return NULL_CODE;
+            }
+            int code = sourceCodes[sourceCode];
+            if (code == NONE) {
+                ByteBuffer from = source.buffer;
+                int start = from.getInt(source.dictBase + sourceCode * 4);
+                int end = from.getInt(source.dictBase + (sourceCode + 1) * 4);
+                if (scratch.length < end - start) {
+                    scratch = new byte[Math.max(end - start, scratch.length * 2)];
+                }
+                from.get(source.dictBytesBase + start, scratch, 0, end - start);
+                code = addString(scratch, 0, end - start);
+                sourceCodes[sourceCode] = code;
+            }
+            return code;
+        }
+
+        private int addString(byte[] bytes, int offset, int length) {
+            dictionary.write(bytes, offset, length);
+            if (dictionaryCount == dictionaryEnds.length) {
+                dictionaryEnds = Arrays.copyOf(dictionaryEnds, dictionaryCount * 2);
+            }
+            dictionaryEnds[dictionaryCount] = dictionary.size();
+            return dictionaryCount++;
+        }
+    }
+}
@@ -0,0 +1,659 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * ClinicStore.java
+ * Durable storage for a ClinicModel: an append-only write-ahead log of add/remove
+ * events plus periodic snapshots of the whole register.
+ *
+ * Every log record is framed as [length][CRC32][payload], so a torn write at the end
+ * of the log is detected and dropped on the next start. Events are buffered in memory
+ * and a background thread writes and fsyncs them every few milliseconds (group commit),
+ * so a button click never waits on the disk.
+ *
+ * Once the log holds enough events the rows of the model that have been built are encoded
+ * for a new ClinicSnapshot and a fresh log generation is started; the background thread
+ * then copies in the rows still unbuilt in the mapped snapshot and writes the file, so the
+ * event that triggers a checkpoint neither waits on the disk nor builds the saved register.
+ * Startup maps the newest snapshot and replays the log of the same generation and any later
+ * ones, which covers a crash before a snapshot being written in the background was finished.
+ *
+ * @author Milo Keys
+ * @version October 18, 2026
+ */
+class ClinicStore implements Closeable {
+    private static final long SYNC_INTERVAL_MS = 25;
+    private static final int DEFAULT_CHECKPOINT_EVENTS = 10_000;
+
+    static final byte ADD_PATIENT = 1;
+    static final byte REMOVE_PATIENT = 2;
+    static final byte ADD_VISIT = 3;
+    static final byte REMOVE_VISIT = 4;
+    static final byte ADD_RETURN = 5;
+    static final byte ADD_PATIENTS = 6;
+    static final byte ADD_DOSE = 7;
+
+    // patients per ADD_PATIENTS record, keeps bulk records well under the record size limit
+    private static final int PATIENTS_PER_RECORD = 1000;
+
+    private final Path directory;
+    private final int checkpointEvents;
+    private final ScheduledExecutorService syncer;
+
+    private ClinicModel model;
+    private long generation;
+    private FileChannel log;
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private int eventsSinceCheckpoint;
+    private IOException syncFailure;
+    // set by a checkpoint that could not write its snapshot; its logs are kept, so nothing is lost
+    private volatile IOException checkpointFailure;
+
+    /**
+     * Opens (or creates) a store in the given directory.
+     *
+     * @param directory the directory holding the snapshot and log files
+     * @throws IOException if the directory cannot be created
+     */
+    public ClinicStore(Path directory) throws IOException {
+        this(directory, DEFAULT_CHECKPOINT_EVENTS);
+    }
+
+    /**
+     * Opens (or creates) a store in the given directory.
+     *
+     * @param directory the directory holding the snapshot and log files
+     * @param checkpointEvents number of logged events after which a new snapshot is taken
+     * @throws IOException if the directory cannot be created
+     */
+    public ClinicStore(Path directory, int checkpointEvents) throws IOException {
+        this.directory = directory;
+        this.checkpointEvents = checkpointEvents;
+        Files.createDirectories(directory);
+        this.syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "clinic-store-sync");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Loads the latest snapshot and log tail into an empty model, then attaches the
+     * store to the model so every later change is logged.
+     *
+     * @param model the model to load into
+     * @throws IOException if the files cannot be read
+     */
+    public void load(ClinicModel model) throws IOException {
+        Map<Integer, Vaccine> vaccines = new HashMap<>();
+        generation = latestSnapshotGeneration();
+        if (generation > 0) {
+            model.loadSnapshot(ClinicSnapshot.open(snapshotPath(generation), model.getVaccineCatalogue()));
+        }
+        deleteOlderThan(generation);
+
+        // a snapshot still being written when the clinic stopped leaves later logs behind it
+        while (Files.exists(logPath(generation + 1))) {
+            replay(logPath(generation), model, vaccines);
+            generation++;
+        }
+        Path logFile = logPath(generation);
+        long validLength = Files.exists(logFile) ? replay(logFile, model, vaccines) : 0;
+        log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        log.truncate(validLength); // drop a torn record left by a crash
+        log.position(validLength);
+
+        this.model = model;
+        model.setStore(this);
+        syncer.scheduleWithFixedDelay(this::syncQuietly, SYNC_INTERVAL_MS, SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Applies the records of a log to a model.
+     *
+     * @return the length of the log up to the first torn or corrupt record
+     */
+    private long replay(Path logFile, ClinicModel model, Map<Integer, Vaccine> vaccines) throws IOException {
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(logFile))) {
+            byte[] payload;
+            while ((payload = readRecord(in)) != null) {
+                apply(model, payload, vaccines);
+                validLength += 8 + payload.length;
+                eventsSinceCheckpoint++;
+            }
+        }
+        return validLength;
+    }
+
+    /**
+     * Logs a patient being added.
+     *
+     * @param patient the patient added
+     */
+    public void patientAdded(ImmunizationPatient patient) {
+        append(out -> {
+            out.writeByte(ADD_PATIENT);
+            writePatient(out, patient);
+        });
+    }
+
+    /**
+     * Logs a batch of patients being added, a thousand patients to a record.
+     *
+     * @param added the patients added
+     */
+    public void patientsAdded(List<ImmunizationPatient> added) {
+        for (int from = 0; from < added.size(); from += PATIENTS_PER_RECORD) {
+            List<ImmunizationPatient> group = added.subList(from, Math.min(added.size(), from + PATIENTS_PER_RECORD));
+            append(group.size(), out -> {
+                out.writeByte(ADD_PATIENTS);
+                out.writeInt(group.size());
+                for (ImmunizationPatient patient : group) {
+                    writePatient(out, patient);
+                }
+            });
+        }
+    }
+
+    /**
+     * Logs a patient, and with it their visits, being removed.
+     *
+     * @param patient the patient removed
+     */
+    public void patientRemoved(ImmunizationPatient patient) {
+        append(out -> {
+            out.writeByte(REMOVE_PATIENT);
+            out.writeUTF(patient.getPatientId());
+        });
+    }
+
+    /**
+     * Logs a visit being recorded, including the doses administered so far.
+     *
+     * @param visit the visit added
+     */
+    public void visitAdded(Visit visit) {
+        append(out -> {
+            out.writeByte(ADD_VISIT);
+            writeVisit(out, visit);
+        });
+    }
+
+    /**
+     * Logs a dose given on a visit after the visit was recorded, naming the visit by its number.
+     *
+     * @param visit the visit the dose was given on
+     * @param vaccine the vaccine given
+     */
+    public void doseAdded(Visit visit, Vaccine vaccine) {
+        append(out -> {
+            out.writeByte(ADD_DOSE);
+            out.writeUTF(visit.getPatient().getPatientId());
+            out.writeInt(visit.getNumber());
+            writeVaccine(out, vaccine);
+        });
+    }
+
+    /**
+     * Logs a visit being removed, naming it by its number.
+     *
+     * @param visit the visit removed
+     */
+    public void visitRemoved(Visit visit) {
+        append(out -> {
+            out.writeByte(REMOVE_VISIT);
+            out.writeUTF(visit.getPatient().getPatientId());
+            out.writeInt(visit.getNumber());
+        });
+    }
+
+    /**
+     * Logs a monthly return being added.
+     *
+     * @param r the return added
+     */
+    public void returnAdded(Return r) {
+        append(out -> {
+            out.writeByte(ADD_RETURN);
+            writeReturn(out, r);
+        });
+    }
+
+    /**
+     * Encodes the built rows of the model for a new snapshot and starts a new, empty log
+     * generation, then leaves the background thread to copy in the unbuilt rows and write the
+     * snapshot. Only built rows can have changed, so they are encoded on the calling thread,
+     * where the model is changed; the unbuilt ones are never built. The snapshot is written to
+     * a temporary file and renamed into place, and the earlier logs are only deleted after
+     * that, so a crash part way through replays them on top of the previous snapshot.
+     *
+     * @throws IOException if the new log cannot be opened, or the last snapshot could not be written
+     */
+    public synchronized void checkpoint() throws IOException {
+        IOException failure = checkpointFailure;
+        if (failure != null) {
+            checkpointFailure = null;
+            throw failure;
+        }
+        sync();
+        long next = generation + 1;
+        ClinicSnapshot.Writer snapshot = ClinicSnapshot.encode(model, next);
+
+        FileChannel oldLog = log;
+        log = FileChannel.open(logPath(next), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        generation = next;
+        eventsSinceCheckpoint = 0;
+        oldLog.close();
+        syncer.execute(() -> writeSnapshot(snapshot, next));
+    }
+
+    /**
+     * Copies the unbuilt rows into an encoded snapshot, writes it into place and deletes the
+     * files it replaces.
+     * Runs on the background thread without the store's lock, so logging carries on meanwhile.
+     */
+    private void writeSnapshot(ClinicSnapshot.Writer snapshot, long gen) {
+        try {
+            Path tmp = directory.resolve("clinic.snapshot.tmp");
+            snapshot.writeTo(tmp);
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ch.force(true);
+            }
+            Files.move(tmp, snapshotPath(gen), StandardCopyOption.ATOMIC_MOVE);
+            deleteOlderThan(gen);
+        } catch (IOException e) {
+            // surfaced to the next caller of checkpoint() or close()
+            checkpointFailure = e;
+        }
+    }
+
+    /**
+     * Writes any buffered events to the log and forces them to disk.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    public synchronized void sync() throws IOException {
+        if (syncFailure != null) {
+            throw syncFailure;
+        }
+        if (pending.size() == 0) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+        pending.reset();
+        while (buffer.hasRemaining()) {
+            log.write(buffer);
+        }
+        log.force(false);
+    }
+
+    /**
+     * Flushes outstanding events, takes a final snapshot, closes the log and waits for
+     * the snapshot to be written.
+     *
+     * @throws IOException if the final write fails
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (log != null) {
+                if (eventsSinceCheckpoint > 0) {
+                    checkpoint();
+                } else {
+                    sync();
+                }
+                log.close();
+                log = null;
+            }
+        }
+        // waited for outside the lock, which a sync already running on the thread may be waiting for
+        syncer.shutdown();
+        try {
+            syncer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (checkpointFailure != null) {
+            throw checkpointFailure;
+        }
+    }
+
+    private interface Encoder {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private void append(Encoder encoder) {
+        append(1, encoder);
+    }
+
+    private synchronized void append(int events, Encoder encoder) {
+        if (log == null) {
+            return;
+        }
+        try {
+            writeRecord(new DataOutputStream(pending), encode(encoder));
+            eventsSinceCheckpoint += events;
+            if (eventsSinceCheckpoint >= checkpointEvents) {
+                checkpoint();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private synchronized void syncQuietly() {
+        try {
+            if (log != null) {
+                sync();
+            }
+        } catch (IOException e) {
+            // surfaced to the next caller of sync() or close()
+            syncFailure = e;
+        }
+    }
+
+    private Path logPath(long gen) {
+        return directory.resolve("clinic-" + gen + ".log");
+    }
+
+    private Path snapshotPath(long gen) {
+        return directory.resolve("clinic-" + gen + ".snapshot");
+    }
+
+    /**
+     * Finds the newest snapshot in the directory.
+     *
+     * @return its generation, or 0 if there is none
+     */
+    private long latestSnapshotGeneration() throws IOException {
+        long latest = 0;
+        try (var files = Files.newDirectoryStream(directory, "clinic-*.snapshot")) {
+            for (Path file : files) {
+                latest = Math.max(latest, generationOf(file));
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Deletes snapshots and logs of earlier generations. A file that is still
+     * mapped (some platforms refuse to delete those) is left for a later run.
+     */
+    private void deleteOlderThan(long gen) throws IOException {
+        try (var files = Files.newDirectoryStream(directory, "clinic-*.{snapshot,log}")) {
+            for (Path file : files) {
+                if (generationOf(file) < gen) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        // retried on the next checkpoint
+                    }
+                }
+            }
+        }
+    }
+
+    private static long generationOf(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring("clinic-".length(), name.lastIndexOf('.')));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] encode(Encoder encoder) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        encoder.write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static void writeRecord(DataOutputStream out, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+    }
+
+    /**
+     * Reads one framed record.
+     *
+     * @return the payload, or null at the end of the file or at a torn/corrupt record
+     */
+    private static byte[] readRecord(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length < 0 || length > (1 << 24)) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            return (int) crc.getValue() == checksum ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static void apply(ClinicModel model, byte[] payload, Map<Integer, Vaccine> vaccines) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        switch (in.readByte()) {
+            case ADD_PATIENT:
+                model.addPatient(readPatient(in));
+                break;
+            case ADD_PATIENTS:
+                int count = in.readInt();
+                List<ImmunizationPatient> added = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    added.add(readPatient(in));
+                }
+                model.addPatients(added);
+                break;
+            case REMOVE_PATIENT:
+                model.removePatient(model.getPatientByPatientID(in.readUTF()));
+                break;
+            case ADD_VISIT:
+                Visit visit = readVisit(in, model, vaccines);
+                if (visit != null) {
+                    model.addVisit(visit);
+                }
+                break;
+            case REMOVE_VISIT:
+                Visit removed = model.findVisit(in.readUTF(), in.readInt());
+                if (removed != null) {
+                    model.removeVisit(removed);
+                }
+                break;
+            case ADD_DOSE:
+                Visit dosed = model.findVisit(in.readUTF(), in.readInt());
+                Vaccine given = readVaccine(in, model, vaccines);
+                if (dosed != null) {
+                    dosed.AdminsterDose(given);
+                }
+                break;
+            case ADD_RETURN:
+                model.addMonthlyReturn(readReturn(in));
+                break;
+            default:
+                throw new IOException("Unknown record type in clinic log");
+        }
+    }
+
+    private static void writePatient(DataOutputStream out, ImmunizationPatient p) throws IOException {
+        out.writeUTF(p.getPatientId());
+        out.writeLong(p.getDateOfBirth() == null ? Long.MIN_VALUE : p.getDateOfBirth().getTime());
+        writeString(out, p.getName());
+        writeString(out, p.getOutPatientNumber());
+        writeString(out, p.getHealthInsuranceNumber());
+        writeString(out, p.getNationalIdentificationNumber());
+        writeString(out, p.getAddress());
+        writeString(out, p.getSex());
+        out.writeInt(p.getAge());
+        writeString(out, p.getMotherId());
+        out.writeDouble(p.getWeightKG());
+    }
+
+    private static ImmunizationPatient readPatient(DataInputStream in) throws IOException {
+        String id = in.readUTF();
+        long dob = in.readLong();
+        String name = readString(in);
+        String outPatientNumber = readString(in);
+        String insuranceNumber = readString(in);
+        String nationalId = readString(in);
+        String address = readString(in);
+        String sex = readString(in);
+        int age = in.readInt();
+        String motherId = readString(in);
+        double weight = in.readDouble();
+        return new ImmunizationPatient(id, dob == Long.MIN_VALUE ? null : new Date(dob), name, outPatientNumber,
+                insuranceNumber, nationalId, address, sex, age, motherId, null, weight);
+    }
+
+    private static void writeVisit(DataOutputStream out, Visit visit) throws IOException {
+        out.writeUTF(visit.getPatient().getPatientId());
+        out.writeLong(visit.getVisitDate().getTime());
+        writeString(out, visit.getRemarks());
+        List<Vaccine> doses = visit.getDosesAdministered();
+        out.writeInt(doses.size());
+        for (Vaccine v : doses) {
+            writeVaccine(out, v);
+        }
+        out.writeInt(visit.getNumber());
+    }
+
+    /**
+     * Rebuilds a visit and re-administers its doses, which also restores the
+     * patient's dose counts.
+     */
+    private static Visit readVisit(DataInputStream in, ClinicModel model, Map<Integer, Vaccine> vaccines) throws IOException {
+        ImmunizationPatient patient = model.getPatientByPatientID(in.readUTF());
+        Date date = new Date(in.readLong());
+        String remarks = readString(in);
+        int doseCount = in.readInt();
+        List<Vaccine> doses = new ArrayList<>(doseCount);
+        for (int i = 0; i < doseCount; i++) {
+            doses.add(readVaccine(in, model, vaccines));
+        }
+        int number = in.readInt();
+        if (patient == null) {
+            return null;
+        }
+        Visit visit = new Visit(patient, date, remarks);
+        visit.setNumber(number);
+        for (Vaccine v : doses) {
+            visit.AdminsterDose(v);
+        }
+        return visit;
+    }
+
+    private static void writeVaccine(DataOutputStream out, Vaccine v) throws IOException {
+        out.writeInt(v.getID());
+        writeString(out, v.getName());
+        writeString(out, v.getBrand());
+        out.writeDouble(v.getDosageML());
+        out.writeInt(v.getNumOfDosage());
+        out.writeInt(v.getInterval());
+        out.writeInt(v.getMinAge());
+        writeString(out, v.adminMode);
+        writeString(out, v.adminLocation);
+        List<String> diseases = v.getDiseasesTreated();
+        out.writeInt(diseases == null ? -1 : diseases.size());
+        if (diseases != null) {
+            for (String d : diseases) {
+                writeString(out, d);
+            }
+        }
+        out.writeDouble(v.getMinWeightKG());
+    }
+
+    /**
+     * Reads a vaccine and hands back the clinic's own object for it.
+     */
+    private static Vaccine readVaccine(DataInputStream in, ClinicModel model, Map<Integer, Vaccine> vaccines)
+            throws IOException {
+        Vaccine v = readVaccine(in);
+        return vaccines.computeIfAbsent(v.getID(), k -> model.getVaccineCatalogue().intern(v));
+    }
+
+    private static Vaccine readVaccine(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        String name = readString(in);
+        String brand = readString(in);
+        double dosageML = in.readDouble();
+        int numOfDosage = in.readInt();
+        int interval = in.readInt();
+        int minAge = in.readInt();
+        String adminMode = readString(in);
+        String adminLocation = readString(in);
+        int diseaseCount = in.readInt();
+        ArrayList<String> diseases = null;
+        if (diseaseCount >= 0) {
+            diseases = new ArrayList<>(diseaseCount);
+            for (int i = 0; i < diseaseCount; i++) {
+                diseases.add(readString(in));
+            }
+        }
+        double minWeightKG = in.readDouble();
+        return new Vaccine(id, name, brand, dosageML, numOfDosage, interval, minAge,
+                adminMode, adminLocation, diseases, minWeightKG);
+    }
+
+    private static void writeReturn(DataOutputStream out, Return r) throws IOException {
+        writeString(out, r.getImmunizationCentre());
+        writeString(out, r.getMetro());
+        writeString(out, r.getRegion());
+        writeString(out, r.getMonth());
+        out.writeInt(r.getTotalDosesAdministered());
+        out.writeInt(r.getTotalDosesUsed());
+        out.writeDouble(r.getWastageRate());
+        out.writeInt(r.getVitaminADeficiency());
+        out.writeInt(r.getVitaminAAEFIReported());
+        out.writeInt(r.getSafetyBoxesUsed());
+        out.writeInt(r.getSafetyBoxesDisposedIncinerator());
+        out.writeInt(r.getSafetyBoxesDisposedPit());
+    }
+
+    private static Return readReturn(DataInputStream in) throws IOException {
+        return new Return(readString(in), readString(in), readString(in), readString(in),
+                in.readInt(), in.readInt(), in.readDouble(),
+                in.readInt(), in.readInt(), in.readInt(),
+                in.readInt(), in.readInt());
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -1,12 +1,12 @@
 import javax.swing.table.DefaultTableModel;
 import java.awt.event.ActionListener;
+import javax.swing.event.ChangeListener;
 import java.io.*;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Locale;
 import java.util.List;
-import java.util.Map;
 import javax.swing.*;
 import java.awt.*;
 
@@ -36,10 +36,12 @@ public class ClinicView {
     // Patients Tab
     private JPanel patientsPanel;
     private JTable patientsTable;
+    private PatientTableModel patientTableModel;
     private JScrollPane patientsScrollPane;
     private JButton searchPatientButton;
     private JButton deletePatientButton;
     private JButton addPatientButton;
+    private JButton importPatientsButton;
     private JPanel patientsButtonPanel;
     private JTextField searchField;
 
@@ -79,9 +81,9 @@ public class ClinicView {
     private JButton addVitaminButton;
     private JButton deleteVitaminButton;
 
-    // Add these maps to track stock data
-    private Map<Integer, Integer> vaccineStock = new HashMap<>();
-    private Map<Integer, Integer> vitaminStock = new HashMap<>();
+    // Stock shown in the Vaccines and Vitamins tabs, see setInventories
+    private Inventory vaccineInventory = new Inventory("vaccine");
+    private Inventory vitaminInventory = new Inventory("vitamin");
 
     /**
      * Constructs a new ClinicView and initializes the GUI components.
@@ -172,6 +174,16 @@ public class ClinicView {
         };
         patientsTable = new JTable(model);
         patientsTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // Clicking a column header sorts by it, clicking again reverses the order
+        patientsTable.getTableHeader().addMouseListener(new java.awt.event.MouseAdapter() {
+            @Override
+            public void mouseClicked(java.awt.event.MouseEvent e) {
+                int column = patientsTable.columnAtPoint(e.getPoint());
+                if (column >= 0 && patientTableModel != null) {
+                    patientTableModel.toggleSort(patientsTable.convertColumnIndexToModel(column));
+                }
+            }
+        });
         
         patientsScrollPane = new JScrollPane(patientsTable);
         patientsPanel.add(patientsScrollPane, BorderLayout.CENTER);
@@ -189,9 +201,11 @@ public class ClinicView {
         // Action buttons
         addPatientButton = new JButton("Add Patient");
         deletePatientButton = new JButton("Delete Selected");
+        importPatientsButton = new JButton("Import Register");
         
         patientsButtonPanel.add(addPatientButton);
         patientsButtonPanel.add(deletePatientButton);
+        patientsButtonPanel.add(importPatientsButton);
         
         patientsPanel.add(patientsButtonPanel, BorderLayout.SOUTH);
         
@@ -272,25 +286,7 @@ public class ClinicView {
     private void createVaccinesTab() {
         vaccinesPanel = new JPanel(new BorderLayout());
 
-        // Create table model with columns
-        String[] columns = {"ID", "Name", "Brand", "Dosage (ml)", "Stock"};
-        DefaultTableModel model = new DefaultTableModel(columns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                // Only allow editing the stock column
-                return column == 4;
-            }
-
-            @Override
-            public Class<?> getColumnClass(int columnIndex) {
-                if (columnIndex == 4) { // Stock column
-                    return Integer.class;
-                }
-                return String.class;
-            }
-        };
-
-        vaccinesTable = new JTable(model);
+        vaccinesTable = new JTable(new InventoryTableModel(vaccineInventory, "ml"));
         vaccinesTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 
         vaccinesScrollPane = new JScrollPane(vaccinesTable);
@@ -320,9 +316,6 @@ public class ClinicView {
         restockVaccineButton.addActionListener(e -> showRestockVaccineDialog());
         addVaccineButton.addActionListener(e -> showAddVaccineDialog());
         deleteVaccineButton.addActionListener(e -> deleteSelectedVaccine());
-
-        // Load initial data
-        loadVaccinesData();
     }
 
     /**
@@ -331,25 +324,7 @@ public class ClinicView {
     private void createVitaminsTab() {
         vitaminsPanel = new JPanel(new BorderLayout());
 
-        // Create table model with columns
-        String[] columns = {"ID", "Name", "Brand", "Dosage (mg)", "Stock"};
-        DefaultTableModel model = new DefaultTableModel(columns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                // Only allow editing the stock column
-                return column == 4;
-            }
-
-            @Override
-            public Class<?> getColumnClass(int columnIndex) {
-                if (columnIndex == 4) { // Stock column
-                    return Integer.class;
-                }
-                return String.class;
-            }
-        };
-
-        vitaminsTable = new JTable(model);
+        vitaminsTable = new JTable(new InventoryTableModel(vitaminInventory, "mg"));
         vitaminsTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 
         vitaminsScrollPane = new JScrollPane(vitaminsTable);
@@ -379,9 +354,6 @@ public class ClinicView {
         restockVitaminButton.addActionListener(e -> showRestockVitaminDialog());
         addVitaminButton.addActionListener(e -> showAddVitaminDialog());
         deleteVitaminButton.addActionListener(e -> deleteSelectedVitamin());
-
-        // Load initial data
-        loadVitaminsData();
     }
 
     /**
@@ -408,19 +380,13 @@ public class ClinicView {
 
         if (result == JOptionPane.OK_OPTION) {
             try {
-                int id = Integer.parseInt(idField.getText());
-                int amount = Integer.parseInt(amountField.getText());
-
-                // Find the vaccine in the table and update stock
-                for (int row = 0; row < vaccinesTable.getRowCount(); row++) {
-                    if ((int)vaccinesTable.getValueAt(row, 0) == id) {
-                        int currentStock = (int)vaccinesTable.getValueAt(row, 4);
-                        vaccinesTable.setValueAt(currentStock + amount, row, 4);
-                        break;
-                    }
-                }
+                int id = Integer.parseInt(idField.getText().trim());
+                int amount = Integer.parseInt(amountField.getText().trim());
+                vaccineInventory.restock(id, amount);
             } catch (NumberFormatException e) {
                 displayMessage("Please enter valid numbers for ID and amount");
+            } catch (IllegalArgumentException e) {
+                displayMessage(e.getMessage());
             }
         }
     }
@@ -468,38 +434,32 @@ public class ClinicView {
 
         if (result == JOptionPane.OK_OPTION) {
             try {
-                // Create CSV line
-                String newLine = String.join(",",
-                        idField.getText(),
-                        nameField.getText(),
-                        brandField.getText(),
-                        dosageField.getText(),
-                        dosageCountField.getText(),
-                        intervalField.getText(),
-                        treatsField.getText(),
-                        stockField.getText()
+                ArrayList<String> treats = new ArrayList<>();
+                for (String treat : treatsField.getText().split(",")) {
+                    if (!treat.trim().isEmpty()) {
+                        treats.add(treat.trim());
+                    }
+                }
+                Inventory.Item item = new Inventory.Item(
+                        Integer.parseInt(idField.getText().trim()),
+                        nameField.getText().trim(),
+                        brandField.getText().trim(),
+                        Double.parseDouble(dosageField.getText().trim()),
+                        Integer.parseInt(dosageCountField.getText().trim()),
+                        Integer.parseInt(intervalField.getText().trim()),
+                        treats,
+                        Integer.parseInt(stockField.getText().trim()),
+                        0, 0
                 );
-                System.out.println(newLine);
-
-//                if(true) {
-//                    throw new DuplicateException();
-//                }
-
-                // Append to file'
-                File vaccinesFile = new File(getClass().getClassLoader().getResource("vaccines.csv").getFile());
-                try (FileWriter fw = new FileWriter(vaccinesFile, true)) {
-                    fw.write("\n" + newLine);
-                    fw.flush();
-                    displayMessage("New vaccine added successfully");
+                if (!vaccineInventory.add(item)) {
+                    throw new DuplicateException();
                 }
 
-                // Refresh the table
-                loadVaccinesData();
-
-            } catch (IOException e) {
-                displayMessage("Error saving new vaccine: " + e.getMessage());
-//            } catch (DuplicateException e) {
-//                displayMessage("Duplicate vaccine: " + e.getMessage());
+                displayMessage("New vaccine added (remember to save changes)");
+            } catch (NumberFormatException e) {
+                displayMessage("Please enter valid numbers for ID, dosage, stock, dosage count and interval");
+            } catch (DuplicateException e) {
+                displayMessage("Duplicate vaccine: a vaccine with ID " + idField.getText().trim() + " already exists");
             }
         }
     }
@@ -528,19 +488,13 @@ public class ClinicView {
 
         if (result == JOptionPane.OK_OPTION) {
             try {
-                int id = Integer.parseInt(idField.getText());
-                int amount = Integer.parseInt(amountField.getText());
-
-                // Find the vaccine in the table and update stock
-                for (int row = 0; row < vaccinesTable.getRowCount(); row++) {
-                    if ((int)vaccinesTable.getValueAt(row, 0) == id) {
-                        int currentStock = (int)vaccinesTable.getValueAt(row, 4);
-                        vaccinesTable.setValueAt(currentStock + amount, row, 4);
-                        break;
-                    }
-                }
+                int id = Integer.parseInt(idField.getText().trim());
+                int amount = Integer.parseInt(amountField.getText().trim());
+                vitaminInventory.restock(id, amount);
             } catch (NumberFormatException e) {
                 displayMessage("Please enter valid numbers for ID and amount");
+            } catch (IllegalArgumentException e) {
+                displayMessage(e.getMessage());
             }
         }
     }
@@ -588,37 +542,32 @@ public class ClinicView {
 
         if (result == JOptionPane.OK_OPTION) {
             try {
-                // Create CSV line
-                String newLine = String.join(",",
-                        idField.getText(),
-                        nameField.getText(),
-                        brandField.getText(),
-                        dosageField.getText(),
-                        dosageCountField.getText(),
-                        intervalField.getText(),
-                        treatsField.getText(),
-                        stockField.getText()
+                ArrayList<String> treats = new ArrayList<>();
+                for (String treat : treatsField.getText().split(",")) {
+                    if (!treat.trim().isEmpty()) {
+                        treats.add(treat.trim());
+                    }
+                }
+                Inventory.Item item = new Inventory.Item(
+                        Integer.parseInt(idField.getText().trim()),
+                        nameField.getText().trim(),
+                        brandField.getText().trim(),
+                        Double.parseDouble(dosageField.getText().trim()),
+                        Integer.parseInt(dosageCountField.getText().trim()),
+                        Integer.parseInt(intervalField.getText().trim()),
+                        treats,
+                        Integer.parseInt(stockField.getText().trim()),
+                        0, 0
                 );
-
-//                if(true) {
-//                    throw new DuplicateException();
-//                }
-
-                // Append to file
-                File vitaminsFile = new File(getClass().getClassLoader().getResource("vitamins.csv").getFile());
-                try (FileWriter fw = new FileWriter(vitaminsFile, true)) {
-                    fw.write("\n" + newLine);
-                    fw.flush();
-                    displayMessage("New vitamin added successfully");
+                if (!vitaminInventory.add(item)) {
+                    throw new DuplicateException();
                 }
 
-                // Refresh the table
-                loadVitaminsData();
-
-            } catch (IOException e) {
-                displayMessage("Error saving new vitamin: " + e.getMessage());
-//            } catch(DuplicateException e) {
-//                displayMessage("Duplicate vitamin: " + e.getMessage());
+                displayMessage("New vitamin added (remember to save changes)");
+            } catch (NumberFormatException e) {
+                displayMessage("Please enter valid numbers for ID, dosage, stock, dosage count and interval");
+            } catch (DuplicateException e) {
+                displayMessage("Duplicate vitamin: a vitamin with ID " + idField.getText().trim() + " already exists");
             }
         }
     }
@@ -643,10 +592,7 @@ public class ClinicView {
             );
 
             if (confirm == JOptionPane.YES_OPTION) {
-                // Remove from table
-                ((DefaultTableModel)vaccinesTable.getModel()).removeRow(selectedRow);
-                // Remove from stock map
-                vaccineStock.remove(id);
+                vaccineInventory.remove(id);
                 displayMessage("Vaccine deleted (remember to save changes)");
             }
         } else {
@@ -674,10 +620,7 @@ public class ClinicView {
             );
 
             if (confirm == JOptionPane.YES_OPTION) {
-                // Remove from table
-                ((DefaultTableModel)vitaminsTable.getModel()).removeRow(selectedRow);
-                // Remove from stock map
-                vitaminStock.remove(id);
+                vitaminInventory.remove(id);
                 displayMessage("Vitamin deleted (remember to save changes)");
             }
         } else {
@@ -689,29 +632,8 @@ public class ClinicView {
      * Loads vaccine data from the vaccines.csv file and populates the table.
      */
     private void loadVaccinesData() {
-        vaccineStock.clear();
-        DefaultTableModel model = (DefaultTableModel) vaccinesTable.getModel();
-        model.setRowCount(0);
-
-        try (InputStream in = getClass().getClassLoader().getResourceAsStream("vaccines.csv");
-            BufferedReader br = new BufferedReader(new InputStreamReader(in))) {
-            // Skip header line
-            br.readLine();
-
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] values = line.split(",");
-                if (values.length >= 8) {
-                    int id = Integer.parseInt(values[0].trim());
-                    String name = values[1].trim();
-                    String brand = values[2].trim();
-                    double dosage = Double.parseDouble(values[3].trim());
-                    int stock = Integer.parseInt(values[7].trim());
-
-                    model.addRow(new Object[]{id, name, brand, dosage, stock});
-                    vaccineStock.put(id, stock);
-                }
-            }
+        try {
+            vaccineInventory.loadResource("vaccines.csv");
         } catch (IOException | NumberFormatException e) {
             displayMessage("Error loading vaccines data: " + e.getMessage());
         }
@@ -721,91 +643,14 @@ public class ClinicView {
      * Saves modified vaccine stock data back to the vaccines.csv file.
      */
     private void saveVaccinesData() {
-//        try (InputStream in = getClass().getClassLoader().getResourceAsStream("vaccines.csv");
-//             BufferedReader br = new BufferedReader(new InputStreamReader(in));
-//             FileWriter fw = new FileWriter("vaccines.tmp")) {
-//
-//            // Write header
-//            fw.write(br.readLine() + "\n");
-//
-//            String line;
-//            while ((line = br.readLine()) != null) {
-//                String[] values = line.split(",");
-//                if (values.length >= 8) {
-//                    int id = Integer.parseInt(values[0].trim());
-//
-//                    // Update stock value from table if changed
-//                    for (int row = 0; row < vaccinesTable.getRowCount(); row++) {
-//                        int tableId = (int) vaccinesTable.getValueAt(row, 0);
-//                        if (tableId == id) {
-//                            int newStock = (int) vaccinesTable.getValueAt(row, 4);
-//                            if (newStock != vaccineStock.get(id)) {
-//                                values[7] = String.valueOf(newStock);
-//                                vaccineStock.put(id, newStock);
-//                            }
-//                            break;
-//                        }
-//                    }
-//
-//                    fw.write(String.join(",", values) + "\n");
-//                }
-//            }
-//
-//            // Replace original file with temp file
-//            java.nio.file.Files.move(
-//                    java.nio.file.Paths.get("vaccines.tmp"),
-//                    java.nio.file.Paths.get("vaccines.csv"),
-//                    java.nio.file.StandardCopyOption.REPLACE_EXISTING
-//            );
-//
-//            displayMessage("Vaccine stock data saved successfully.");
-//        } catch (IOException | NumberFormatException e) {
-//            displayMessage("Error saving vaccines data: " + e.getMessage());
-//        }
         try {
-            // Read all existing data first (except stock values)
-            Map<Integer, String[]> vaccineData = new HashMap<>();
-            try (BufferedReader br = new BufferedReader(new FileReader("vaccines.csv"))) {
-                String header = br.readLine(); // Save header
-                String line;
-                while ((line = br.readLine()) != null) {
-                    String[] values = line.split(",");
-                    if (values.length >= 8) {
-                        int id = Integer.parseInt(values[0].trim());
-                        vaccineData.put(id, values);
-                    }
-                }
-            }
-
-            // Write back all data with updated stock values
-            try (FileWriter fw = new FileWriter("vaccines.csv")) {
-                fw.write("id,name,brand,dosageml,dosage count,interval days,treats,stock\n");
-
-                // Write existing entries with updated stock
-                for (int row = 0; row < vaccinesTable.getRowCount(); row++) {
-                    int id = (int) vaccinesTable.getValueAt(row, 0);
-                    String name = (String) vaccinesTable.getValueAt(row, 1);
-                    String brand = (String) vaccinesTable.getValueAt(row, 2);
-                    String dosage = vaccinesTable.getValueAt(row, 3).toString();
-                    int stock = (int) vaccinesTable.getValueAt(row, 4);
-
-                    String[] originalData = vaccineData.get(id);
-                    if (originalData != null) {
-                        fw.write(String.format("%d,%s,%s,%s,%s,%s,%s,%d\n",
-                                id, name, brand, dosage,
-                                originalData[4], originalData[5], originalData[6],
-                                stock));
-                    } else {
-                        // This is a new entry added via the table
-                        fw.write(String.format("%d,%s,%s,%s,1,30,,%d\n",
-                                id, name, brand, dosage, stock));
-                    }
-                }
+            if (vaccineInventory.save(Paths.get("vaccines.csv"))) {
+                displayMessage("Vaccine stock data saved successfully.");
+            } else {
+                displayMessage("No vaccine changes to save.");
             }
-
-            displayMessage("Vaccine data saved successfully");
-        } catch (IOException | NumberFormatException e) {
-            displayMessage("Error saving vaccine data: " + e.getMessage());
+        } catch (IOException e) {
+            displayMessage("Error saving vaccines data: " + e.getMessage());
         }
     }
 
@@ -813,29 +658,8 @@ public class ClinicView {
      * Loads vitamin data from the vitamins.csv file and populates the table.
      */
     private void loadVitaminsData() {
-        vitaminStock.clear();
-        DefaultTableModel model = (DefaultTableModel) vitaminsTable.getModel();
-        model.setRowCount(0);
-
-        try (InputStream in = getClass().getClassLoader().getResourceAsStream("vitamins.csv");
-             BufferedReader br = new BufferedReader(new InputStreamReader(in))) {
-            // Skip header line
-            br.readLine();
-
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] values = line.split(",");
-                if (values.length >= 8) {
-                    int id = Integer.parseInt(values[0].trim());
-                    String name = values[1].trim();
-                    String brand = values[2].trim();
-                    double dosage = Double.parseDouble(values[3].trim());
-                    int stock = Integer.parseInt(values[7].trim());
-
-                    model.addRow(new Object[]{id, name, brand, dosage, stock});
-                    vitaminStock.put(id, stock);
-                }
-            }
+        try {
+            vitaminInventory.loadResource("vitamins.csv");
         } catch (IOException | NumberFormatException e) {
             displayMessage("Error loading vitamins data: " + e.getMessage());
         }
@@ -845,49 +669,33 @@ public class ClinicView {
      * Saves modified vitamin stock data back to the vitamins.csv file.
      */
     private void saveVitaminsData() {
-        try (InputStream in = getClass().getClassLoader().getResourceAsStream("vitamins.csv");
-             BufferedReader br = new BufferedReader(new InputStreamReader(in));
-             FileWriter fw = new FileWriter("vitamins.tmp")) {
-
-            // Write header
-            fw.write(br.readLine() + "\n");
-
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] values = line.split(",");
-                if (values.length >= 8) {
-                    int id = Integer.parseInt(values[0].trim());
-
-                    // Update stock value from table if changed
-                    for (int row = 0; row < vitaminsTable.getRowCount(); row++) {
-                        int tableId = (int) vitaminsTable.getValueAt(row, 0);
-                        if (tableId == id) {
-                            int newStock = (int) vitaminsTable.getValueAt(row, 4);
-                            if (newStock != vitaminStock.get(id)) {
-                                values[7] = String.valueOf(newStock);
-                                vitaminStock.put(id, newStock);
-                            }
-                            break;
-                        }
-                    }
-
-                    fw.write(String.join(",", values) + "\n");
-                }
+        try {
+            if (vitaminInventory.save(Paths.get("vitamins.csv"))) {
+                displayMessage("Vitamin stock data saved successfully.");
+            } else {
+                displayMessage("No vitamin changes to save.");
             }
-
-            // Replace original file with temp file
-            java.nio.file.Files.move(
-                    java.nio.file.Paths.get("vitamins.tmp"),
-                    java.nio.file.Paths.get("vitamins.csv"),
-                    java.nio.file.StandardCopyOption.REPLACE_EXISTING
-            );
-
-            displayMessage("Vitamin stock data saved successfully.");
-        } catch (IOException | NumberFormatException e) {
+        } catch (IOException e) {
             displayMessage("Error saving vitamins data: " + e.getMessage());
         }
     }
 
+    /**
+     * Shows the given stock in the Vaccines and Vitamins tabs and loads both catalogues
+     * into it. The tables render the inventories directly and follow their changes.
+     *
+     * @param vaccines the clinic's vaccine inventory
+     * @param vitamins the clinic's vitamin inventory
+     */
+    public void setInventories(Inventory vaccines, Inventory vitamins) {
+        vaccineInventory = vaccines;
+        vitaminInventory = vitamins;
+        vaccinesTable.setModel(new InventoryTableModel(vaccines, "ml"));
+        vitaminsTable.setModel(new InventoryTableModel(vitamins, "mg"));
+        loadVaccinesData();
+        loadVitaminsData();
+    }
+
     /**
      * Makes the main application window visible.
      */
@@ -981,25 +789,34 @@ public class ClinicView {
     }
     
     /**
-     * Updates the Patients table with the provided list of patients.
+     * Shows the clinic's patients in the Patients tab. The table reads the patients
+     * directly and follows patients being added and removed.
      * 
-     * @param patients An ArrayList of ImmunizationPatient objects to display in the table
+     * @param model the clinic
      */
-    public void updatePatientsTable(ArrayList<ImmunizationPatient> patients) {
-        DefaultTableModel model = (DefaultTableModel) patientsTable.getModel();
-        model.setRowCount(0); // Clear existing data
-        
-        for (ImmunizationPatient patient : patients) {
-            Object[] row = {
-                patient.getPatientId(),
-                patient.getNationalIdentificationNumber(),
-                patient.getName(),
-                patient.getAddress(),
-                dateFormat.format(patient.getDateOfBirth()),
-                patient.getSex(),
-                patient.getWeightKG(),
-            };
-            model.addRow(row);
+    public void setPatients(ClinicModel model) {
+        patientTableModel = new PatientTableModel(model);
+        patientsTable.setModel(patientTableModel);
+    }
+
+    /**
+     * Reads the clinic's patients into the Patients table again, e.g. after a saved
+     * register has been loaded.
+     */
+    public void refreshPatientsTable() {
+        if (patientTableModel != null) {
+            patientTableModel.reload();
+        }
+    }
+
+    /**
+     * Shows only the patients whose ID, national ID, name or address contains some text.
+     * 
+     * @param text the text to look for; blank to show every patient
+     */
+    public void filterPatients(String text) {
+        if (patientTableModel != null) {
+            patientTableModel.setFilter(text);
         }
     }
     
@@ -1056,6 +873,38 @@ public class ClinicView {
         addPatientButton.addActionListener(listener);
     }
     
+    /**
+     * Adds an action listener to the import register button.
+     * 
+     * @param listener The action listener to add
+     */
+    public void addImportPatientsButtonListener(ActionListener listener) {
+        importPatientsButton.addActionListener(listener);
+    }
+
+    /**
+     * Asks the user for a register text file to import.
+     * 
+     * @return the chosen file, or null if canceled
+     */
+    public File chooseRegisterFile() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Import Immunization Register");
+        if (chooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
+            return chooser.getSelectedFile();
+        }
+        return null;
+    }
+
+    /**
+     * Enables or disables the import register button, e.g. while an import is running.
+     * 
+     * @param enabled whether the button can be clicked
+     */
+    public void setImportEnabled(boolean enabled) {
+        importPatientsButton.setEnabled(enabled);
+    }
+
     /**
      * Gets the search text from the search field.
      * 
@@ -1249,6 +1098,24 @@ public class ClinicView {
     public void addAddVisitButtonListener(ActionListener listener) {
         addVisitButton.addActionListener(listener);
     }
+
+    /**
+     * Adds a listener told whenever a different tab is selected.
+     * 
+     * @param listener The change listener to add
+     */
+    public void addTabChangeListener(ChangeListener listener) {
+        tabbedPane.addChangeListener(listener);
+    }
+
+    /**
+     * Checks whether the visits tab is the one showing.
+     * 
+     * @return true if the visits tab is selected
+     */
+    public boolean isVisitsTabSelected() {
+        return tabbedPane.getSelectedIndex() == tabbedPane.indexOfTab("Visits");
+    }
     
     /**
      * Gets the search text from the visits search field.
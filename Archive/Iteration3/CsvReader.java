@@ -0,0 +1,547 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * CsvReader.java
+ * Reads CSV records one at a time straight out of a char buffer.
+ *
+ * Fields follow RFC 4180: a field may be wrapped in double quotes, inside which commas,
+ * line breaks and doubled quotes ("") are literal. Our catalogue files also write lists
+ * such as the treats column as [COVID-19, Influenza], so commas inside square brackets
+ * do not split the field either. Brackets never reach past their field: an unquoted line
+ * break always ends the record, and a field with a '[' that is not closed is split at its
+ * commas as usual and the record marked malformed, see isMalformed.
+ *
+ * A record is only located (field start and end offsets) when it is read; numbers are
+ * parsed directly from the buffer with getInt and getDouble, and a String is only
+ * created when getString is called. Apart from those strings, reading a file does not
+ * allocate per row.
+ *
+ * @author Milo Keys
+ * @version October 18, 2026
+ */
+public class CsvReader implements Closeable {
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    private final Reader in;
+    private char[] buf;
+    private int pos;        // start of the next record
+    private int limit;      // end of valid chars in buf
+    private boolean eof;
+
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int fieldCount;
+    private boolean malformed;
+
+    // Line the current record starts on, and the line the next one starts on
+    private int recordLine;
+    private int nextLine = 1;
+    // Line breaks inside quotes in the record found by the last scanRecord
+    private int quotedBreaks;
+
+    // Copy of the current record as it appeared in the input, kept only when asked for
+    private boolean keepRecordText;
+    private char[] record = new char[0];
+    private int recordLength;
+
+    /**
+     * Creates a reader over a character stream.
+     *
+     * @param in the CSV text
+     */
+    public CsvReader(Reader in) {
+        this(in, 1 << 14);
+    }
+
+    /**
+     * Creates a reader over a character stream.
+     *
+     * @param in the CSV text
+     * @param bufferSize initial buffer size; grows if a single record is longer
+     */
+    public CsvReader(Reader in, int bufferSize) {
+        this.in = in;
+        this.buf = new char[bufferSize];
+    }
+
+    /**
+     * Advances to the next record. Blank lines are skipped.
+     *
+     * @return true if a record was read, false at the end of the input
+     * @throws IOException if the input cannot be read
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            int end = scanRecord();
+            if (end < 0) {
+                if (eof) {
+                    if (pos >= limit) {
+                        fieldCount = 0;
+                        return false;
+                    }
+                    end = limit; // last record without a trailing newline
+                    copyRecord(pos, end);
+                    parseFields(pos, end);
+                    pos = limit;
+                } else {
+                    fill();
+                    continue;
+                }
+            } else {
+                copyRecord(pos, end);
+                parseFields(pos, end);
+                pos = end + 1;
+            }
+            recordLine = nextLine;
+            nextLine += 1 + quotedBreaks;
+            if (fieldCount == 1 && starts[0] == ends[0]) {
+                continue; // blank line
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Keeps a copy of each record's original text so it can be passed through
+     * unchanged with writeRecord. The copy reuses one buffer, so it does not
+     * allocate per row either.
+     *
+     * @param keep true to keep record text
+     */
+    public void setKeepRecordText(boolean keep) {
+        keepRecordText = keep;
+    }
+
+    /**
+     * Writes the current record exactly as it appeared in the input, without its line break.
+     * Only available after setKeepRecordText(true).
+     *
+     * @param out where to write the record
+     * @throws IOException if the record cannot be written
+     * @throws IllegalStateException if record text is not being kept
+     */
+    public void writeRecord(Writer out) throws IOException {
+        if (!keepRecordText) {
+            throw new IllegalStateException("Record text is not kept, call setKeepRecordText(true) first");
+        }
+        out.write(record, 0, recordLength);
+    }
+
+    /**
+     * Checks whether the current record has a field with a '[' that is not closed by a ']'.
+     * Such a field ends at the next comma like any other, so the rest of the record and
+     * the records after it are still read, but the record is likely not what was meant.
+     *
+     * @return true if the record is malformed
+     */
+    public boolean isMalformed() {
+        return malformed;
+    }
+
+    /** @return the line of the input the current record starts on, counting from 1 */
+    public int getLineNumber() {
+        return recordLine;
+    }
+
+    /** @return the number of fields in the current record */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Gets a field as a String, with surrounding quotes removed and "" unescaped.
+     *
+     * @param i the field index
+     * @return the field text, trimmed
+     */
+    public String getString(int i) {
+        return new String(buf, starts[i], ends[i] - starts[i]);
+    }
+
+    /**
+     * Checks whether a field is empty.
+     *
+     * @param i the field index
+     * @return true if the field has no text
+     */
+    public boolean isEmpty(int i) {
+        return starts[i] == ends[i];
+    }
+
+    /**
+     * Parses a field as an int without creating a String.
+     *
+     * @param i the field index
+     * @return the value
+     * @throws NumberFormatException if the field is not a whole number
+     */
+    public int getInt(int i) {
+        int p = starts[i];
+        int end = ends[i];
+        boolean negative = false;
+        if (p < end && (buf[p] == '-' || buf[p] == '+')) {
+            negative = buf[p] == '-';
+            p++;
+        }
+        if (p == end) {
+            throw new NumberFormatException("Not a number in field " + i + ": \"" + getString(i) + "\"");
+        }
+        long value = 0;
+        for (; p < end; p++) {
+            char c = buf[p];
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Not a number in field " + i + ": \"" + getString(i) + "\"");
+            }
+            value = value * 10 + (c - '0');
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("Number too large in field " + i + ": \"" + getString(i) + "\"");
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Number too large in field " + i + ": \"" + getString(i) + "\"");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses a field as a double. Plain decimals of up to 15 significant digits are
+     * parsed from the buffer exactly; anything else (exponents, longer numbers) falls
+     * back to Double.parseDouble.
+     *
+     * @param i the field index
+     * @return the value
+     * @throws NumberFormatException if the field is not a number
+     */
+    public double getDouble(int i) {
+        int p = starts[i];
+        int end = ends[i];
+        boolean negative = false;
+        if (p < end && (buf[p] == '-' || buf[p] == '+')) {
+            negative = buf[p] == '-';
+            p++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        boolean seenDigit = false;
+        boolean fast = p < end;
+        for (; p < end && fast; p++) {
+            char c = buf[p];
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (digits > 0 || c != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+                fast = digits <= MAX_FAST_DIGITS && fractionDigits <= MAX_FAST_DIGITS;
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                fast = false;
+            }
+        }
+        if (!fast || !seenDigit) {
+            return Double.parseDouble(getString(i));
+        }
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Splits a bracketed list field such as [COVID-19, Influenza] into its entries.
+     * A field without brackets is treated as a single-entry list.
+     *
+     * @param i the field index
+     * @return the trimmed entries, empty for an empty field or []
+     */
+    public ArrayList<String> getList(int i) {
+        int p = starts[i];
+        int end = ends[i];
+        if (end - p >= 2 && buf[p] == '[' && buf[end - 1] == ']') {
+            p++;
+            end--;
+        }
+        ArrayList<String> items = new ArrayList<>();
+        int itemStart = p;
+        for (int j = p; j <= end; j++) {
+            if (j == end || buf[j] == ',') {
+                int s = itemStart;
+                int e = j;
+                while (s < e && buf[s] <= ' ') s++;
+                while (e > s && buf[e - 1] <= ' ') e--;
+                if (e > s) {
+                    items.add(new String(buf, s, e - s));
+                }
+                itemStart = j + 1;
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Closes the underlying reader.
+     *
+     * @throws IOException if the reader cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Finds the end of the record starting at pos, honouring quotes. Brackets only group
+     * commas within a field, so they do not keep a record going past its line.
+     *
+     * @return the index of the record's terminating '\n', or -1 if the buffer ends first
+     */
+    private int scanRecord() {
+        boolean quoted = false;
+        quotedBreaks = 0;
+        for (int p = pos; p < limit; p++) {
+            char c = buf[p];
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == '\n') {
+                if (!quoted) {
+                    return p;
+                }
+                quotedBreaks++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Records the trimmed bounds of every field in buf[from, to). Quoted fields are
+     * unescaped in place, which only ever shortens them.
+     */
+    private void parseFields(int from, int to) {
+        if (to > from && buf[to - 1] == '\r') {
+            to--;
+        }
+        fieldCount = 0;
+        malformed = false;
+        int p = from;
+        while (true) {
+            while (p < to && (buf[p] == ' ' || buf[p] == '\t')) p++;
+            int start = p;
+            int end;
+            if (p < to && buf[p] == '"') {
+                int write = p;
+                p++;
+                while (p < to) {
+                    if (buf[p] == '"') {
+                        if (p + 1 < to && buf[p + 1] == '"') {
+                            buf[write++] = '"';
+                            p += 2;
+                            continue;
+                        }
+                        p++;
+                        break;
+                    }
+                    buf[write++] = buf[p++];
+                }
+                end = write;
+                while (p < to && buf[p] != ',') p++;
+            } else {
+                int brackets = 0;
+                while (p < to && (buf[p] != ',' || brackets > 0)) {
+                    if (buf[p] == '[') {
+                        brackets++;
+                    } else if (buf[p] == ']' && brackets > 0) {
+                        brackets--;
+                    }
+                    p++;
+                }
+                if (brackets > 0) {
+                    // the '[' is never closed, so split at the next comma as if it were not there
+                    malformed = true;
+                    p = start;
+                    while (p < to && buf[p] != ',') p++;
+                }
+                end = p;
+                while (end > start && (buf[end - 1] == ' ' || buf[end - 1] == '\t')) end--;
+            }
+            addField(start, end);
+            if (p >= to) {
+                return;
+            }
+            p++; // skip the comma
+        }
+    }
+
+    private void copyRecord(int from, int to) {
+        if (!keepRecordText) {
+            return;
+        }
+        if (to > from && buf[to - 1] == '\r') {
+            to--;
+        }
+        recordLength = to - from;
+        if (record.length < recordLength) {
+            record = new char[Math.max(recordLength, record.length * 2)];
+        }
+        System.arraycopy(buf, from, record, 0, recordLength);
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        fieldCount++;
+    }
+
+    /**
+     * Moves the unread part of the buffer to the front and reads more input,
+     * growing the buffer if a single record fills it.
+     */
+    private void fill() throws IOException {
+        int remaining = limit - pos;
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, remaining);
+        } else if (remaining == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        pos = 0;
+        limit = remaining;
+        int read = in.read(buf, limit, buf.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    /**
+     * Compares the bytes allocated by String.split parsing with CsvReader on a
+     * generated vaccine catalogue.
+     *
+     * @param args optional row count
+     * @throws IOException never, the input is in memory
+     */
+    public static void main(String[] args) throws IOException {
+        checkRecords();
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        StringBuilder csv = new StringBuilder("id,name,brand,dosageml,dosage count,interval days,treats,stock,min_age,min_weight_kg\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append(i).append(",COVID mRNA,Pfizer,0.3,2,30,[COVID-19],").append(i % 500).append(",13,60.0\n");
+        }
+        String text = csv.toString();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+
+        for (int round = 0; round < 3; round++) { // later rounds are after JIT warm-up
+            long before = threads.getThreadAllocatedBytes(tid);
+            long sum = 0;
+            try (java.io.BufferedReader br = new java.io.BufferedReader(new StringReader(text))) {
+                br.readLine();
+                String line;
+                while ((line = br.readLine()) != null) {
+                    String[] values = line.split(",");
+                    sum += Integer.parseInt(values[0].trim()) + Integer.parseInt(values[7].trim());
+                    sum += (long) Double.parseDouble(values[3].trim());
+                }
+            }
+            long splitBytes = threads.getThreadAllocatedBytes(tid) - before;
+
+            before = threads.getThreadAllocatedBytes(tid);
+            long sum2 = 0;
+            try (CsvReader reader = new CsvReader(new StringReader(text))) {
+                reader.next();
+                while (reader.next()) {
+                    sum2 += reader.getInt(0) + reader.getInt(7);
+                    sum2 += (long) reader.getDouble(3);
+                }
+            }
+            long csvBytes = threads.getThreadAllocatedBytes(tid) - before;
+
+            Checks.checkEquals(sum, sum2, "sum of the fields read by split and by CsvReader");
+            System.out.printf("round %d: split %,d bytes (%d B/row), CsvReader %,d bytes (%d B/row)%n",
+                    round, splitBytes, splitBytes / rows, csvBytes, csvBytes / rows);
+        }
+    }
+
+    /**
+     * Checks quoting, bracketed lists, unclosed brackets, line numbers and numbers,
+     * reading through a buffer small enough to be refilled and grown mid-record.
+     *
+     * @throws IOException never, the input is a string
+     */
+    private static void checkRecords() throws IOException {
+        String text = "id,name,treats,stock,weight\n"
+                + "1,\"Smith, \"\"Jo\"\"\",[COVID-19, Influenza],12,-4.25\n"
+                + "2,\"two\nlines\",[],0,1e3\n"
+                + "3,open,[Measles, Mumps,7,0.5\n"
+                + "4,  spaced  ,Polio,+8,.5\n"
+                + "\n"
+                + "5,last,[A],2147483647,12345678901234567890";
+        try (CsvReader reader = new CsvReader(new StringReader(text), 8)) {
+            Checks.check(reader.next(), "header read");
+            Checks.checkEquals(5, reader.getFieldCount(), "header fields");
+            Checks.checkEquals("weight", reader.getString(4), "last header field");
+
+            Checks.check(reader.next(), "quoted record read");
+            Checks.checkEquals(2, reader.getLineNumber(), "line of the quoted record");
+            Checks.checkEquals("Smith, \"Jo\"", reader.getString(1), "quoted field with a comma and doubled quotes");
+            Checks.checkEquals(Arrays.asList("COVID-19", "Influenza"), reader.getList(2), "bracketed list");
+            Checks.checkEquals(12, reader.getInt(3), "int field");
+            Checks.checkEquals(-4.25, reader.getDouble(4), "negative decimal field");
+            Checks.check(!reader.isMalformed(), "quoted record is well formed");
+
+            Checks.check(reader.next(), "record with a quoted line break read");
+            Checks.checkEquals(3, reader.getLineNumber(), "line of the record with a quoted line break");
+            Checks.checkEquals("two\nlines", reader.getString(1), "quoted line break kept");
+            Checks.checkEquals(new ArrayList<String>(), reader.getList(2), "empty list");
+            Checks.checkEquals(1000.0, reader.getDouble(4), "exponent field");
+
+            Checks.check(reader.next(), "record with an unclosed [ read");
+            Checks.checkEquals(5, reader.getLineNumber(), "line after a quoted line break");
+            Checks.check(reader.isMalformed(), "unclosed [ marks the record malformed");
+            Checks.checkEquals(6, reader.getFieldCount(), "unclosed [ split at its commas");
+            Checks.checkEquals("[Measles", reader.getString(2), "field with the unclosed [");
+
+            Checks.check(reader.next(), "record after the unclosed [ read");
+            Checks.check(!reader.isMalformed(), "malformed flag reset for the next record");
+            Checks.checkEquals(4, reader.getInt(0), "record after the unclosed [ is not swallowed");
+            Checks.checkEquals("spaced", reader.getString(1), "unquoted field trimmed");
+            Checks.checkEquals(Arrays.asList("Polio"), reader.getList(2), "field without brackets as a list");
+            Checks.checkEquals(8, reader.getInt(3), "int with a plus sign");
+            Checks.checkEquals(0.5, reader.getDouble(4), "decimal without a leading digit");
+
+            Checks.check(reader.next(), "last record without a line break read");
+            Checks.checkEquals(8, reader.getLineNumber(), "line of the last record, after a skipped blank line");
+            Checks.checkEquals(Integer.MAX_VALUE, reader.getInt(3), "largest int");
+            Checks.checkEquals(12345678901234567890.0, reader.getDouble(4), "long number parsed by Double");
+            Checks.check(!reader.next(), "end of input");
+        }
+        try (CsvReader reader = new CsvReader(new StringReader("x,2147483648\n"))) {
+            reader.next();
+            boolean threw = false;
+            try {
+                reader.getInt(1);
+            } catch (NumberFormatException e) {
+                threw = true;
+            }
+            Checks.check(threw, "int overflow rejected");
+        }
+        System.out.println("CsvReader checks passed");
+    }
+}
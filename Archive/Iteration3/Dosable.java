@@ -4,55 +4,11 @@
  * @author Gabrielle Akers
  * version: 4/25/2025
  */
-import java.time.LocalDate;
+import java.util.Date;
 
 public class Dosable {
-	int dosage;
-	LocalDate date;
-	int doseNum;
-	int maxDose;
-	LocalDate nextDose;
-	int age;
 	int minAge;
 	double minWeightKG;
-	
-	/**
-	 * Checks if the patient's age meets the minimum required age.
-	 * 
-	 * @return true if the patient's age is greater than or equal to the minimum age, false otherwise
-	 */
-	public boolean checkAge(){
-		if(age >= minAge) {
-			return true;
-		}
-		return false;
-	}
-	
-	/**
-	 * Checks if the patient has received fewer than the maximum allowed doses.
-	 * 
-	 * @return true if the number of doses received is less than the maximum, false otherwise
-	 */
-	public boolean checkDosage() {
-		if(doseNum < maxDose) {
-			return true;
-		}
-		return false;
-	}
-	
-	/**
-	 * Checks if the current date is after the date the patient is allowed to receive the next dose.
-	 * 
-	 * @return true if the current date is after the nextDose date, false otherwise
-	 */
-	public boolean checkDate() {
-		if(date.isAfter(nextDose)) {
-			return true;
-		}
-		else {
-			return false;
-		}
-	}
 
 	/**
 	 *Gets the minimum age for the vaccine
@@ -73,38 +29,180 @@ public class Dosable {
 	}
 	
 	/**
-	 * Determines whether the patient is eligible (dosable) to receive a new dose.
-	 * A patient is dosable if they meet the age requirement, have not exceeded the max dose,
-	 * and the current date is after the allowed next dose date.
+	 * Determines whether the patient is eligible (dosable) to receive a new dose of the vaccine
+	 * on the given day: they are old enough on that day, have had fewer than the full course,
+	 * at least the vaccine's interval has passed since their last dose of it, and they are not
+	 * under the minimum weight (a weight of 0 is treated as not recorded).
+	 * 
+	 * This only reads the patient and vaccine and keeps everything in local variables, so it
+	 * is re-entrant and can be shared across threads, and it creates no objects, so a batch
+	 * can look up the evaluation day once and check any number of pairs without garbage.
 	 * 
+	 * @param patient the patient
+	 * @param vaccine the vaccine
+	 * @param evalDay the epoch day to check on, see EpochDays
 	 * @return true if all conditions are met, false otherwise
 	 */
-	public boolean isDosable(ImmunizationPatient patient, Vaccine vaccine) {
-		//related to patient ages
-		age = patient.getAge();
-		minAge = vaccine.getMinAge();
-		//related to the date of the dose
-		date = LocalDate.now();
-		nextDose = LocalDate.now().plusDays(vaccine.getInterval());
+	public static boolean isDosable(ImmunizationPatient patient, Vaccine vaccine, long evalDay) {
+		//related to patient ages, worked out on the day from the date of birth when we have it
+		Date dateOfBirth = patient.getDateOfBirth();
+		int age = dateOfBirth == null ? patient.getAge()
+				: EpochDays.yearsBetween(EpochDays.ofMillis(dateOfBirth.getTime()), evalDay);
+		if(age < vaccine.getMinAge()) {
+			return false;
+		}
 		//related to number of doses
-		maxDose = vaccine.getNumOfDosage();
-		doseNum = patient.getDoseNum(vaccine);
-		if(checkAge() && checkDosage() && checkDate()) {
-			return true;
+		if(patient.getDoseNum(vaccine) >= vaccine.getNumOfDosage()) {
+			return false;
+		}
+		//related to the date of the dose
+		int lastDose = patient.getLastDoseDay(vaccine);
+		if(lastDose != DoseHistory.NO_DAY && (long) lastDose + vaccine.getInterval() > evalDay) {
+			return false;
+		}
+		//related to weight
+		double weightKG = patient.getWeightKG();
+		if(weightKG > 0 && weightKG < vaccine.getMinWeightKG()) {
+			return false;
 		}
-		return false;
+		return true;
 	}
+
 	/**
 	 * Returns a string representation of the Dosable object.
-	 * The string includes dosage information and age requirements.
+	 * The string includes the age and weight requirements.
 	 * 
 	 * @return a string representation of the core dosable information
 	 */
 	@Override
 	public String toString() {
-		return "dosage=" + dosage +
-			", doseNum=" + doseNum +
-			", maxDose=" + maxDose +
-			", minAge=" + minAge;
+		return "minAge=" + minAge +
+			", minWeightKG=" + minWeightKG;
+	}
+
+	/**
+	 * Measures isDosable over a generated population: bytes allocated per patient/vaccine pair
+	 * (from the JVM's per-thread allocation counter) and whether several threads sharing the
+	 * same Vaccine objects get the same answers as one thread.
+	 * 
+	 * @param args optional patient count
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		checkRules();
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+		Vaccine[] vaccines = new Vaccine[8];
+		for (int v = 0; v < vaccines.length; v++) {
+			vaccines[v] = new Vaccine(v, "Vaccine " + v, "Generic", 0.5, 1 + v % 4, 28, v % 5,
+					"intramuscular", "arm", new java.util.ArrayList<>(), 2 + v);
+		}
+		java.util.Random random = new java.util.Random(7);
+		long today = EpochDays.today();
+		ImmunizationPatient[] patients = new ImmunizationPatient[n];
+		for (int i = 0; i < n; i++) {
+			patients[i] = new ImmunizationPatient("P" + i, EpochDays.toDate(today - random.nextInt(10 * 365)),
+					"Child " + i, "", "", "", "", "Female", 0, null, null, 3 + random.nextInt(30));
+			for (Vaccine vaccine : vaccines) {
+				if (random.nextBoolean()) {
+					patients[i].restoreDoseCount(vaccine, random.nextInt(vaccine.getNumOfDosage() + 1));
+				}
+			}
+		}
+
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+		long tid = Thread.currentThread().getId();
+		long pairs = (long) n * vaccines.length;
+		boolean[] expected = new boolean[(int) pairs];
+		for (int round = 0; round < 5; round++) { // later rounds are after JIT warm-up
+			long before = threads.getThreadAllocatedBytes(tid);
+			long start = System.nanoTime();
+			int dosable = 0;
+			for (int i = 0; i < n; i++) {
+				for (int v = 0; v < vaccines.length; v++) {
+					boolean result = isDosable(patients[i], vaccines[v], today);
+					expected[i * vaccines.length + v] = result;
+					if (result) {
+						dosable++;
+					}
+				}
+			}
+			long elapsed = System.nanoTime() - start;
+			long allocated = threads.getThreadAllocatedBytes(tid) - before;
+			System.out.printf("round %d: %,d pairs, %,d dosable, %d ns/pair, %.3f bytes/pair%n",
+					round, pairs, dosable, elapsed / pairs, (double) allocated / pairs);
+		}
+
+		// Every thread checks every pair against the same shared Vaccine objects
+		int threadCount = 4;
+		int[] mismatches = new int[threadCount];
+		Thread[] workers = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++) {
+			final int id = t;
+			workers[t] = new Thread(() -> {
+				for (int i = 0; i < n; i++) {
+					for (int v = 0; v < vaccines.length; v++) {
+						if (isDosable(patients[i], vaccines[v], today) != expected[i * vaccines.length + v]) {
+							mismatches[id]++;
+						}
+					}
+				}
+			});
+			workers[t].start();
+		}
+		int total = 0;
+		for (int t = 0; t < threadCount; t++) {
+			workers[t].join();
+			total += mismatches[t];
+		}
+		Checks.checkEquals(0, total, "mismatches between " + threadCount + " threads sharing vaccines");
+		System.out.println(threadCount + " threads sharing vaccines agreed on every pair");
+	}
+
+	/**
+	 * Checks each rule of isDosable on its own, at the edges: the birthday the minimum
+	 * age is reached, the day the interval has passed, the last dose of the course and
+	 * the minimum weight.
+	 */
+	private static void checkRules() {
+		// 3 doses 28 days apart from age 2, at least 10 kg
+		Vaccine vaccine = new Vaccine(1, "Test", "Generic", 0.5, 3, 28, 2, "oral", "mouth",
+				new java.util.ArrayList<>(), 10);
+		long born = EpochDays.of(2024, 6, 15);
+		long day = EpochDays.of(2026, 6, 15); // the second birthday
+
+		ImmunizationPatient patient = child(born, 2, 15);
+		Checks.check(isDosable(patient, vaccine, day), "dosable on the birthday the minimum age is reached");
+		Checks.check(!isDosable(patient, vaccine, day - 1), "not dosable the day before");
+		Checks.check(!isDosable(child(born, 2, 5), vaccine, day), "not dosable under the minimum weight");
+		Checks.check(isDosable(child(born, 2, 0), vaccine, day), "dosable with no weight recorded");
+		Checks.check(isDosable(child(-1, 2, 15), vaccine, day), "dosable by recorded age without a date of birth");
+		Checks.check(!isDosable(child(-1, 1, 15), vaccine, day), "not dosable by recorded age under the minimum");
+
+		patient.addVaccineDose(vaccine, day - 10);
+		Checks.check(!isDosable(patient, vaccine, day), "not dosable within the interval of the last dose");
+		Checks.check(!isDosable(patient, vaccine, day - 10 + 27), "not dosable the day before the interval passes");
+		Checks.check(isDosable(patient, vaccine, day - 10 + 28), "dosable the day the interval passes");
+		patient.addVaccineDose(vaccine, day + 18);
+		patient.addVaccineDose(vaccine, day + 46);
+		Checks.check(!isDosable(patient, vaccine, day + 400), "not dosable once the course is complete");
+
+		ImmunizationPatient counted = child(born, 2, 15);
+		counted.restoreDoseCount(vaccine, 2);
+		Checks.check(isDosable(counted, vaccine, day), "dosable with counted doses and no last dose day");
+		counted.restoreDoseCount(vaccine, 3);
+		Checks.check(!isDosable(counted, vaccine, day), "not dosable with a full course counted");
+		System.out.println("Dosable checks passed");
+	}
+
+	/**
+	 * @param born the epoch day of birth, or -1 for none recorded
+	 * @param age the recorded age in years
+	 * @param weightKG the weight, 0 for none recorded
+	 * @return a patient with no doses
+	 */
+	private static ImmunizationPatient child(long born, int age, double weightKG) {
+		return new ImmunizationPatient("C", born < 0 ? null : EpochDays.toDate(born),
+				"Child", "", "", "", "", "Female", age, null, null, weightKG);
 	}
 }
@@ -0,0 +1,267 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * DoseCounts.java
+ * How many doses of each vaccine a patient has been given, and the day of the latest,
+ * keyed by the vaccine's catalogue ID.
+ *
+ * Counts are ints in an open-addressing table, so two loads of the same vaccine count
+ * together, recording a dose boxes nothing, and looking up a vaccine the patient has never
+ * had simply gives 0. The Vaccine last recorded under each ID is kept alongside its count
+ * for callers that need the vaccine itself. Each patient has their own counts; they are
+ * never shared, and are only made once the patient is given a dose. The table starts
+ * small, since most children have had only a few vaccines.
+ *
+ * Iterate over the counts by slot:
+ * <pre>
+ *     for (int slot = 0; slot &lt; counts.capacity(); slot++) {
+ *         if (counts.getVaccineAt(slot) != null) { ... counts.getCountAt(slot) ... }
+ *     }
+ * </pre>
+ *
+ * @author Gabrielle Akers
+ * @version October 18, 2026
+ */
+public class DoseCounts {
+    private int[] ids = new int[4];
+    private int[] counts = new int[4];
+    private int[] lastDays = new int[4];            // DoseHistory.NO_DAY if no dated dose
+    private Vaccine[] vaccines = new Vaccine[4];    // null marks an empty slot
+    private int size;
+
+    /**
+     * Gets the doses of a vaccine given.
+     *
+     * @param vaccineId the vaccine's catalogue ID
+     * @return the dose count, 0 if none
+     */
+    public int get(int vaccineId) {
+        return counts[find(vaccineId)]; // an empty slot's count is 0
+    }
+
+    /**
+     * Gets the day the latest dose of a vaccine was given.
+     *
+     * @param vaccineId the vaccine's catalogue ID
+     * @return the epoch day, or DoseHistory.NO_DAY if no dated dose has been recorded
+     */
+    public int getLastDay(int vaccineId) {
+        int slot = find(vaccineId);
+        return vaccines[slot] == null ? DoseHistory.NO_DAY : lastDays[slot];
+    }
+
+    /**
+     * Works out when the next dose of a vaccine is due, see DoseHistory.nextDueDay.
+     *
+     * @param vaccine the vaccine
+     * @param eligibleDay the epoch day the patient reaches the vaccine's minimum age
+     * @return the due epoch day, or DoseHistory.NO_DAY if the course is complete
+     */
+    public long getNextDueDay(Vaccine vaccine, long eligibleDay) {
+        int slot = find(vaccine.getID());
+        return vaccines[slot] == null ? DoseHistory.nextDueDay(vaccine, eligibleDay, 0, DoseHistory.NO_DAY)
+                : DoseHistory.nextDueDay(vaccine, eligibleDay, counts[slot], lastDays[slot]);
+    }
+
+    /**
+     * Gets the vaccine counted under an ID.
+     *
+     * @param vaccineId the vaccine's catalogue ID
+     * @return the vaccine last recorded with the ID, or null if none has been
+     */
+    public Vaccine getVaccine(int vaccineId) {
+        return vaccines[find(vaccineId)];
+    }
+
+    /**
+     * Counts one more dose of a vaccine, given on a day.
+     *
+     * @param vaccine the vaccine given
+     * @param epochDay the day it was given
+     * @return the new count, which is the dose's number
+     */
+    public int increment(Vaccine vaccine, long epochDay) {
+        int slot = slot(vaccine);
+        lastDays[slot] = Math.max(lastDays[slot], (int) epochDay);
+        return ++counts[slot];
+    }
+
+    /**
+     * Sets the doses of a vaccine given when the individual doses and their dates are not
+     * known, e.g. counts carried over from paper records.
+     *
+     * @param vaccine the vaccine
+     * @param count the dose count
+     */
+    public void set(Vaccine vaccine, int count) {
+        int slot = slot(vaccine); // may grow the table, so find the slot before indexing counts
+        counts[slot] = count;
+    }
+
+    /**
+     * Counts a numbered dose given on a day, e.g. when restoring a saved dose: the count is
+     * raised to at least the dose's number.
+     *
+     * @param vaccine the vaccine
+     * @param doseNumber the dose's number
+     * @param epochDay the day it was given
+     */
+    public void raise(Vaccine vaccine, int doseNumber, long epochDay) {
+        int slot = slot(vaccine);
+        counts[slot] = Math.max(counts[slot], doseNumber);
+        lastDays[slot] = Math.max(lastDays[slot], (int) epochDay);
+    }
+
+    /** @return the number of vaccines with a count */
+    public int size() {
+        return size;
+    }
+
+    /** @return the number of slots, for iterating with getVaccineAt and getCountAt */
+    public int capacity() {
+        return ids.length;
+    }
+
+    /**
+     * @param slot a slot, from 0 to capacity() - 1
+     * @return the vaccine counted in the slot, or null if the slot is empty
+     */
+    public Vaccine getVaccineAt(int slot) {
+        return vaccines[slot];
+    }
+
+    /**
+     * @param slot a slot, from 0 to capacity() - 1
+     * @return the dose count in the slot, 0 if the slot is empty
+     */
+    public int getCountAt(int slot) {
+        return counts[slot];
+    }
+
+    /**
+     * Copies the counts into a map keyed by vaccine.
+     *
+     * @return a new map
+     */
+    public Map<Vaccine, Integer> toMap() {
+        Map<Vaccine, Integer> map = new HashMap<>();
+        for (int slot = 0; slot < ids.length; slot++) {
+            if (vaccines[slot] != null) {
+                map.put(vaccines[slot], counts[slot]);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("DoseCounts[");
+        for (int slot = 0; slot < ids.length; slot++) {
+            if (vaccines[slot] != null) {
+                sb.append(sb.length() > 11 ? ", " : "").append(ids[slot]).append('=').append(counts[slot]);
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Finds the slot of a vaccine's ID, or the empty slot where it would go.
+     */
+    private int find(int vaccineId) {
+        int mask = ids.length - 1;
+        int slot = spread(vaccineId) & mask;
+        while (vaccines[slot] != null && ids[slot] != vaccineId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Finds the slot of a vaccine's ID, claiming an empty one if it has none.
+     */
+    private int slot(Vaccine vaccine) {
+        int vaccineId = vaccine.getID();
+        int mask = ids.length - 1;
+        int slot = spread(vaccineId) & mask;
+        while (vaccines[slot] != null) {
+            if (ids[slot] == vaccineId) {
+                vaccines[slot] = vaccine;
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if ((size + 1) * 4 > ids.length * 3) {
+            grow();
+            return slot(vaccine);
+        }
+        ids[slot] = vaccineId;
+        lastDays[slot] = DoseHistory.NO_DAY;
+        vaccines[slot] = vaccine;
+        size++;
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldIds = ids;
+        int[] oldCounts = counts;
+        int[] oldLastDays = lastDays;
+        Vaccine[] oldVaccines = vaccines;
+        ids = new int[oldIds.length * 2];
+        counts = new int[oldIds.length * 2];
+        lastDays = new int[oldIds.length * 2];
+        vaccines = new Vaccine[oldIds.length * 2];
+        int mask = ids.length - 1;
+        for (int old = 0; old < oldIds.length; old++) {
+            if (oldVaccines[old] != null) {
+                int slot = spread(oldIds[old]) & mask;
+                while (vaccines[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                ids[slot] = oldIds[old];
+                counts[slot] = oldCounts[old];
+                lastDays[slot] = oldLastDays[old];
+                vaccines[slot] = oldVaccines[old];
+            }
+        }
+    }
+
+    private static int spread(int vaccineId) {
+        return vaccineId * 0x9E3779B9 >>> 16;
+    }
+
+    /**
+     * Checks the counts and latest days of more vaccines than the table starts with, set,
+     * raised and incremented across the table growing.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        DoseCounts counts = new DoseCounts();
+        Vaccine[] vaccines = new Vaccine[40];
+        for (int v = 0; v < vaccines.length; v++) {
+            vaccines[v] = new Vaccine(v * 7, "Vaccine " + v, "Generic", 0.5, 5, 28, 0, "oral", "mouth",
+                    new java.util.ArrayList<>(), 0);
+            counts.set(vaccines[v], v + 1);
+        }
+        Checks.checkEquals(vaccines.length, counts.size(), "vaccines counted");
+        for (int v = 0; v < vaccines.length; v++) {
+            Checks.checkEquals(v + 1, counts.get(v * 7), "count set for vaccine " + v * 7);
+            Checks.check(counts.getVaccine(v * 7) == vaccines[v], "vaccine kept for " + v * 7);
+        }
+        DoseCounts grown = new DoseCounts();
+        for (int v = 0; v < vaccines.length; v++) {
+            grown.raise(vaccines[v], 2, 100 + v);
+            grown.increment(vaccines[v], 90);
+        }
+        for (int v = 0; v < vaccines.length; v++) {
+            Checks.checkEquals(3, grown.get(v * 7), "raised then incremented count for " + v * 7);
+            Checks.checkEquals(100 + v, grown.getLastDay(v * 7), "latest day kept for " + v * 7);
+        }
+        Checks.checkEquals(0, counts.get(3), "count of a vaccine never given");
+        Checks.checkEquals(DoseHistory.NO_DAY, counts.getLastDay(7), "latest day of counted doses");
+        Checks.checkEquals(DoseHistory.NO_DAY, counts.getLastDay(3), "latest day of a vaccine never given");
+        Checks.checkEquals(vaccines.length, counts.toMap().size(), "vaccines in the map copy");
+        System.out.println("DoseCounts checks passed");
+    }
+}
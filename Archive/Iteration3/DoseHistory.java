@@ -0,0 +1,117 @@
+import java.util.Arrays;
+
+/**
+ * DoseHistory.java
+ * Every dose a patient has been given: which vaccine, which dose of the course it was,
+ * and the epoch day it was administered.
+ *
+ * The doses are kept in the order they were recorded, in int arrays, and reading them
+ * creates no objects. The number of doses of each vaccine and the day of the latest are
+ * kept in the patient's DoseCounts; working out when the next dose is due reads those,
+ * so it costs the same however long the history is.
+ *
+ * @author Gabrielle Akers
+ * @version October 18, 2026
+ */
+public class DoseHistory {
+    /** Day returned when a vaccine has no dated dose, or a dose is not due. */
+    public static final int NO_DAY = Integer.MIN_VALUE;
+
+    // Itemised doses, in the order they were recorded
+    private int[] vaccineIds = new int[4];
+    private int[] doseNumbers = new int[4];
+    private int[] days = new int[4];
+    private int size;
+
+    /**
+     * Adds a dose given on a day.
+     *
+     * @param vaccineId the vaccine's catalogue ID
+     * @param doseNumber the dose number, starting at 1
+     * @param epochDay the day it was administered
+     */
+    public void add(int vaccineId, int doseNumber, long epochDay) {
+        if (size == vaccineIds.length) {
+            vaccineIds = Arrays.copyOf(vaccineIds, size * 2);
+            doseNumbers = Arrays.copyOf(doseNumbers, size * 2);
+            days = Arrays.copyOf(days, size * 2);
+        }
+        vaccineIds[size] = vaccineId;
+        doseNumbers[size] = doseNumber;
+        days[size] = (int) epochDay;
+        size++;
+    }
+
+    /**
+     * Works out when the next dose of a vaccine is due from the doses given so far: one
+     * interval after the latest dose, but never before the day the patient becomes old
+     * enough for it.
+     *
+     * @param vaccine the vaccine
+     * @param eligibleDay the epoch day the patient reaches the vaccine's minimum age
+     * @param count the doses given
+     * @param last the epoch day of the latest dose, or NO_DAY if not known
+     * @return the due epoch day, or NO_DAY if the course is complete
+     */
+    public static long nextDueDay(Vaccine vaccine, long eligibleDay, int count, int last) {
+        if (count >= vaccine.getNumOfDosage()) {
+            return NO_DAY;
+        }
+        if (count == 0) {
+            return eligibleDay;
+        }
+        if (last == NO_DAY) {
+            // Only a count is known, assume the earlier doses were on schedule
+            return eligibleDay + (long) count * vaccine.getInterval();
+        }
+        return Math.max(eligibleDay, (long) last + vaccine.getInterval());
+    }
+
+    /** @return the number of itemised doses */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i the position of a dose, in the order recorded
+     * @return the vaccine ID of the dose
+     */
+    public int getVaccineId(int i) {
+        checkIndex(i);
+        return vaccineIds[i];
+    }
+
+    /**
+     * @param i the position of a dose, in the order recorded
+     * @return the dose number, starting at 1
+     */
+    public int getDoseNumber(int i) {
+        checkIndex(i);
+        return doseNumbers[i];
+    }
+
+    /**
+     * @param i the position of a dose, in the order recorded
+     * @return the epoch day the dose was given
+     */
+    public int getDay(int i) {
+        checkIndex(i);
+        return days[i];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("DoseHistory[");
+        for (int i = 0; i < size; i++) {
+            sb.append(i > 0 ? ", " : "").append(vaccineIds[i]).append('#').append(doseNumbers[i])
+              .append('@').append(java.time.LocalDate.ofEpochDay(days[i]));
+        }
+        return sb.append(']').toString();
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Dose " + i + " of " + size);
+        }
+    }
+}
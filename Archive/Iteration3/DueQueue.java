@@ -0,0 +1,526 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * DueQueue.java
+ * Patients ordered by the day their next vaccine dose falls due, earliest first.
+ *
+ * Each patient is in the queue once, keyed by the earliest next-due day over the vaccine
+ * catalogue (see ImmunizationPatient.getNextDueDay). The queue is an indexed binary min-heap:
+ * a map from patient ID to heap slot lets a patient's entry be moved or removed in O(log n)
+ * when a dose is recorded or the patient leaves, so the queue is kept up to date incrementally
+ * rather than rebuilt. Finding who is due on a day reads only the top of the heap, O(k) for
+ * k patients due, however many patients there are. Patients with nothing left to give, or who
+ * are too light for every vaccine they still need, are not in the queue.
+ *
+ * A queue can also hold saved patients that have not been built, placed by the due day
+ * worked out from their snapshot rows. Such a patient is built only when read from the
+ * queue, e.g. when they turn out to be due.
+ *
+ * The queue is not thread-safe; like ClinicModel it is meant to be used from one thread.
+ *
+ * @author Gabrielle Akers
+ * @version October 18, 2026
+ */
+public class DueQueue {
+    private List<Vaccine> catalogue;
+
+    // Heap arrays, parallel: slot 0 is the earliest due
+    private ImmunizationPatient[] heap = new ImmunizationPatient[16];  // null for a saved patient not built yet
+    private String[] ids = new String[16];
+    private long[] dueDays = new long[16];
+    private int[] nextVaccine = new int[16];    // catalogue position of the vaccine that is due first
+    private int size;
+    private final Map<String, Integer> slots = new HashMap<>();
+    // Builds a saved patient from their ID when they are read from the queue, null if only built ones are queued
+    private final Function<String, ImmunizationPatient> loader;
+
+    /**
+     * Creates an empty queue.
+     *
+     * @param catalogue the vaccines patients can be due for
+     */
+    public DueQueue(List<Vaccine> catalogue) {
+        this(catalogue, (Function<String, ImmunizationPatient>) null);
+    }
+
+    /**
+     * Creates an empty queue that can hold saved patients not built yet.
+     *
+     * @param catalogue the vaccines patients can be due for
+     * @param loader builds a saved patient from their ID
+     */
+    DueQueue(List<Vaccine> catalogue, Function<String, ImmunizationPatient> loader) {
+        this.catalogue = new ArrayList<>(catalogue);
+        this.loader = loader;
+    }
+
+    /**
+     * Creates a queue holding the given patients, built in O(n) rather than by n insertions.
+     *
+     * @param catalogue the vaccines patients can be due for
+     * @param patients the patients to queue
+     */
+    public DueQueue(List<Vaccine> catalogue, List<ImmunizationPatient> patients) {
+        this(catalogue);
+        rebuild(patients, null, 0);
+    }
+
+    /**
+     * Replaces the vaccine catalogue and rebuilds the queue. Every patient is needed, not
+     * only those queued, since a new vaccine can be due for a patient who had nothing left.
+     *
+     * @param vaccines the new catalogue
+     * @param patients every patient to queue
+     */
+    public void setCatalogue(List<Vaccine> vaccines, List<ImmunizationPatient> patients) {
+        setCatalogue(vaccines, patients, null, 0);
+    }
+
+    /**
+     * Replaces the vaccine catalogue and rebuilds the queue from a patient list holding null
+     * for each saved patient not built yet, whose due day is read from the snapshot instead.
+     *
+     * @param vaccines the new catalogue
+     * @param patients every patient to queue, null for a saved patient not built yet
+     * @param saved the snapshot the unbuilt patients are in, or null if there are none
+     * @param savedBase the position in the list of the snapshot's first patient
+     */
+    void setCatalogue(List<Vaccine> vaccines, List<ImmunizationPatient> patients, ClinicSnapshot saved,
+            int savedBase) {
+        catalogue = new ArrayList<>(vaccines);
+        rebuild(patients, saved, savedBase);
+    }
+
+    /**
+     * Adds a patient, or moves them to their new place after a dose has been recorded
+     * or their details have changed. A patient with nothing due is removed.
+     *
+     * @param patient the patient
+     */
+    public void update(ImmunizationPatient patient) {
+        long[] due = new long[1];
+        int vaccine = earliestDue(patient, due);
+        Integer slot = slots.get(patient.getPatientId());
+        if (vaccine < 0) {
+            if (slot != null) {
+                removeAt(slot);
+            }
+            return;
+        }
+        if (slot == null) {
+            grow();
+            slot = size++;
+            heap[slot] = patient;
+            ids[slot] = patient.getPatientId();
+            slots.put(ids[slot], slot);
+        } else {
+            heap[slot] = patient; // may have been queued before they were built
+            if (due[0] == dueDays[slot] && vaccine == nextVaccine[slot]) {
+                return;
+            }
+        }
+        dueDays[slot] = due[0];
+        nextVaccine[slot] = vaccine;
+        siftDown(siftUp(slot));
+    }
+
+    /**
+     * Removes a patient from the queue.
+     *
+     * @param patient the patient
+     * @return true if the patient was queued
+     */
+    public boolean remove(ImmunizationPatient patient) {
+        Integer slot = slots.get(patient.getPatientId());
+        if (slot == null) {
+            return false;
+        }
+        removeAt(slot);
+        return true;
+    }
+
+    /** @return the number of patients with a dose still to come */
+    public int size() {
+        return size;
+    }
+
+    /** @return true if no patient has a dose still to come */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the patient whose next dose is due first.
+     *
+     * @return the patient, or null if the queue is empty
+     */
+    public ImmunizationPatient peek() {
+        return size == 0 ? null : patientAt(0);
+    }
+
+    /**
+     * Gets the day the first dose in the queue is due.
+     *
+     * @return the epoch day, or DoseHistory.NO_DAY if the queue is empty
+     */
+    public long peekDueDay() {
+        return size == 0 ? DoseHistory.NO_DAY : dueDays[0];
+    }
+
+    /**
+     * Gets the day a queued patient's next dose is due.
+     *
+     * @param patient the patient
+     * @return the epoch day, or DoseHistory.NO_DAY if the patient is not queued
+     */
+    public long getDueDay(ImmunizationPatient patient) {
+        Integer slot = slots.get(patient.getPatientId());
+        return slot == null ? DoseHistory.NO_DAY : dueDays[slot];
+    }
+
+    /**
+     * Gets the vaccine a queued patient is due for first.
+     *
+     * @param patient the patient
+     * @return the vaccine, or null if the patient is not queued
+     */
+    public Vaccine getNextVaccine(ImmunizationPatient patient) {
+        Integer slot = slots.get(patient.getPatientId());
+        return slot == null ? null : catalogue.get(nextVaccine[slot]);
+    }
+
+    /**
+     * Lists the patients due on or before a day, e.g. today for everyone due or overdue.
+     * Only the part of the heap holding those patients is visited, and only those patients
+     * are built if they were saved; the order of the queue is unchanged.
+     *
+     * @param epochDay the last due day to include
+     * @return the patients, earliest due first
+     */
+    public List<ImmunizationPatient> getDueBy(long epochDay) {
+        List<Integer> found = new ArrayList<>();
+        int[] stack = new int[32];
+        int top = 0;
+        if (size > 0) {
+            stack[top++] = 0;
+        }
+        while (top > 0) {
+            int slot = stack[--top];
+            if (dueDays[slot] > epochDay) {
+                continue; // nothing below this slot is due earlier
+            }
+            found.add(slot);
+            for (int child = 2 * slot + 1; child <= 2 * slot + 2 && child < size; child++) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = child;
+            }
+        }
+        found.sort((a, b) -> Long.compare(dueDays[a], dueDays[b]));
+        List<ImmunizationPatient> due = new ArrayList<>(found.size());
+        for (int slot : found) {
+            due.add(patientAt(slot));
+        }
+        return due;
+    }
+
+    /**
+     * Finds the vaccine a patient is due for first.
+     *
+     * @return its catalogue position, with its due day in due[0], or -1 if nothing is due
+     */
+    private int earliestDue(ImmunizationPatient patient, long[] due) {
+        int best = -1;
+        double weight = patient.getWeightKG();
+        for (int v = 0; v < catalogue.size(); v++) {
+            Vaccine vaccine = catalogue.get(v);
+            if (weight > 0 && weight < vaccine.getMinWeightKG()) {
+                continue;
+            }
+            long day = patient.getNextDueDay(vaccine);
+            if (day != DoseHistory.NO_DAY && (best < 0 || day < due[0])) {
+                best = v;
+                due[0] = day;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gets the patient in a slot, building them first if they were saved.
+     */
+    private ImmunizationPatient patientAt(int slot) {
+        if (heap[slot] == null) {
+            heap[slot] = loader.apply(ids[slot]);
+        }
+        return heap[slot];
+    }
+
+    private void rebuild(List<ImmunizationPatient> patients, ClinicSnapshot saved, int savedBase) {
+        slots.clear();
+        size = 0;
+        long[] due = new long[1];
+        for (int i = 0; i < patients.size(); i++) {
+            ImmunizationPatient patient = patients.get(i);
+            String id = patient != null ? patient.getPatientId() : saved.getPatientId(i - savedBase);
+            if (slots.containsKey(id)) {
+                continue;
+            }
+            int vaccine = patient != null ? earliestDue(patient, due)
+                    : saved.getEarliestDue(i - savedBase, catalogue, due);
+            if (vaccine >= 0) {
+                grow();
+                heap[size] = patient;
+                ids[size] = id;
+                dueDays[size] = due[0];
+                nextVaccine[size] = vaccine;
+                slots.put(id, size);
+                size++;
+            }
+        }
+        Arrays.fill(heap, size, heap.length, null);
+        Arrays.fill(ids, size, ids.length, null);
+        for (int slot = size / 2 - 1; slot >= 0; slot--) {
+            siftDown(slot);
+        }
+    }
+
+    private void removeAt(int slot) {
+        slots.remove(ids[slot]);
+        int last = --size;
+        if (slot != last) {
+            move(last, slot);
+            siftDown(siftUp(slot));
+        }
+        heap[last] = null;
+        ids[last] = null;
+    }
+
+    private int siftUp(int slot) {
+        while (slot > 0) {
+            int parent = (slot - 1) / 2;
+            if (dueDays[parent] <= dueDays[slot]) {
+                break;
+            }
+            swap(slot, parent);
+            slot = parent;
+        }
+        return slot;
+    }
+
+    private void siftDown(int slot) {
+        while (true) {
+            int child = 2 * slot + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && dueDays[child + 1] < dueDays[child]) {
+                child++;
+            }
+            if (dueDays[slot] <= dueDays[child]) {
+                return;
+            }
+            swap(slot, child);
+            slot = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        ImmunizationPatient patient = heap[a];
+        String id = ids[a];
+        long day = dueDays[a];
+        int vaccine = nextVaccine[a];
+        move(b, a);
+        heap[b] = patient;
+        ids[b] = id;
+        dueDays[b] = day;
+        nextVaccine[b] = vaccine;
+        slots.put(id, b);
+    }
+
+    private void move(int from, int to) {
+        heap[to] = heap[from];
+        ids[to] = ids[from];
+        dueDays[to] = dueDays[from];
+        nextVaccine[to] = nextVaccine[from];
+        slots.put(ids[to], to);
+    }
+
+    private void grow() {
+        if (size == heap.length) {
+            int capacity = heap.length * 2;
+            heap = Arrays.copyOf(heap, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            dueDays = Arrays.copyOf(dueDays, capacity);
+            nextVaccine = Arrays.copyOf(nextVaccine, capacity);
+        }
+    }
+
+    /**
+     * Compares finding who is due today by scanning every patient with reading the queue,
+     * and times keeping the queue up to date as doses are recorded.
+     *
+     * @param args optional patient count
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        List<Vaccine> vaccines = new ArrayList<>();
+        for (int v = 0; v < 8; v++) {
+            vaccines.add(new Vaccine(v, "Vaccine " + v, "Generic", 0.5, 1 + v % 4, 28 * (1 + v % 3), v % 5,
+                    "intramuscular", "arm", new ArrayList<>(), 0));
+        }
+        java.util.Random random = new java.util.Random(3);
+        long today = EpochDays.today();
+        List<ImmunizationPatient> patients = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            ImmunizationPatient patient = new ImmunizationPatient("P" + i,
+                    EpochDays.toDate(today - random.nextInt(8 * 365)), "Child " + i, "", "", "", "", "Female",
+                    0, null, null, 10);
+            // Most courses are finished or on schedule; the latest dose of an open course
+            // was given within about one interval, so only a few patients are due on any day
+            for (Vaccine vaccine : vaccines) {
+                int doses = vaccine.getNumOfDosage() > 1 && random.nextInt(20) == 0
+                        ? vaccine.getNumOfDosage() - 1 : vaccine.getNumOfDosage();
+                for (int d = 1; d <= doses; d++) {
+                    patient.addVaccineDose(vaccine, today - (long) (doses - d) * vaccine.getInterval()
+                            - random.nextInt(vaccine.getInterval() + 2));
+                }
+            }
+            patients.add(patient);
+        }
+
+        checkQueue(vaccines, patients.subList(0, Math.min(n, 2000)), today);
+
+        long start = System.nanoTime();
+        DueQueue queue = new DueQueue(vaccines, patients);
+        System.out.printf("build %,d patients: %d ms, %,d queued%n", n, (System.nanoTime() - start) / 1_000_000, queue.size());
+
+        for (int round = 0; round < 3; round++) {
+            start = System.nanoTime();
+            int scanned = 0;
+            for (ImmunizationPatient patient : patients) {
+                for (Vaccine vaccine : vaccines) {
+                    long due = patient.getNextDueDay(vaccine);
+                    if (due != DoseHistory.NO_DAY && due <= today) {
+                        scanned++;
+                        break;
+                    }
+                }
+            }
+            long scanTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            boolean anyDue = queue.peekDueDay() <= today;
+            long peekTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int listed = queue.getDueBy(today).size();
+            long listTime = System.nanoTime() - start;
+            Checks.checkEquals(scanned, listed, "patients due by scan and by the queue");
+
+            start = System.nanoTime();
+            for (int i = 0; i < 10_000; i++) {
+                ImmunizationPatient patient = patients.get(random.nextInt(n));
+                Vaccine vaccine = queue.getNextVaccine(patient);
+                if (vaccine != null) {
+                    patient.addVaccineDose(vaccine, today);
+                    queue.update(patient);
+                }
+            }
+            long updateTime = System.nanoTime() - start;
+
+            System.out.printf("scan %d ms (%,d due) | peek %d us (any due: %b) | list %d ms (%,d due) | 10k doses %d ms%n",
+                    scanTime / 1_000_000, scanned, peekTime / 1_000, anyDue, listTime / 1_000_000, listed,
+                    updateTime / 1_000_000);
+        }
+    }
+
+    /**
+     * Checks a queue grown one update at a time against one built in bulk and against
+     * a scan of the patients: due days and vaccines, getDueBy, and that removing from
+     * the top always takes the earliest due, before and after doses are recorded.
+     *
+     * @param vaccines the catalogue
+     * @param patients the patients to queue; doses are recorded for some of them
+     * @param today the epoch day to list due patients by
+     */
+    private static void checkQueue(List<Vaccine> vaccines, List<ImmunizationPatient> patients, long today) {
+        DueQueue grown = new DueQueue(vaccines);
+        for (ImmunizationPatient patient : patients) {
+            grown.update(patient);
+        }
+        checkAgainstScan(grown, vaccines, patients, today, "grown queue");
+        checkAgainstScan(new DueQueue(vaccines, patients), vaccines, patients, today, "bulk-built queue");
+
+        for (int i = 0; i < patients.size(); i += 3) {
+            ImmunizationPatient patient = patients.get(i);
+            Vaccine vaccine = grown.getNextVaccine(patient);
+            if (vaccine != null) {
+                patient.addVaccineDose(vaccine, today);
+                grown.update(patient);
+            }
+        }
+        checkAgainstScan(grown, vaccines, patients, today, "queue after doses");
+
+        long previous = Long.MIN_VALUE;
+        int removed = 0;
+        while (!grown.isEmpty()) {
+            ImmunizationPatient first = grown.peek();
+            long due = grown.peekDueDay();
+            Checks.check(due >= previous, "heap order after " + removed + " removals");
+            Checks.checkEquals(due, grown.getDueDay(first), "due day of the first patient");
+            Checks.check(grown.remove(first), "first patient removed");
+            Checks.check(!grown.remove(first), "removed patient no longer queued");
+            previous = due;
+            removed++;
+        }
+        Checks.checkEquals((long) DoseHistory.NO_DAY, grown.peekDueDay(), "due day of an empty queue");
+        System.out.println("DueQueue checks passed");
+    }
+
+    /**
+     * Checks every patient's due day and first vaccine in a queue, and its due list,
+     * against a scan of the catalogue.
+     */
+    private static void checkAgainstScan(DueQueue queue, List<Vaccine> vaccines, List<ImmunizationPatient> patients,
+            long today, String what) {
+        int queued = 0;
+        List<ImmunizationPatient> dueToday = new ArrayList<>();
+        for (ImmunizationPatient patient : patients) {
+            long earliest = DoseHistory.NO_DAY;
+            for (Vaccine vaccine : vaccines) {
+                if (patient.getWeightKG() > 0 && patient.getWeightKG() < vaccine.getMinWeightKG()) {
+                    continue;
+                }
+                long day = patient.getNextDueDay(vaccine);
+                if (day != DoseHistory.NO_DAY && (earliest == DoseHistory.NO_DAY || day < earliest)) {
+                    earliest = day;
+                }
+            }
+            Checks.checkEquals(earliest, queue.getDueDay(patient), "due day of " + patient.getPatientId() + " in the " + what);
+            if (earliest != DoseHistory.NO_DAY) {
+                queued++;
+                Checks.checkEquals(earliest, patient.getNextDueDay(queue.getNextVaccine(patient)),
+                        "vaccine due first for " + patient.getPatientId() + " in the " + what);
+                if (earliest <= today) {
+                    dueToday.add(patient);
+                }
+            }
+        }
+        Checks.checkEquals(queued, queue.size(), "patients in the " + what);
+        List<ImmunizationPatient> listed = queue.getDueBy(today);
+        Checks.checkEquals(dueToday.size(), listed.size(), "patients due by today in the " + what);
+        Checks.check(new java.util.HashSet<>(listed).equals(new java.util.HashSet<>(dueToday)),
+                "same patients due by today in the " + what);
+        for (int i = 1; i < listed.size(); i++) {
+            Checks.check(queue.getDueDay(listed.get(i - 1)) <= queue.getDueDay(listed.get(i)),
+                    "patients due by today listed earliest first in the " + what);
+        }
+    }
+}
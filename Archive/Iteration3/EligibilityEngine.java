@@ -0,0 +1,479 @@
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * EligibilityEngine.java
+ * Works out which vaccines every patient is due for, for a whole population at once.
+ *
+ * The patients and the vaccine catalogue are first copied into primitive columns (birth date,
+ * age, weight, doses received per vaccine; minimum age and weight, course length and interval
+ * per vaccine). Evaluating a day is then a single pass over those arrays that fills a
+ * patient-by-vaccine DueMatrix, without touching the patient objects or allocating per pair.
+ * The engine keeps no state between calls, so one instance can be shared by any number of
+ * threads and the same Columns can be evaluated for several days.
+ *
+ * A first dose is due once the patient is old enough for the vaccine, and each following dose
+ * one interval after the latest dose in the patient's DoseHistory. Doses known only as a count,
+ * without dates, are assumed to have been given on schedule. Patients below a vaccine's minimum
+ * weight are ineligible for it; a weight of zero means it was never recorded and is not held
+ * against the patient.
+ *
+ * @author Gabrielle Akers
+ * @version October 18, 2026
+ */
+public class EligibilityEngine {
+    /** Days ahead that a dose counts as due soon by default. */
+    public static final int DEFAULT_DUE_SOON_DAYS = 14;
+    /** Days past its due date that a dose counts as overdue by default. */
+    public static final int DEFAULT_OVERDUE_AFTER_DAYS = 28;
+
+    /**
+     * Where a patient stands with one vaccine on the evaluation day.
+     */
+    public enum Status {
+        /** The next dose is more than the due-soon window away. */
+        NOT_DUE,
+        /** The next dose falls due within the due-soon window. */
+        DUE_SOON,
+        /** The next dose is due, and not yet overdue. */
+        DUE_NOW,
+        /** The next dose has been due for longer than the overdue threshold. */
+        OVERDUE,
+        /** Every dose of the course has been given. */
+        COMPLETE,
+        /** The patient is below the vaccine's minimum weight. */
+        INELIGIBLE
+    }
+
+    private static final Status[] STATUSES = Status.values();
+    private static final byte NOT_DUE = 0;
+    private static final byte DUE_SOON = 1;
+    private static final byte DUE_NOW = 2;
+    private static final byte OVERDUE = 3;
+    private static final byte COMPLETE = 4;
+    private static final byte INELIGIBLE = 5;
+    /** Due day recorded for pairs that have no next dose. */
+    public static final int NO_DUE_DAY = Integer.MIN_VALUE;
+
+    private final int dueSoonDays;
+    private final int overdueAfterDays;
+
+    /**
+     * Creates an engine with the default due-soon window and overdue threshold.
+     */
+    public EligibilityEngine() {
+        this(DEFAULT_DUE_SOON_DAYS, DEFAULT_OVERDUE_AFTER_DAYS);
+    }
+
+    /**
+     * Creates an engine.
+     *
+     * @param dueSoonDays days ahead that a dose counts as due soon
+     * @param overdueAfterDays days past its due date that a dose counts as overdue
+     */
+    public EligibilityEngine(int dueSoonDays, int overdueAfterDays) {
+        if (dueSoonDays < 0 || overdueAfterDays < 0) {
+            throw new IllegalArgumentException("Windows cannot be negative");
+        }
+        this.dueSoonDays = dueSoonDays;
+        this.overdueAfterDays = overdueAfterDays;
+    }
+
+    /**
+     * The patients and vaccines to evaluate, copied into primitive arrays.
+     * Build one with EligibilityEngine.columns; it does not follow later changes to the patients.
+     */
+    public static final class Columns {
+        final ImmunizationPatient[] patients;
+        final int patientCount;
+        final int[] birthYear;      // 0 when the date of birth is unknown
+        final int[] birthMonth;
+        final int[] birthDay;
+        final int[] ageYears;
+        final double[] weightKG;
+
+        final Vaccine[] vaccines;
+        final int vaccineCount;
+        final int[] minAgeYears;
+        final double[] minWeightKG;
+        final int[] courseDoses;
+        final int[] intervalDays;
+
+        final int[] dosesTaken;     // patient-major, patientCount x vaccineCount
+        final int[] lastDoseDay;    // same layout, DoseHistory.NO_DAY when not known
+
+        private Columns(List<ImmunizationPatient> patientList, List<Vaccine> vaccineList) {
+            patientCount = patientList.size();
+            vaccineCount = vaccineList.size();
+            patients = patientList.toArray(new ImmunizationPatient[0]);
+            vaccines = vaccineList.toArray(new Vaccine[0]);
+
+            minAgeYears = new int[vaccineCount];
+            minWeightKG = new double[vaccineCount];
+            courseDoses = new int[vaccineCount];
+            intervalDays = new int[vaccineCount];
+            for (int v = 0; v < vaccineCount; v++) {
+                Vaccine vaccine = vaccines[v];
+                minAgeYears[v] = vaccine.getMinAge();
+                minWeightKG[v] = vaccine.getMinWeightKG();
+                courseDoses[v] = vaccine.getNumOfDosage();
+                intervalDays[v] = vaccine.getInterval();
+            }
+
+            birthYear = new int[patientCount];
+            birthMonth = new int[patientCount];
+            birthDay = new int[patientCount];
+            ageYears = new int[patientCount];
+            weightKG = new double[patientCount];
+            dosesTaken = new int[patientCount * vaccineCount];
+            lastDoseDay = new int[patientCount * vaccineCount];
+            int[] vaccineIds = new int[vaccineCount];
+            for (int v = 0; v < vaccineCount; v++) {
+                vaccineIds[v] = vaccines[v].getID();
+            }
+            ZoneId zone = ZoneId.systemDefault();
+            for (int p = 0; p < patientCount; p++) {
+                ImmunizationPatient patient = patients[p];
+                Date dob = patient.getDateOfBirth();
+                if (dob != null) {
+                    LocalDate date = dob.toInstant().atZone(zone).toLocalDate();
+                    birthYear[p] = date.getYear();
+                    birthMonth[p] = date.getMonthValue();
+                    birthDay[p] = date.getDayOfMonth();
+                }
+                ageYears[p] = patient.getAge();
+                weightKG[p] = patient.getWeightKG();
+                DoseCounts counts = patient.getDoseCounts();
+                for (int v = 0; v < vaccineCount; v++) {
+                    dosesTaken[p * vaccineCount + v] = counts == null ? 0 : counts.get(vaccineIds[v]);
+                    lastDoseDay[p * vaccineCount + v] = counts == null ? DoseHistory.NO_DAY
+                            : counts.getLastDay(vaccineIds[v]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies patients and a vaccine catalogue into columns for evaluation.
+     *
+     * @param patients the patients, e.g. ClinicModel.getPatients()
+     * @param vaccines the vaccine catalogue
+     * @return the columns
+     */
+    public static Columns columns(List<ImmunizationPatient> patients, List<Vaccine> vaccines) {
+        return new Columns(patients, vaccines);
+    }
+
+    /**
+     * Evaluates every patient against every vaccine.
+     *
+     * @param patients the patients
+     * @param vaccines the vaccine catalogue
+     * @param evalDay the epoch day to evaluate on, see EpochDays
+     * @return the due matrix
+     */
+    public DueMatrix evaluate(List<ImmunizationPatient> patients, List<Vaccine> vaccines, long evalDay) {
+        return evaluate(columns(patients, vaccines), evalDay);
+    }
+
+    /**
+     * Evaluates every patient in the columns against every vaccine in one pass.
+     *
+     * @param columns the patients and vaccines
+     * @param evalDay the epoch day to evaluate on, see EpochDays
+     * @return the due matrix
+     */
+    public DueMatrix evaluate(Columns columns, long evalDay) {
+        int n = columns.patientCount;
+        int m = columns.vaccineCount;
+        byte[] status = new byte[n * m];
+        int[] dueDay = new int[n * m];
+        long today = EpochDays.today();
+        for (int p = 0; p < n; p++) {
+            int year = columns.birthYear[p];
+            double weight = columns.weightKG[p];
+            int row = p * m;
+            for (int v = 0; v < m; v++) {
+                int i = row + v;
+                int taken = columns.dosesTaken[i];
+                if (taken >= columns.courseDoses[v]) {
+                    status[i] = COMPLETE;
+                    dueDay[i] = NO_DUE_DAY;
+                    continue;
+                }
+                if (weight > 0 && weight < columns.minWeightKG[v]) {
+                    status[i] = INELIGIBLE;
+                    dueDay[i] = NO_DUE_DAY;
+                    continue;
+                }
+                long eligibleDay;
+                if (year != 0) {
+                    eligibleDay = EpochDays.anniversary(year, columns.birthMonth[p], columns.birthDay[p],
+                            columns.minAgeYears[v]);
+                } else {
+                    // No date of birth, go by the recorded age in whole years, which is the age today,
+                    // as ImmunizationPatient.getEligibleDay does
+                    int yearsToGo = columns.minAgeYears[v] - columns.ageYears[p];
+                    eligibleDay = yearsToGo <= 0 ? today : today + yearsToGo * 365L;
+                }
+                long due = DoseHistory.nextDueDay(columns.vaccines[v], eligibleDay, taken, columns.lastDoseDay[i]);
+                dueDay[i] = (int) due;
+                if (due > evalDay + dueSoonDays) {
+                    status[i] = NOT_DUE;
+                } else if (due > evalDay) {
+                    status[i] = DUE_SOON;
+                } else if (evalDay - due > overdueAfterDays) {
+                    status[i] = OVERDUE;
+                } else {
+                    status[i] = DUE_NOW;
+                }
+            }
+        }
+        return new DueMatrix(columns, evalDay, status, dueDay);
+    }
+
+    /**
+     * The result of an evaluation: a status and next-due day for every patient and vaccine.
+     * Patients and vaccines are addressed by their position in the lists that were evaluated.
+     */
+    public static final class DueMatrix {
+        private final Columns columns;
+        private final long evalDay;
+        private final byte[] status;
+        private final int[] dueDay;
+
+        private DueMatrix(Columns columns, long evalDay, byte[] status, int[] dueDay) {
+            this.columns = columns;
+            this.evalDay = evalDay;
+            this.status = status;
+            this.dueDay = dueDay;
+        }
+
+        /** @return the epoch day that was evaluated */
+        public long getEvalDay() { return evalDay; }
+
+        /** @return the number of patients evaluated */
+        public int getPatientCount() { return columns.patientCount; }
+
+        /** @return the number of vaccines evaluated */
+        public int getVaccineCount() { return columns.vaccineCount; }
+
+        /**
+         * @param p the patient position
+         * @return the patient
+         */
+        public ImmunizationPatient getPatient(int p) { return columns.patients[p]; }
+
+        /**
+         * @param v the vaccine position
+         * @return the vaccine
+         */
+        public Vaccine getVaccine(int v) { return columns.vaccines[v]; }
+
+        /**
+         * Gets where a patient stands with a vaccine.
+         *
+         * @param p the patient position
+         * @param v the vaccine position
+         * @return the status
+         */
+        public Status getStatus(int p, int v) {
+            return STATUSES[status[p * columns.vaccineCount + v]];
+        }
+
+        /**
+         * Gets the epoch day a patient's next dose of a vaccine is due.
+         *
+         * @param p the patient position
+         * @param v the vaccine position
+         * @return the due epoch day, or NO_DUE_DAY if the course is complete or the patient is ineligible
+         */
+        public int getDueDay(int p, int v) {
+            return dueDay[p * columns.vaccineCount + v];
+        }
+
+        /**
+         * Counts the patients with a status for one vaccine.
+         *
+         * @param s the status
+         * @param v the vaccine position
+         * @return the number of patients
+         */
+        public int count(Status s, int v) {
+            int m = columns.vaccineCount;
+            byte b = (byte) s.ordinal();
+            int count = 0;
+            for (int i = v; i < status.length; i += m) {
+                if (status[i] == b) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Lists the patients with a status for one vaccine, in evaluation order.
+         *
+         * @param s the status
+         * @param v the vaccine position
+         * @return the patients
+         */
+        public ArrayList<ImmunizationPatient> getPatients(Status s, int v) {
+            int m = columns.vaccineCount;
+            byte b = (byte) s.ordinal();
+            ArrayList<ImmunizationPatient> result = new ArrayList<>();
+            for (int p = 0, i = v; p < columns.patientCount; p++, i += m) {
+                if (status[i] == b) {
+                    result.add(columns.patients[p]);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Lists the patients who have a status for at least one vaccine, in evaluation order,
+         * e.g. everyone due or overdue today.
+         *
+         * @param statuses the statuses to look for
+         * @return the patients
+         */
+        public ArrayList<ImmunizationPatient> getPatients(Status... statuses) {
+            int wanted = 0;
+            for (Status s : statuses) {
+                wanted |= 1 << s.ordinal();
+            }
+            int m = columns.vaccineCount;
+            ArrayList<ImmunizationPatient> result = new ArrayList<>();
+            for (int p = 0; p < columns.patientCount; p++) {
+                for (int i = p * m, end = i + m; i < end; i++) {
+                    if ((wanted & (1 << status[i])) != 0) {
+                        result.add(columns.patients[p]);
+                        break;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Times extracting columns and evaluating a generated population against the
+     * vaccines in vaccines.csv plus a few made-up ones.
+     *
+     * @param args optional patient count
+     * @throws Exception if vaccines.csv cannot be read
+     */
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        Inventory catalogue = new Inventory("vaccine");
+        catalogue.loadResource("vaccines.csv");
+        List<Vaccine> vaccines = new ArrayList<>();
+        for (Inventory.Item item : catalogue.getItems()) {
+            vaccines.add(item.toVaccine());
+        }
+        for (int v = vaccines.size(); v < 10; v++) {
+            vaccines.add(new Vaccine(100 + v, "Vaccine " + v, "Generic", 0.5, 1 + v % 4, 28 * (1 + v % 3),
+                    v % 6, "intramuscular", "arm", new ArrayList<>(), 2 + v));
+        }
+        LocalDate today = LocalDate.now();
+        List<ImmunizationPatient> patients = new ArrayList<>(n);
+        java.util.Random random = new java.util.Random(42);
+        for (int i = 0; i < n; i++) {
+            LocalDate dob = today.minusDays(random.nextInt(16 * 365));
+            ImmunizationPatient patient = new ImmunizationPatient("P" + i, EpochDays.toDate(dob.toEpochDay()),
+                    "Child " + i, "", "", "", "", i % 2 == 0 ? "Female" : "Male",
+                    today.getYear() - dob.getYear(), null, null, 3 + random.nextInt(60));
+            for (Vaccine vaccine : vaccines) {
+                int doses = random.nextInt(vaccine.getNumOfDosage() + 1);
+                if (doses > 0) {
+                    patient.restoreDoseCount(vaccine, doses);
+                }
+            }
+            patients.add(patient);
+        }
+
+        EligibilityEngine engine = new EligibilityEngine();
+        checkAgainstPatients(engine, vaccines, today.toEpochDay());
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            Columns columns = columns(patients, vaccines);
+            long extracted = System.nanoTime();
+            DueMatrix due = engine.evaluate(columns, today.toEpochDay());
+            long evaluated = System.nanoTime();
+            System.out.printf("%,d patients x %d vaccines: columns %d ms, evaluate %d ms, %,d due or overdue%n",
+                    n, vaccines.size(), (extracted - start) / 1_000_000, (evaluated - extracted) / 1_000_000,
+                    due.getPatients(Status.DUE_NOW, Status.OVERDUE).size());
+        }
+    }
+
+    /**
+     * Checks the engine's due days against each patient's own getNextDueDay, for patients
+     * with and without a date of birth, dated and counted doses, and under the minimum
+     * weight, and that the status counts add up.
+     *
+     * @param engine the engine to check
+     * @param vaccines the vaccines to evaluate
+     * @param evalDay the epoch day to evaluate on
+     */
+    private static void checkAgainstPatients(EligibilityEngine engine, List<Vaccine> vaccines, long evalDay) {
+        java.util.Random random = new java.util.Random(7);
+        List<ImmunizationPatient> patients = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            long dob = evalDay - random.nextInt(16 * 365);
+            int age = (int) ((evalDay - dob) / 365);
+            ImmunizationPatient patient = new ImmunizationPatient("C" + i, i % 5 == 0 ? null : EpochDays.toDate(dob),
+                    "Child " + i, "", "", "", "", "Female", age, null, null, i % 7 == 0 ? 0 : 1 + random.nextInt(60));
+            for (Vaccine vaccine : vaccines) {
+                int doses = random.nextInt(vaccine.getNumOfDosage() + 1);
+                if (doses > 0 && i % 2 == 0) {
+                    patient.restoreDoseCount(vaccine, doses);
+                } else {
+                    for (int d = 0; d < doses; d++) {
+                        patient.addVaccineDose(vaccine, evalDay - random.nextInt(400));
+                    }
+                }
+            }
+            patients.add(patient);
+        }
+        DueMatrix due = engine.evaluate(patients, vaccines, evalDay);
+        Checks.checkEquals(patients.size(), due.getPatientCount(), "patients evaluated");
+        for (int p = 0; p < patients.size(); p++) {
+            ImmunizationPatient patient = patients.get(p);
+            Checks.check(due.getPatient(p) == patient, "patient kept at position " + p);
+            for (int v = 0; v < vaccines.size(); v++) {
+                Vaccine vaccine = vaccines.get(v);
+                long expected = patient.getNextDueDay(vaccine);
+                Status status = due.getStatus(p, v);
+                String pair = patient.getPatientId() + " and vaccine " + vaccine.getID();
+                if (expected == DoseHistory.NO_DAY) {
+                    Checks.checkEquals(Status.COMPLETE, status, "status of " + pair);
+                } else if (status != Status.INELIGIBLE) {
+                    Checks.checkEquals((int) expected, due.getDueDay(p, v), "due day of " + pair);
+                    Checks.check(status != Status.COMPLETE, "course of " + pair + " not complete");
+                    Checks.checkEquals(expected > evalDay, status == Status.NOT_DUE || status == Status.DUE_SOON,
+                            "due in the future for " + pair);
+                } else {
+                    Checks.check(patient.getWeightKG() > 0 && patient.getWeightKG() < vaccine.getMinWeightKG(),
+                            pair + " ineligible only when under the minimum weight");
+                }
+            }
+        }
+        int dueOrOverdue = 0;
+        for (int v = 0; v < vaccines.size(); v++) {
+            int total = 0;
+            for (Status s : Status.values()) {
+                total += due.count(s, v);
+            }
+            Checks.checkEquals(patients.size(), total, "statuses counted for vaccine " + v);
+            dueOrOverdue += due.count(Status.DUE_NOW, v) + due.count(Status.OVERDUE, v);
+            Checks.checkEquals(due.count(Status.OVERDUE, v), due.getPatients(Status.OVERDUE, v).size(),
+                    "overdue patients listed for vaccine " + v);
+        }
+        Checks.check(due.getPatients(Status.DUE_NOW, Status.OVERDUE).size() <= dueOrOverdue,
+                "patients due or overdue listed at most once each");
+        System.out.println("EligibilityEngine checks passed");
+    }
+}
@@ -0,0 +1,239 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * EpochDays.java
+ * Helpers for converting dates to and from epoch days (days since 1970-01-01).
+ * Epoch days are plain longs, so they are cheap to compare, sort and store in indexes.
+ *
+ * @author Milo Keys
+ * @version October 18, 2026
+ */
+final class EpochDays {
+    private static final long DAYS_0000_TO_1970 = 719528;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    // Looked up once: TimeZone.getDefault() returns a fresh copy on every call
+    private static final TimeZone ZONE = TimeZone.getDefault();
+
+    private EpochDays() {}
+
+    /**
+     * Converts a java.util.Date to an epoch day in the system time zone,
+     * which is the zone ClinicView.dateFormat parses dates in.
+     *
+     * @param date the date to convert
+     * @return the epoch day of the date
+     */
+    public static long of(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+    }
+
+    /**
+     * Converts a LocalDate to an epoch day.
+     *
+     * @param date the date to convert
+     * @return the epoch day of the date
+     */
+    public static long of(LocalDate date) {
+        return date.toEpochDay();
+    }
+
+    /**
+     * Converts an epoch day back to a java.util.Date at the start of that day.
+     *
+     * @param epochDay the epoch day to convert
+     * @return the Date at midnight of that day
+     */
+    public static Date toDate(long epochDay) {
+        return Date.from(LocalDate.ofEpochDay(epochDay).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    /**
+     * Gets today's epoch day in the system time zone.
+     *
+     * @return today's epoch day
+     */
+    public static long today() {
+        return LocalDate.now().toEpochDay();
+    }
+
+    /**
+     * Gets the epoch day of the first day of a month.
+     *
+     * @param year the year
+     * @param month the month, 1 to 12
+     * @return the epoch day of the first of the month
+     */
+    public static long firstOfMonth(int year, int month) {
+        return LocalDate.of(year, month, 1).toEpochDay();
+    }
+
+    /**
+     * Gets the epoch day of the last day of a month.
+     *
+     * @param year the year
+     * @param month the month, 1 to 12
+     * @return the epoch day of the last day of the month
+     */
+    public static long lastOfMonth(int year, int month) {
+        return YearMonth.of(year, month).atEndOfMonth().toEpochDay();
+    }
+
+    /**
+     * Gets the epoch day of a calendar date without creating any objects,
+     * for use in loops over many patients. Same result as LocalDate.of(...).toEpochDay().
+     *
+     * @param year the year
+     * @param month the month, 1 to 12
+     * @param day the day of the month
+     * @return the epoch day of the date
+     */
+    public static long of(int year, int month, int day) {
+        long y = year;
+        long total = 365 * y;
+        if (y >= 0) {
+            total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        } else {
+            total -= y / -4 - y / -100 + y / -400;
+        }
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * Gets the epoch day of the date a number of years after a calendar date, e.g. the day
+     * a child born on that date reaches an age. A 29 February birthday falls on 28 February
+     * in other years, as with LocalDate.plusYears.
+     *
+     * @param year the year of the starting date
+     * @param month the month of the starting date, 1 to 12
+     * @param day the day of the month of the starting date
+     * @param years the number of years to add
+     * @return the epoch day of the anniversary
+     */
+    public static long anniversary(int year, int month, int day, int years) {
+        int target = year + years;
+        if (month == 2 && day == 29 && !isLeapYear(target)) {
+            day = 28;
+        }
+        return of(target, month, day);
+    }
+
+    /**
+     * Gets the epoch day a number of years after another, without creating any objects.
+     * Same result as LocalDate.ofEpochDay(epochDay).plusYears(years).toEpochDay().
+     *
+     * @param epochDay the starting epoch day, e.g. a date of birth
+     * @param years the number of years to add
+     * @return the epoch day of the anniversary
+     */
+    public static long plusYears(long epochDay, int years) {
+        long date = civil(epochDay);
+        return anniversary((int) (date / 10_000), (int) (date / 100 % 100), (int) (date % 100), years);
+    }
+
+    /**
+     * Checks whether a year is a leap year in the ISO calendar.
+     *
+     * @param year the year
+     * @return true if the year has 366 days
+     */
+    public static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    /**
+     * Converts a point in time, as Date.getTime() millis, to an epoch day in the system
+     * time zone without creating any objects.
+     *
+     * @param epochMillis milliseconds since 1970-01-01T00:00Z
+     * @return the epoch day
+     */
+    public static long ofMillis(long epochMillis) {
+        return Math.floorDiv(epochMillis + ZONE.getOffset(epochMillis), MILLIS_PER_DAY);
+    }
+
+    /**
+     * Counts the whole years from one day to a later one, e.g. a patient's age in years
+     * on a given day. Same result as Period.between(...).getYears() for from <= to, but
+     * without creating any objects.
+     *
+     * @param fromDay the earlier epoch day, e.g. a date of birth
+     * @param toDay the later epoch day
+     * @return the whole years between them, or 0 if toDay is before fromDay
+     */
+    public static int yearsBetween(long fromDay, long toDay) {
+        if (toDay <= fromDay) {
+            return 0;
+        }
+        long from = civil(fromDay);
+        long to = civil(toDay);
+        int years = (int) (to / 10_000 - from / 10_000);
+        // Not a full year yet if the month and day have not come round again
+        if (to % 10_000 < from % 10_000) {
+            years--;
+        }
+        return years;
+    }
+
+    /**
+     * Counts the whole months from one day to a later one, e.g. a child's age in months
+     * on a given day, without creating any objects.
+     *
+     * @param fromDay the earlier epoch day, e.g. a date of birth
+     * @param toDay the later epoch day
+     * @return the whole months between them, or 0 if toDay is before fromDay
+     */
+    public static int monthsBetween(long fromDay, long toDay) {
+        if (toDay <= fromDay) {
+            return 0;
+        }
+        long from = civil(fromDay);
+        long to = civil(toDay);
+        int months = (int) (to / 10_000 * 12 + to / 100 % 100 - (from / 10_000 * 12 + from / 100 % 100));
+        // Not a full month yet if the day of the month has not come round again
+        if (to % 100 < from % 100) {
+            months--;
+        }
+        return months;
+    }
+
+    /**
+     * Numbers the calendar month an epoch day falls in, counting months from year 0,
+     * so consecutive months have consecutive numbers: year * 12 + (month - 1).
+     *
+     * @param epochDay the epoch day
+     * @return the month number
+     */
+    public static int monthOf(long epochDay) {
+        long date = civil(epochDay);
+        return (int) (date / 10_000 * 12 + date / 100 % 100 - 1);
+    }
+
+    /**
+     * Converts an epoch day to its calendar date packed as year * 10000 + month * 100 + day,
+     * for years 0 and later (days-from-civil inverted, after Howard Hinnant).
+     */
+    private static long civil(long epochDay) {
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        long day = doy - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 10_000 + month * 100 + day;
+    }
+}
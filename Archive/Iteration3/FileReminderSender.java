@@ -0,0 +1,52 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * FileReminderSender.java
+ * A loopback ReminderSender for testing and for clinics without a gateway: each channel's
+ * reminders are appended, one line each, to a file named after the channel, e.g. text.log.
+ *
+ * @author Milo Keys
+ * @version October 18, 2026
+ */
+public class FileReminderSender implements ReminderSender {
+    private final Path directory;
+
+    /**
+     * Creates a sender writing into a directory, creating it if needed.
+     *
+     * @param directory the directory for the channel files
+     * @throws IOException if the directory cannot be created
+     */
+    public FileReminderSender(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Gets the file a channel's reminders are written to.
+     *
+     * @param channel the channel
+     * @return the file
+     */
+    public Path getFile(Reminder.Channel channel) {
+        return directory.resolve(channel.name().toLowerCase(Locale.ROOT) + ".log");
+    }
+
+    @Override
+    public void send(Reminder.Channel channel, List<Reminder> batch) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(getFile(channel), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (Reminder reminder : batch) {
+                out.write(reminder.getKey());
+                out.newLine();
+            }
+        }
+    }
+}
@@ -1,6 +1,6 @@
 import java.util.Date;
-import java.util.List;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -13,7 +13,23 @@ import java.util.Map;
  */
 public class ImmunizationPatient extends Patient {
     private double weightKG;
-    private Map<Vaccine, Integer> vaccineDoses;
+    private DoseCounts doseCounts;      // null until the first dose
+    private DoseHistory doseHistory;    // null until the first dated dose
+    private DoseListener doseListener;
+
+    /**
+     * Told when a dose is recorded for a patient, e.g. to move them in the due queue.
+     * Doses put back from a saved register are not reported.
+     */
+    public interface DoseListener {
+        /**
+         * @param patient       the patient given the dose
+         * @param vaccine       the vaccine given
+         * @param doseNumber    the dose number, 1 for the first dose
+         * @param epochDay      the day it was given
+         */
+        void doseRecorded(ImmunizationPatient patient, Vaccine vaccine, int doseNumber, long epochDay);
+    }
 
     /**
      * Creates an Immunization Patient
@@ -38,7 +54,6 @@ public class ImmunizationPatient extends Patient {
                 healthInsuranceNumber, nationalIdentificationNumber,
                 address, sex, age, motherId, records);
         this.weightKG = weightKG;
-        this.vaccineDoses = new HashMap<>();
     }
 
     /**
@@ -62,34 +77,160 @@ public class ImmunizationPatient extends Patient {
     /**
      * Gets the number of doses a patient has received
      *
-     * @return doseNum
+     * @return doseNum, 0 if the patient has not had the vaccine
      */
     public int getDoseNum(Vaccine vaccine) {
-    	return vaccineDoses.get(vaccine);
+    	return doseCounts == null ? 0 : doseCounts.get(vaccine.getID());
+    }
+
+    /**
+     * Gets the day the patient's latest dose of a vaccine was given
+     *
+     * @param vaccine       the vaccine
+     * @return              the epoch day, or DoseHistory.NO_DAY if no dated dose has been recorded
+     */
+    public int getLastDoseDay(Vaccine vaccine) {
+        return doseCounts == null ? DoseHistory.NO_DAY : doseCounts.getLastDay(vaccine.getID());
     }
     
     /**
-     * Adds vaccine and corresponding dose number to hash map
+     * Records a dose of a vaccine given today
      *
      *@param vaccine		name of the vaccine
-     *@param doseNum		number of doses patient has had of vaccine
      */
     public void addVaccineDoses(Vaccine vaccine) {
-    	//initialize vaccine in list with dose number of 0
-    	if(!vaccineDoses.containsKey(vaccine)) {
-    		vaccineDoses.put(vaccine, 0);
-    	}
-    	else {
-    		vaccineDoses.put(vaccine, getDoseNum(vaccine) + 1);
+    	addVaccineDose(vaccine, EpochDays.today());
+    }
+
+    /**
+     * Records a dose of a vaccine given on a day, counting it and adding it to the dose history
+     *
+     *@param vaccine		the vaccine given
+     *@param epochDay		the day it was given, see EpochDays
+     *@return				the dose number, 1 for the first dose
+     */
+    public int addVaccineDose(Vaccine vaccine, long epochDay) {
+    	int doseNumber = counts().increment(vaccine, epochDay);
+    	history().add(vaccine.getID(), doseNumber, epochDay);
+    	if (doseListener != null) {
+    		doseListener.doseRecorded(this, vaccine, doseNumber, epochDay);
     	}
+    	return doseNumber;
+    }
+
+    /**
+     * Sets who is told when a dose is recorded for this patient, replacing any earlier listener
+     *
+     * @param listener      the listener, or null for none
+     */
+    void setDoseListener(DoseListener listener) {
+        this.doseListener = listener;
+    }
+
+    /**
+     * Sets the dose count of a vaccine directly, used when loading a saved register.
+     *
+     * @param vaccine       the vaccine
+     * @param doseNum       the saved dose count
+     */
+    void restoreDoseCount(Vaccine vaccine, int doseNum) {
+        counts().set(vaccine, doseNum);
+    }
+
+    /**
+     * Puts back a saved dose with its date, used when loading a saved register.
+     *
+     * @param vaccine       the vaccine
+     * @param doseNum       the dose number of the saved dose
+     * @param epochDay      the day it was given
+     */
+    void restoreDose(Vaccine vaccine, int doseNum, long epochDay) {
+        counts().raise(vaccine, doseNum, epochDay);
+        history().add(vaccine.getID(), doseNum, epochDay);
+    }
+
+    private DoseCounts counts() {
+        if (doseCounts == null) {
+            doseCounts = new DoseCounts();
+        }
+        return doseCounts;
+    }
+
+    private DoseHistory history() {
+        if (doseHistory == null) {
+            doseHistory = new DoseHistory();
+        }
+        return doseHistory;
+    }
+
+    /**
+     * Gets every dose the patient has been given, with dose numbers and dates
+     *
+     * @return the dose history, or null if no dated dose has been recorded
+     */
+    public DoseHistory getDoseHistory() {
+        return doseHistory;
+    }
+
+    /**
+     * Gets the day the patient is old enough for a vaccine: their birthday at the vaccine's
+     * minimum age, or, without a date of birth, today if their recorded age is enough.
+     *
+     * @param vaccine the vaccine
+     * @return the epoch day the patient becomes eligible
+     */
+    public long getEligibleDay(Vaccine vaccine) {
+        Date dateOfBirth = getDateOfBirth();
+        return eligibleDay(vaccine, dateOfBirth == null ? DoseHistory.NO_DAY : EpochDays.ofMillis(dateOfBirth.getTime()),
+                getAge());
+    }
+
+    /**
+     * Gets the day a patient is old enough for a vaccine, e.g. for a saved patient that has
+     * not been built.
+     *
+     * @param vaccine the vaccine
+     * @param birthDay the epoch day of birth, or DoseHistory.NO_DAY if not known
+     * @param age the recorded age in years, used without a date of birth
+     * @return the epoch day the patient becomes eligible
+     */
+    static long eligibleDay(Vaccine vaccine, long birthDay, int age) {
+        if (birthDay == DoseHistory.NO_DAY) {
+            long today = EpochDays.today();
+            int yearsToGo = vaccine.getMinAge() - age;
+            return yearsToGo <= 0 ? today : today + yearsToGo * 365L;
+        }
+        return EpochDays.plusYears(birthDay, vaccine.getMinAge());
+    }
+
+    /**
+     * Gets the day the patient's next dose of a vaccine is due, from their latest dose
+     * and the vaccine's interval, but not before they are old enough for it.
+     *
+     * @param vaccine the vaccine
+     * @return the due epoch day, or DoseHistory.NO_DAY if the course is complete
+     */
+    public long getNextDueDay(Vaccine vaccine) {
+        long eligibleDay = getEligibleDay(vaccine);
+        return doseCounts == null ? DoseHistory.nextDueDay(vaccine, eligibleDay, 0, DoseHistory.NO_DAY)
+                : doseCounts.getNextDueDay(vaccine, eligibleDay);
+    }
+
+    /**
+     * Gets the number of doses of each vaccine the patient has received, by vaccine ID
+     *
+     * @return the patient's dose counts, or null if they have not been given any
+     */
+    public DoseCounts getDoseCounts() {
+    	return doseCounts;
     }
 
     /**
      * Gets the list of vaccines and doses patient has received
      *
-     * @return vaccinesDoses
+     * @return a copy of the dose counts keyed by vaccine
      */
     public Map<Vaccine, Integer> getVaccineDoses() {
-    	return vaccineDoses;
+    	return doseCounts == null ? new HashMap<>() : doseCounts.toMap();
     }
 }
@@ -0,0 +1,535 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Inventory.java
+ * The stock ledger for one catalogue of dosables, such as the clinic's vaccines or vitamins.
+ *
+ * Items are kept in catalogue order for display, with an index from ID to position so
+ * that looking up, restocking and consuming an item are O(1). The ledger does not depend
+ * on Swing; the view renders it through an InventoryTableModel, and visits or batch jobs
+ * can change stock directly. Listeners are told about every change.
+ *
+ * The IDs of items changed since the last load or save are kept in a dirty set, so that
+ * save only re-renders those rows and copies the rest of the file through unchanged.
+ *
+ * @author Milo Keys
+ * @version October 18, 2026
+ */
+public class Inventory {
+
+    /**
+     * One catalogue row: a vaccine or vitamin and how many doses of it are in stock.
+     */
+    public static class Item {
+        private final int id;
+        private final String name;
+        private final String brand;
+        private final double dosage;
+        private final int dosageCount;
+        private final int intervalDays;
+        private final List<String> treats;
+        private final int minAge;
+        private final double minWeightKG;
+        private int stock;
+
+        /**
+         * Creates a catalogue item.
+         *
+         * @param id the catalogue ID
+         * @param name the product name
+         * @param brand the manufacturer
+         * @param dosage the dose size, in ml for vaccines and mg for vitamins
+         * @param dosageCount the number of doses in a full course
+         * @param intervalDays the days between doses
+         * @param treats the conditions the item treats
+         * @param stock the doses in stock
+         * @param minAge the minimum patient age in years
+         * @param minWeightKG the minimum patient weight in kg
+         */
+        public Item(int id, String name, String brand, double dosage, int dosageCount, int intervalDays,
+                    List<String> treats, int stock, int minAge, double minWeightKG) {
+            this.id = id;
+            this.name = name;
+            this.brand = brand;
+            this.dosage = dosage;
+            this.dosageCount = dosageCount;
+            this.intervalDays = intervalDays;
+            this.treats = Collections.unmodifiableList(new ArrayList<>(treats));
+            this.stock = stock;
+            this.minAge = minAge;
+            this.minWeightKG = minWeightKG;
+        }
+
+        public int getId() { return id; }
+
+        public String getName() { return name; }
+
+        public String getBrand() { return brand; }
+
+        public double getDosage() { return dosage; }
+
+        public int getDosageCount() { return dosageCount; }
+
+        public int getIntervalDays() { return intervalDays; }
+
+        public List<String> getTreats() { return treats; }
+
+        public int getStock() { return stock; }
+
+        public int getMinAge() { return minAge; }
+
+        public double getMinWeightKG() { return minWeightKG; }
+
+        /**
+         * Builds a Vaccine with this item's details, for recording doses of it.
+         *
+         * @return a new Vaccine
+         */
+        public Vaccine toVaccine() {
+            return new Vaccine(id, name, brand, dosage, dosageCount, intervalDays, minAge,
+                    null, null, new ArrayList<>(treats), minWeightKG);
+        }
+
+        @Override
+        public String toString() {
+            return "Item{id=" + id + ", name='" + name + "', brand='" + brand + "', stock=" + stock + '}';
+        }
+    }
+
+    /**
+     * Receives changes to an inventory.
+     */
+    public interface Listener {
+        /**
+         * Called after items have been added, removed or reloaded, so positions may have changed.
+         */
+        void itemsChanged();
+
+        /**
+         * Called after the stock of one item has changed.
+         *
+         * @param row the item's position in the inventory
+         * @param item the item
+         */
+        void stockChanged(int row, Item item);
+    }
+
+    private static final String DEFAULT_HEADER =
+            "id,name,brand,dosage,dosage count,interval days,treats,stock,min_age,min_weight_kg";
+
+    private final String kind;
+    private String header = DEFAULT_HEADER;
+    private final ArrayList<Item> items = new ArrayList<>();
+    private final HashMap<Integer, Integer> rowById = new HashMap<>();
+    private final ArrayList<Listener> listeners = new ArrayList<>();
+    // IDs of items added, removed or restocked since the last load or save
+    private final HashSet<Integer> dirty = new HashSet<>();
+
+    /**
+     * Creates an empty inventory.
+     *
+     * @param kind what the inventory holds, e.g. "vaccine", used in messages
+     */
+    public Inventory(String kind) {
+        this.kind = kind;
+    }
+
+    /**
+     * Gets what the inventory holds.
+     *
+     * @return the kind of item, e.g. "vaccine"
+     */
+    public String getKind() {
+        return kind;
+    }
+
+    /**
+     * Replaces the contents of the inventory with a catalogue CSV file
+     * (id,name,brand,dosage,dosage count,interval days,treats,stock[,min_age,min_weight_kg]).
+     * Rows with fewer than eight columns are skipped.
+     *
+     * @param in the CSV text, including its header line
+     * @throws IOException if the text cannot be read, or a row has a '[' that is not closed;
+     *         the inventory is left as it was
+     * @throws NumberFormatException if a numeric column is malformed
+     */
+    public void load(Reader in) throws IOException {
+        ArrayList<Item> loaded = new ArrayList<>();
+        String loadedHeader = DEFAULT_HEADER;
+        try (CsvReader csv = new CsvReader(in)) {
+            // Keep the header line (it names the dosage unit) to write back on save
+            if (csv.next() && csv.getFieldCount() == 10) {
+                StringBuilder line = new StringBuilder();
+                for (int i = 0; i < csv.getFieldCount(); i++) {
+                    line.append(i > 0 ? "," : "").append(csv.getString(i));
+                }
+                loadedHeader = line.toString();
+            }
+
+            while (csv.next()) {
+                if (csv.isMalformed()) {
+                    throw new IOException("Unclosed [ in the row on line " + csv.getLineNumber());
+                }
+                if (csv.getFieldCount() >= 8) {
+                    int fields = csv.getFieldCount();
+                    loaded.add(new Item(
+                            csv.getInt(0),
+                            csv.getString(1),
+                            csv.getString(2),
+                            csv.getDouble(3),
+                            csv.getInt(4),
+                            csv.getInt(5),
+                            csv.getList(6),
+                            csv.getInt(7),
+                            fields > 8 && !csv.isEmpty(8) ? csv.getInt(8) : 0,
+                            fields > 9 && !csv.isEmpty(9) ? csv.getDouble(9) : 0));
+                }
+            }
+        }
+        header = loadedHeader;
+        items.clear();
+        rowById.clear();
+        dirty.clear();
+        for (Item item : loaded) {
+            if (!rowById.containsKey(item.id)) {
+                rowById.put(item.id, items.size());
+                items.add(item);
+            }
+        }
+        fireItemsChanged();
+    }
+
+    /**
+     * Replaces the contents of the inventory with a catalogue CSV file on the classpath.
+     *
+     * @param resource the resource name, e.g. "vaccines.csv"
+     * @throws IOException if the resource is missing or cannot be read
+     */
+    public void loadResource(String resource) throws IOException {
+        InputStream in = Inventory.class.getClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException(resource + " not found");
+        }
+        load(new InputStreamReader(in));
+    }
+
+    /**
+     * Writes the whole inventory as a catalogue CSV file that load can read back.
+     *
+     * @param out where to write the CSV text
+     * @throws IOException if the text cannot be written
+     */
+    public void write(Writer out) throws IOException {
+        out.write(header);
+        out.write('\n');
+        for (Item item : items) {
+            writeRow(out, item);
+        }
+    }
+
+    /**
+     * Saves the inventory to the catalogue CSV file it was loaded from. Rows of items that
+     * have not changed since the last load or save are copied through as they are; only
+     * changed rows are rendered again, removed items are dropped and new ones are appended.
+     * The file is written to a temporary file beside it, forced to disk and then moved
+     * over the original in one atomic rename, so a crash leaves either the old file or
+     * the new one, never half of each.
+     *
+     * @param file the catalogue file; written in full if it does not exist yet
+     * @return false if there was nothing to save
+     * @throws IOException if the file cannot be read or written
+     */
+    public boolean save(Path file) throws IOException {
+        boolean exists = Files.exists(file);
+        if (dirty.isEmpty() && exists) {
+            return false;
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(tmp.toFile());
+             Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+            if (exists) {
+                copyWithChanges(file, out);
+            } else {
+                write(out);
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        dirty.clear();
+        return true;
+    }
+
+    /**
+     * Checks whether anything has changed since the inventory was last loaded or saved.
+     *
+     * @return true if there are unsaved changes
+     */
+    public boolean hasUnsavedChanges() {
+        return !dirty.isEmpty();
+    }
+
+    /**
+     * Gets the number of items in the inventory.
+     *
+     * @return the item count
+     */
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * Gets the item at a position, in catalogue order.
+     *
+     * @param row the position
+     * @return the item
+     */
+    public Item getItemAt(int row) {
+        return items.get(row);
+    }
+
+    /**
+     * Gets all items in catalogue order.
+     *
+     * @return an unmodifiable view of the items
+     */
+    public List<Item> getItems() {
+        return Collections.unmodifiableList(items);
+    }
+
+    /**
+     * Finds an item by ID.
+     *
+     * @param id the catalogue ID
+     * @return the item, or null if there is none with that ID
+     */
+    public Item get(int id) {
+        Integer row = rowById.get(id);
+        return row == null ? null : items.get(row);
+    }
+
+    /**
+     * Checks whether an item with the given ID is in the inventory.
+     *
+     * @param id the catalogue ID
+     * @return true if it is
+     */
+    public boolean contains(int id) {
+        return rowById.containsKey(id);
+    }
+
+    /**
+     * Gets the stock of an item.
+     *
+     * @param id the catalogue ID
+     * @return the doses in stock, or 0 if there is no item with that ID
+     */
+    public int getStock(int id) {
+        Item item = get(id);
+        return item == null ? 0 : item.stock;
+    }
+
+    /**
+     * Adds a new item to the end of the inventory.
+     *
+     * @param item the item to add
+     * @return false if an item with the same ID is already in the inventory
+     */
+    public boolean add(Item item) {
+        if (item == null || rowById.containsKey(item.id)) {
+            return false;
+        }
+        rowById.put(item.id, items.size());
+        items.add(item);
+        dirty.add(item.id);
+        fireItemsChanged();
+        return true;
+    }
+
+    /**
+     * Removes an item from the inventory.
+     *
+     * @param id the catalogue ID
+     * @return the removed item, or null if there was none with that ID
+     */
+    public Item remove(int id) {
+        Integer row = rowById.remove(id);
+        if (row == null) {
+            return null;
+        }
+        Item removed = items.remove((int) row);
+        dirty.add(id);
+        for (int i = row; i < items.size(); i++) {
+            rowById.put(items.get(i).id, i);
+        }
+        fireItemsChanged();
+        return removed;
+    }
+
+    /**
+     * Adds doses to the stock of an item.
+     *
+     * @param id the catalogue ID
+     * @param amount the doses received, not negative
+     * @return the new stock level
+     * @throws IllegalArgumentException if there is no item with that ID or the amount is negative
+     */
+    public int restock(int id, int amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Cannot restock a negative amount: " + amount);
+        }
+        int row = rowOf(id);
+        Item item = items.get(row);
+        item.stock = Math.addExact(item.stock, amount);
+        dirty.add(id);
+        fireStockChanged(row, item);
+        return item.stock;
+    }
+
+    /**
+     * Takes doses out of the stock of an item, e.g. when they are administered at a visit.
+     * Nothing is taken if there are not enough doses in stock.
+     *
+     * @param id the catalogue ID
+     * @param amount the doses used, not negative
+     * @return true if the doses were taken, false if the item is unknown or there are too few
+     */
+    public boolean consume(int id, int amount) {
+        Integer row = rowById.get(id);
+        if (row == null || amount < 0) {
+            return false;
+        }
+        Item item = items.get(row);
+        if (item.stock < amount) {
+            return false;
+        }
+        item.stock -= amount;
+        dirty.add(id);
+        fireStockChanged(row, item);
+        return true;
+    }
+
+    /**
+     * Sets the stock of an item after a count, replacing the recorded level.
+     *
+     * @param id the catalogue ID
+     * @param stock the doses counted, not negative
+     * @throws IllegalArgumentException if there is no item with that ID or the stock is negative
+     */
+    public void setStock(int id, int stock) {
+        if (stock < 0) {
+            throw new IllegalArgumentException("Stock cannot be negative: " + stock);
+        }
+        int row = rowOf(id);
+        Item item = items.get(row);
+        if (item.stock != stock) {
+            item.stock = stock;
+            dirty.add(id);
+            fireStockChanged(row, item);
+        }
+    }
+
+    /**
+     * Registers a listener for changes to this inventory.
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Streams an existing catalogue file to out, replacing the rows of dirty items
+     * and then appending dirty items that were not in the file.
+     */
+    private void copyWithChanges(Path file, Writer out) throws IOException {
+        HashSet<Integer> pending = new HashSet<>(dirty);
+        try (CsvReader csv = new CsvReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            csv.setKeepRecordText(true);
+            while (csv.next()) {
+                Integer id = csv.getFieldCount() >= 8 ? parseId(csv) : null;
+                if (id == null || !dirty.contains(id)) {
+                    // Header, or an unchanged row
+                    csv.writeRecord(out);
+                    out.write('\n');
+                } else if (pending.remove(id) && contains(id)) {
+                    writeRow(out, get(id));
+                }
+            }
+        }
+        for (Item item : items) {
+            if (pending.contains(item.id)) {
+                writeRow(out, item);
+            }
+        }
+    }
+
+    private static Integer parseId(CsvReader csv) {
+        try {
+            return csv.getInt(0);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void writeRow(Writer out, Item item) throws IOException {
+        out.write(item.id + "," + quote(item.name) + "," + quote(item.brand) + "," + item.dosage + ","
+                + item.dosageCount + "," + item.intervalDays + "," + quote("[" + String.join(", ", item.treats) + "]")
+                + "," + item.stock + "," + item.minAge + "," + item.minWeightKG + "\n");
+    }
+
+    /**
+     * Quotes a CSV field if it contains a quote or line break, or a comma outside brackets.
+     */
+    private static String quote(String field) {
+        boolean bracketed = field.startsWith("[") && field.endsWith("]");
+        boolean needsQuotes = field.indexOf('"') >= 0 || field.indexOf('\n') >= 0
+                || (!bracketed && field.indexOf(',') >= 0);
+        return needsQuotes ? '"' + field.replace("\"", "\"\"") + '"' : field;
+    }
+
+    private int rowOf(int id) {
+        Integer row = rowById.get(id);
+        if (row == null) {
+            throw new IllegalArgumentException("No " + kind + " with ID " + id);
+        }
+        return row;
+    }
+
+    private void fireItemsChanged() {
+        for (Listener listener : listeners) {
+            listener.itemsChanged();
+        }
+    }
+
+    private void fireStockChanged(int row, Item item) {
+        for (Listener listener : listeners) {
+            listener.stockChanged(row, item);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * InventoryTableModel.java
+ * Shows an Inventory in a JTable. The table reads straight from the inventory, so there is
+ * no second copy of the stock to keep in sync; only the Stock column is editable, and an edit
+ * sets the stock in the inventory. A change to one item's stock repaints only its row.
+ *
+ * @author Milo Keys
+ * @version October 18, 2026
+ */
+class InventoryTableModel extends AbstractTableModel implements Inventory.Listener {
+    private static final long serialVersionUID = 1L;
+    static final int STOCK_COLUMN = 4;
+
+    private final Inventory inventory;
+    private final String[] columns;
+
+    /**
+     * Creates a table model over an inventory and starts listening to it.
+     *
+     * @param inventory the inventory to show
+     * @param dosageUnit the unit of the dosage column, e.g. "ml"
+     */
+    public InventoryTableModel(Inventory inventory, String dosageUnit) {
+        this.inventory = inventory;
+        this.columns = new String[]{"ID", "Name", "Brand", "Dosage (" + dosageUnit + ")", "Stock"};
+        inventory.addListener(this);
+    }
+
+    /**
+     * Gets the inventory shown in the table.
+     *
+     * @return the inventory
+     */
+    public Inventory getInventory() {
+        return inventory;
+    }
+
+    @Override
+    public int getRowCount() {
+        return inventory.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columns[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        switch (column) {
+            case 0:
+            case STOCK_COLUMN:
+                return Integer.class;
+            case 3:
+                return Double.class;
+            default:
+                return String.class;
+        }
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        // Only allow editing the stock column
+        return column == STOCK_COLUMN;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Inventory.Item item = inventory.getItemAt(row);
+        switch (column) {
+            case 0: return item.getId();
+            case 1: return item.getName();
+            case 2: return item.getBrand();
+            case 3: return item.getDosage();
+            default: return item.getStock();
+        }
+    }
+
+    @Override
+    public void setValueAt(Object value, int row, int column) {
+        if (column == STOCK_COLUMN && value instanceof Integer && (Integer) value >= 0) {
+            inventory.setStock(inventory.getItemAt(row).getId(), (Integer) value);
+        }
+    }
+
+    @Override
+    public void itemsChanged() {
+        fireTableDataChanged();
+    }
+
+    @Override
+    public void stockChanged(int row, Inventory.Item item) {
+        fireTableCellUpdated(row, STOCK_COLUMN);
+    }
+}
@@ -0,0 +1,308 @@
+import javax.swing.table.AbstractTableModel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * PatientTableModel.java
+ * Shows a clinic's patients in a JTable, reading straight from the ClinicModel's patient list.
+ *
+ * Nothing is copied: a cell is worked out when the table asks for it, which is only for the
+ * rows on screen, so the date of birth of a patient scrolled past is never formatted, and a
+ * patient still in a saved register is only built once its row is shown. Adding or removing
+ * patients in the model inserts or deletes just their rows in the table.
+ *
+ * Sorting and filtering do not move any patients either. They build an index view, an array
+ * holding the position in the patient list of the patient shown on each row, and new patients
+ * are merged into their sorted places in it in one pass. With no sort or filter set, the rows
+ * are the patient list in order and there is no index.
+ *
+ * @author Milo Keys
+ * @version October 18, 2026
+ */
+class PatientTableModel extends AbstractTableModel implements ClinicModel.PatientListener {
+    private static final long serialVersionUID = 1L;
+    static final int DOB_COLUMN = 4;
+    static final int WEIGHT_COLUMN = 6;
+    private static final String[] COLUMNS = {"ID", "National ID", "Name", "Address", "DOB", "Sex", "Weight(KG)"};
+    private static final Comparator<String> TEXT_ORDER =
+            Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER);
+    private static final Comparator<Date> DATE_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    private final ClinicModel model;
+
+    // Index view: rows[r] is the position in the patient list of the patient on row r; null when unsorted and unfiltered
+    private int[] rows;
+    private int rowCount;
+    private String filter;
+    private int sortColumn = -1;
+    private boolean ascending = true;
+
+    /**
+     * Creates a table model over a clinic's patients and starts listening to it.
+     * Patients still in a saved register are left unbuilt until their rows are shown.
+     *
+     * @param model the clinic
+     */
+    public PatientTableModel(ClinicModel model) {
+        this.model = model;
+        model.addPatientListener(this);
+    }
+
+    /**
+     * Gets the patient shown on a row.
+     *
+     * @param row the table row, as the model sees it
+     * @return the patient
+     */
+    public ImmunizationPatient getPatientAt(int row) {
+        return model.getPatientAt(rows == null ? row : rows[row]);
+    }
+
+    /**
+     * Shows only the patients whose ID, national ID, name or address contains some text.
+     *
+     * @param text the text to look for, ignoring case; null or blank to show every patient
+     */
+    public void setFilter(String text) {
+        filter = text == null || text.trim().isEmpty() ? null : text.trim().toLowerCase(Locale.ROOT);
+        rebuild();
+    }
+
+    /**
+     * Sorts the rows by a column.
+     *
+     * @param column the column, or -1 to show patients in the order of the patient list
+     * @param ascending true for A to Z and oldest first
+     */
+    public void sortBy(int column, boolean ascending) {
+        this.sortColumn = column;
+        this.ascending = ascending;
+        rebuild();
+    }
+
+    /**
+     * Sorts by a column, or reverses the order if already sorted by it, e.g. on a header click.
+     *
+     * @param column the column
+     */
+    public void toggleSort(int column) {
+        sortBy(column, column != sortColumn || !ascending);
+    }
+
+    /** @return the column sorted by, or -1 if unsorted */
+    public int getSortColumn() {
+        return sortColumn;
+    }
+
+    /**
+     * Reads the clinic's patients again, e.g. after a saved register has been loaded into it.
+     */
+    public void reload() {
+        rebuild();
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows == null ? model.getPatientCount() : rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == WEIGHT_COLUMN ? Double.class : String.class;
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        ImmunizationPatient patient = getPatientAt(row);
+        switch (column) {
+            case 0: return patient.getPatientId();
+            case 1: return patient.getNationalIdentificationNumber();
+            case 2: return patient.getName();
+            case 3: return patient.getAddress();
+            case DOB_COLUMN:
+                Date dateOfBirth = patient.getDateOfBirth();
+                return dateOfBirth == null ? "" : ClinicView.dateFormat.format(dateOfBirth);
+            case 5: return patient.getSex();
+            default: return patient.getWeightKG();
+        }
+    }
+
+    @Override
+    public void patientsAdded(int first, int last) {
+        if (rows == null) {
+            fireTableRowsInserted(first, last);
+            return;
+        }
+        int[] added = new int[last - first + 1];
+        int n = 0;
+        for (int index = first; index <= last; index++) {
+            if (matches(model.getPatientAt(index))) {
+                added[n++] = index;
+            }
+        }
+        if (n == 0) {
+            return;
+        }
+        if (sortColumn < 0) {
+            // unsorted, so the new patients go after every other row
+            if (rowCount + n > rows.length) {
+                rows = Arrays.copyOf(rows, Math.max(rowCount + n, rowCount * 2));
+            }
+            System.arraycopy(added, 0, rows, rowCount, n);
+            rowCount += n;
+            fireTableRowsInserted(rowCount - n, rowCount - 1);
+            return;
+        }
+        sort(added, n);
+        merge(added, n);
+    }
+
+    @Override
+    public void patientRemoved(int index, ImmunizationPatient patient, int movedFrom) {
+        if (rows == null) {
+            fireTableRowsDeleted(movedFrom, movedFrom);
+            if (index < movedFrom) {
+                fireTableRowsUpdated(index, index); // now showing the patient moved from the end
+            }
+            return;
+        }
+        // the moved patient keeps its row, which only needs its new position
+        int removedRow = -1;
+        int kept = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (rows[row] == index) {
+                removedRow = row;
+            } else {
+                rows[kept++] = rows[row] == movedFrom ? index : rows[row];
+            }
+        }
+        rowCount = kept;
+        if (removedRow >= 0) {
+            fireTableRowsDeleted(removedRow, removedRow);
+        }
+    }
+
+    /**
+     * Builds the index view for the current filter and sort, and redraws the table.
+     * Every patient is built, as filtering and sorting look at them all.
+     */
+    private void rebuild() {
+        if (filter == null && sortColumn < 0) {
+            rows = null;
+            rowCount = 0;
+        } else {
+            int count = model.getPatientCount();
+            int[] matching = new int[count];
+            int n = 0;
+            for (int index = 0; index < count; index++) {
+                if (matches(model.getPatientAt(index))) {
+                    matching[n++] = index;
+                }
+            }
+            if (sortColumn >= 0) {
+                sort(matching, n);
+            }
+            rows = matching;
+            rowCount = n;
+        }
+        fireTableDataChanged();
+    }
+
+    /**
+     * Sorts the first n positions of an array into the current sort order.
+     */
+    private void sort(int[] positions, int n) {
+        Integer[] boxed = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            boxed[i] = positions[i];
+        }
+        Arrays.sort(boxed, (a, b) -> compare(a, b));
+        for (int i = 0; i < n; i++) {
+            positions[i] = boxed[i];
+        }
+    }
+
+    /**
+     * Merges sorted new positions into the sorted rows in one pass, each after any equal
+     * patients, and tells the table about each run of adjacent new rows.
+     */
+    private void merge(int[] added, int n) {
+        int[] merged = new int[Math.max(rows.length, rowCount + n)];
+        int[] newRows = new int[n];
+        int old = 0;
+        int next = 0;
+        int out = 0;
+        while (next < n) {
+            if (old < rowCount && compare(rows[old], added[next]) <= 0) {
+                merged[out++] = rows[old++];
+            } else {
+                newRows[next] = out;
+                merged[out++] = added[next++];
+            }
+        }
+        System.arraycopy(rows, old, merged, out, rowCount - old);
+        rows = merged;
+        rowCount += n;
+        for (int start = 0; start < n; ) {
+            int end = start;
+            while (end + 1 < n && newRows[end + 1] == newRows[end] + 1) {
+                end++;
+            }
+            fireTableRowsInserted(newRows[start], newRows[end]);
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Compares two patients, by their positions in the patient list, in the current sort order.
+     * Patients that tie are kept in the order of the patient list.
+     */
+    private int compare(int a, int b) {
+        ImmunizationPatient first = model.getPatientAt(a);
+        ImmunizationPatient second = model.getPatientAt(b);
+        int order;
+        switch (sortColumn) {
+            case 0: order = TEXT_ORDER.compare(first.getPatientId(), second.getPatientId()); break;
+            case 1: order = TEXT_ORDER.compare(first.getNationalIdentificationNumber(),
+                    second.getNationalIdentificationNumber()); break;
+            case 2: order = TEXT_ORDER.compare(first.getName(), second.getName()); break;
+            case 3: order = TEXT_ORDER.compare(first.getAddress(), second.getAddress()); break;
+            case DOB_COLUMN: order = DATE_ORDER.compare(first.getDateOfBirth(), second.getDateOfBirth()); break;
+            case 5: order = TEXT_ORDER.compare(first.getSex(), second.getSex()); break;
+            default: order = Double.compare(first.getWeightKG(), second.getWeightKG()); break;
+        }
+        if (!ascending) {
+            order = -order;
+        }
+        return order != 0 ? order : Integer.compare(a, b);
+    }
+
+    private boolean matches(ImmunizationPatient patient) {
+        return filter == null
+                || contains(patient.getPatientId())
+                || contains(patient.getNationalIdentificationNumber())
+                || contains(patient.getName())
+                || contains(patient.getAddress());
+    }
+
+    private boolean contains(String field) {
+        return field != null && field.toLowerCase(Locale.ROOT).contains(filter);
+    }
+}
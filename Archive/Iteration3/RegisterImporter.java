@@ -0,0 +1,460 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * RegisterImporter.java
+ * Streams a Ghana Health Service immunization register text file into ImmunizationPatients.
+ *
+ * The register has one child per line with the columns
+ * Date, Child ID, Child Name, Mother Name, Parity, Address, Date Registered, DOB, Sex, Weight(kg)
+ * (see documentation/ExampleClinicRegister.txt). Columns are separated by a tab or by a run
+ * of two or more spaces, since both turn up in transcribed registers; single spaces are kept
+ * because names and addresses contain them. Dates are MM/dd/yyyy.
+ *
+ * The file is read one line at a time and patients are handed on in fixed size batches, so
+ * memory use does not grow with the size of the register. Rows that cannot be parsed are
+ * counted and skipped rather than stopping the import.
+ *
+ * For very large registers importParallel splits the file into byte ranges that start and
+ * end on line boundaries and parses them on a fork-join pool. Chunks are still handed to
+ * the sink one at a time and in file order, so the sink does not need to be thread-safe
+ * and the first occurrence of a duplicate child ID wins, just as in a sequential import.
+ *
+ * @author Ellis Fitzgerald
+ * @version October 18, 2026
+ */
+public class RegisterImporter {
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+    public static final int DEFAULT_CHUNK_BYTES = 8 << 20;
+    static final int FIELD_COUNT = 10;
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    private final int batchSize;
+    private final LocalDate today;
+
+    /**
+     * Creates an importer with the default batch size.
+     */
+    public RegisterImporter() {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates an importer.
+     *
+     * @param batchSize number of patients handed to the sink at a time
+     */
+    public RegisterImporter(int batchSize) {
+        this.batchSize = batchSize;
+        this.today = LocalDate.now();
+    }
+
+    /**
+     * Imports a register file into a clinic model.
+     *
+     * @param file the register file
+     * @param model the model to add the patients to
+     * @return counts of imported and rejected rows
+     * @throws IOException if the file cannot be read
+     */
+    public ImportReport importInto(Path file, ClinicModel model) throws IOException {
+        return importFile(file, model::addPatients);
+    }
+
+    /**
+     * Imports a register file into a clinic model, parsing chunks of the file in parallel.
+     * Each chunk is added to the model with a single batched insert.
+     *
+     * @param file the register file
+     * @param model the model to add the patients to
+     * @return counts of imported and rejected rows
+     * @throws IOException if the file cannot be read
+     */
+    public ImportReport importParallelInto(Path file, ClinicModel model) throws IOException {
+        return importParallel(file, DEFAULT_CHUNK_BYTES, ForkJoinPool.commonPool(), model::addPatients);
+    }
+
+    /**
+     * Imports a register file by parsing line-aligned byte ranges on a fork-join pool.
+     * The sink is called on the calling thread, once per chunk, in file order. At most
+     * two chunks per pool thread are parsed ahead of the sink, which bounds memory use.
+     *
+     * @param file the register file
+     * @param chunkBytes approximate size of each chunk
+     * @param pool the pool to parse on
+     * @param sink receives the patients of each chunk; the list is not reused
+     * @return counts of imported and rejected rows
+     * @throws IOException if the file cannot be read
+     */
+    public ImportReport importParallel(Path file, int chunkBytes, ForkJoinPool pool,
+                                       Consumer<List<ImmunizationPatient>> sink) throws IOException {
+        long start = System.nanoTime();
+        ImportReport report = new ImportReport();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel, chunkBytes);
+            int window = Math.max(2, pool.getParallelism() * 2);
+            Deque<ForkJoinTask<Chunk>> inFlight = new ArrayDeque<>();
+            int next = 0;
+            while (next < bounds.length - 1 || !inFlight.isEmpty()) {
+                while (next < bounds.length - 1 && inFlight.size() < window) {
+                    long from = bounds[next];
+                    long to = bounds[next + 1];
+                    inFlight.add(pool.submit(() -> parseChunk(channel, from, to)));
+                    next++;
+                }
+                Chunk chunk = inFlight.poll().get();
+                report.merge(chunk.report);
+                if (!chunk.patients.isEmpty()) {
+                    sink.accept(chunk.patients);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Register import interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Register import failed", e.getCause());
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * Patients and counts parsed from one chunk of a register file.
+     */
+    private static class Chunk {
+        final List<ImmunizationPatient> patients = new ArrayList<>();
+        final ImportReport report = new ImportReport();
+    }
+
+    /**
+     * Splits a file into ranges of about chunkBytes, moving each split forward to
+     * just past the next newline so that no line is cut in two.
+     *
+     * @return the range boundaries, starting at 0 and ending at the file size
+     */
+    private static long[] chunkBounds(FileChannel channel, int chunkBytes) throws IOException {
+        long size = channel.size();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long pos = chunkBytes;
+        while (pos < size) {
+            long boundary = size;
+            long scan = pos;
+            search:
+            while (scan < size) {
+                probe.clear();
+                int read = channel.read(probe, scan);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        boundary = scan + i + 1;
+                        break search;
+                    }
+                }
+                scan += read;
+            }
+            if (boundary >= size) {
+                break;
+            }
+            bounds.add(boundary);
+            pos = boundary + chunkBytes;
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Reads and parses the lines in one byte range of the file.
+     */
+    private Chunk parseChunk(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate((int) (to - from));
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes, from + bytes.position()) < 0) {
+                break;
+            }
+        }
+        String text = new String(bytes.array(), 0, bytes.position(), StandardCharsets.UTF_8);
+        Chunk chunk = new Chunk();
+        String[] fields = new String[FIELD_COUNT];
+        int lineStart = 0;
+        while (lineStart < text.length()) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = text.length();
+            }
+            int contentEnd = lineEnd > lineStart && text.charAt(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            String line = text.substring(lineStart, contentEnd);
+            boolean header = from == 0 && lineStart == 0 && line.startsWith("Date");
+            if (!header && !line.isBlank()) {
+                ImmunizationPatient patient = parseRow(line, fields);
+                if (patient == null) {
+                    chunk.report.reject("byte " + (from + lineStart), line);
+                } else {
+                    chunk.patients.add(patient);
+                    chunk.report.accepted++;
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return chunk;
+    }
+
+    /**
+     * Imports a register file, handing patients to a sink in batches.
+     *
+     * @param file the register file
+     * @param sink receives each batch of parsed patients; the list is not reused
+     * @return counts of imported and rejected rows
+     * @throws IOException if the file cannot be read
+     */
+    public ImportReport importFile(Path file, Consumer<List<ImmunizationPatient>> sink) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importFrom(reader, sink);
+        }
+    }
+
+    /**
+     * Imports register lines from a reader, handing patients to a sink in batches.
+     *
+     * @param in the register text
+     * @param sink receives each batch of parsed patients; the list is not reused
+     * @return counts of imported and rejected rows
+     * @throws IOException if the reader fails
+     */
+    public ImportReport importFrom(Reader in, Consumer<List<ImmunizationPatient>> sink) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, 1 << 16);
+        ImportReport report = new ImportReport();
+        long start = System.nanoTime();
+        String[] fields = new String[FIELD_COUNT];
+        List<ImmunizationPatient> batch = new ArrayList<>(batchSize);
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || (lineNumber == 1 && line.startsWith("Date"))) {
+                continue; // header or blank line
+            }
+            ImmunizationPatient patient = parseRow(line, fields);
+            if (patient == null) {
+                report.reject("line " + lineNumber, line);
+                continue;
+            }
+            batch.add(patient);
+            report.accepted++;
+            if (batch.size() == batchSize) {
+                sink.accept(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            sink.accept(batch);
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * Parses one register row.
+     *
+     * @param line the row text
+     * @param fields scratch array of FIELD_COUNT entries
+     * @return the patient, or null if the row is malformed
+     */
+    ImmunizationPatient parseRow(String line, String[] fields) {
+        if (splitFields(line, fields) != FIELD_COUNT) {
+            return null;
+        }
+        String childId = fields[1];
+        String name = fields[2];
+        String address = fields[5];
+        LocalDate dob = parseDate(fields[7]);
+        String sex = fields[8];
+        if (childId.isEmpty() || name.isEmpty() || dob == null || sex.isEmpty()) {
+            return null;
+        }
+        double weight;
+        try {
+            weight = Double.parseDouble(fields[9]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        int age = dob.isAfter(today) ? 0 : Period.between(dob, today).getYears();
+        // The register has no mother ID or insurance numbers; the mother's name, parity and
+        // registration date have no field on ImmunizationPatient yet.
+        return new ImmunizationPatient(childId, EpochDays.toDate(dob.toEpochDay()), name,
+                null, null, null, address, sex, age, null, null, weight);
+    }
+
+    /**
+     * Splits a register row into fields. A tab, or two or more spaces, separate fields;
+     * any mix of tabs and spaces between two fields counts as one separator.
+     *
+     * @param line the row text
+     * @param out receives up to out.length trimmed fields
+     * @return the number of fields found, which may exceed out.length
+     */
+    static int splitFields(String line, String[] out) {
+        int count = 0;
+        int start = 0;
+        int i = 0;
+        int len = line.length();
+        while (i < len) {
+            char c = line.charAt(i);
+            boolean separator = c == '\t' || (c == ' ' && i + 1 < len && line.charAt(i + 1) <= ' ');
+            if (!separator) {
+                i++;
+                continue;
+            }
+            if (count < out.length) {
+                out[count] = line.substring(start, i).trim();
+            }
+            count++;
+            boolean sawTab = false;
+            while (i < len && (line.charAt(i) == ' ' || (line.charAt(i) == '\t' && !sawTab))) {
+                sawTab |= line.charAt(i) == '\t';
+                i++;
+            }
+            start = i;
+        }
+        if (start < len) {
+            if (count < out.length) {
+                out[count] = line.substring(start).trim();
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Parses an MM/dd/yyyy date without going through a formatter.
+     *
+     * @param s the date text
+     * @return the date, or null if it is not a valid MM/dd/yyyy date
+     */
+    static LocalDate parseDate(String s) {
+        if (s.length() != 10 || s.charAt(2) != '/' || s.charAt(5) != '/') {
+            return null;
+        }
+        int month = digits(s, 0, 2);
+        int day = digits(s, 3, 5);
+        int year = digits(s, 6, 10);
+        if (month < 1 || month > 12 || day < 1 || day > 31 || year < 0) {
+            return null;
+        }
+        try {
+            return LocalDate.of(year, month, day);
+        } catch (java.time.DateTimeException e) {
+            return null;
+        }
+    }
+
+    private static int digits(String s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Outcome of an import: how many rows went in, how many were rejected and how fast.
+     */
+    public static class ImportReport {
+        long accepted;
+        long rejected;
+        long elapsedNanos;
+        final List<String> errors = new ArrayList<>();
+
+        void reject(String where, String line) {
+            rejected++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(where + ": " + line);
+            }
+        }
+
+        void merge(ImportReport other) {
+            accepted += other.accepted;
+            rejected += other.rejected;
+            for (String error : other.errors) {
+                if (errors.size() < MAX_REPORTED_ERRORS) {
+                    errors.add(error);
+                }
+            }
+        }
+
+        /** @return the number of rows parsed into patients */
+        public long getAccepted() { return accepted; }
+
+        /** @return the number of rows that could not be parsed */
+        public long getRejected() { return rejected; }
+
+        /** @return the first few rejected rows with where they were found */
+        public List<String> getErrors() { return errors; }
+
+        /** @return rows (accepted and rejected) processed per second */
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : (accepted + rejected) * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Imported %d rows, rejected %d, in %.2f s (%.0f rows/s)",
+                    accepted, rejected, elapsedNanos / 1e9, getRowsPerSecond());
+        }
+    }
+
+    /**
+     * Imports a register file (the example register by default) into an empty clinic.
+     * Pass --parallel after the path to parse it in chunks across all cores.
+     *
+     * @param args optional path to a register file, optionally followed by --parallel
+     * @throws IOException if the file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args.length > 0 ? args[0] : "documentation/ExampleClinicRegister.txt");
+        ClinicModel model = new ClinicModel("Import Clinic", "Unknown Address");
+        boolean parallel = args.length > 1 && args[1].equals("--parallel");
+        RegisterImporter importer = new RegisterImporter();
+        ImportReport report = parallel ? importer.importParallelInto(file, model) : importer.importInto(file, model);
+        System.out.println(report);
+        report.getErrors().forEach(System.out::println);
+        if (model.getPatientCount() > 20) {
+            return;
+        }
+        for (ImmunizationPatient p : model.getPatients()) {
+            System.out.println(p.getPatientId() + "  " + p.getName() + "  " + p.getAddress() + "  " + p.getWeightKG());
+        }
+    }
+}
@@ -6,7 +6,10 @@
  * @author Gabrielle Akers
  * version: 4/14/2025
  */
+import java.io.IOException;
 import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * Reminder used to notify patients about a vaccine
@@ -15,13 +18,110 @@ import java.time.LocalDate;
  * @version April 17th, 2025
  */
 public class Reminder {
+	/**
+	 * How a reminder reaches the patient.
+	 */
+	public enum Channel {
+		EMAIL, TEXT, CALL;
+
+		/**
+		 * Gets the channel for a remind style, ignoring case. Anything other than
+		 * email or text is a phone call.
+		 *
+		 * @param remindStyle	"email", "text" or "call"
+		 * @return the channel
+		 */
+		public static Channel of(String remindStyle) {
+			String style = remindStyle == null ? "" : remindStyle.trim().toLowerCase(Locale.ROOT);
+			if(style.equals("email")) {
+				return EMAIL;
+			}
+			else if(style.equals("text")) {
+				return TEXT;
+			}
+			return CALL;
+		}
+	}
+
+	String patientId;
 	int vaccineID;
+	int doseNumber;
 	LocalDate dueDate;
 	LocalDate date;
 	boolean vaccinated;
 	boolean reminded;
 	String remindStyle;
 	
+	/**
+	 * Creates an empty reminder, to be filled in field by field
+	 */
+	public Reminder() {
+	}
+
+	/**
+	 * Creates a reminder that a dose is due
+	 *
+	 * @param patientId		the patient to remind
+	 * @param vaccineID		the vaccine due
+	 * @param doseNumber	the dose of the course that is due, 1 for the first
+	 * @param dueDate		the day the dose is due
+	 * @param remindStyle	"email", "text" or "call"
+	 */
+	public Reminder(String patientId, int vaccineID, int doseNumber, LocalDate dueDate, String remindStyle) {
+		this.patientId = patientId;
+		this.vaccineID = vaccineID;
+		this.doseNumber = doseNumber;
+		this.dueDate = dueDate;
+		this.date = LocalDate.now();
+		this.remindStyle = remindStyle;
+	}
+
+	public String getPatientId() {
+		return patientId;
+	}
+
+	public int getVaccineID() {
+		return vaccineID;
+	}
+
+	public int getDoseNumber() {
+		return doseNumber;
+	}
+
+	public LocalDate getDueDate() {
+		return dueDate;
+	}
+
+	public boolean isRemindedAlready() {
+		return reminded;
+	}
+
+	/**
+	 * Marks the reminder as sent
+	 */
+	public void markReminded() {
+		reminded = true;
+	}
+
+	/**
+	 * Gets the channel the reminder is sent by
+	 *
+	 * @return the channel for the remind style
+	 */
+	public Channel getChannel() {
+		return Channel.of(remindStyle);
+	}
+
+	/**
+	 * Gets a key naming what this reminder is about: the patient, vaccine, dose and due date.
+	 * Two reminders with the same key are the same reminder.
+	 *
+	 * @return the key
+	 */
+	public String getKey() {
+		return patientId + "," + vaccineID + "," + doseNumber + "," + dueDate;
+	}
+
 	/**
 	 * Checks whether a reminder should be sent to the patient.
 	 * A reminder is sent if:
@@ -29,22 +129,21 @@ public class Reminder {
 	 * - The patient has not yet been vaccinated.
 	 * - No reminder has been sent yet.
 	 * 
-	 * The reminder is sent according to the remindStyle (email, text, or phone call).
-	 * After sending, the reminded flag is set to true.
+	 * The reminder is sent through the sender on the channel of the remindStyle (email,
+	 * text, or phone call). After sending, the reminded flag is set to true.
+	 *
+	 * @param sender	where the reminder is sent
+	 * @throws IOException if the reminder could not be sent; it is left unreminded
 	 */
-	public void isReminded() {
+	public void isReminded(ReminderSender sender) throws IOException {
 		if(date.isAfter(dueDate) && !vaccinated && !reminded) {
-			remindStyle.toLowerCase();
-			if(remindStyle.equals("email")) {
-				System.out.println("Email sent");
-			}
-			else if(remindStyle.equals("text")) {
-				System.out.println("Text sent");
-			}
-			else {
-				System.out.println("Called");
-			}
+			sender.send(getChannel(), List.of(this));
 			reminded = true;
 		}
 	}
+
+	@Override
+	public String toString() {
+		return getChannel() + " " + getKey();
+	}
 }
@@ -0,0 +1,347 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ReminderDelivery.java
+ * A ReminderSender that delivers each reminder of a batch through a ReminderGateway,
+ * many at once. Gateway calls block for as long as the gateway takes to answer, so each
+ * delivery gets its own virtual thread on Java 21 and later. Older runtimes have no virtual
+ * threads, so there deliveries share a fixed pool of ordinary threads instead.
+ *
+ * Gateways limit how fast they accept messages, so every channel has a token bucket: a
+ * delivery takes a token and waits when none is left, and tokens refill at the channel's
+ * rate up to its burst size. A delivery the gateway rejects is tried again after a delay
+ * that doubles each time, up to a set number of attempts. Counters of deliveries, failures,
+ * retries and throughput can be read at any time.
+ *
+ * @author Milo Keys
+ * @version October 18, 2026
+ */
+public class ReminderDelivery implements ReminderSender, Closeable {
+    private static final int DEFAULT_ATTEMPTS = 3;
+    private static final long DEFAULT_BACKOFF_MS = 200;
+    private static final long MAX_BACKOFF_MS = 30_000;
+    // threads used where virtual threads are not available
+    private static final int FALLBACK_THREADS = 64;
+
+    private final ReminderGateway gateway;
+    private final ExecutorService executor;
+    private final Map<Reminder.Channel, TokenBucket> limits = new EnumMap<>(Reminder.Channel.class);
+    private volatile int maxAttempts = DEFAULT_ATTEMPTS;
+    private volatile long initialBackoffMs = DEFAULT_BACKOFF_MS;
+
+    private final long createdNanos = System.nanoTime();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong throttledNanos = new AtomicLong();
+
+    /**
+     * Creates a delivery executor with no rate limits.
+     *
+     * @param gateway where reminders are delivered
+     */
+    public ReminderDelivery(ReminderGateway gateway) {
+        this.gateway = gateway;
+        this.executor = newDeliveryExecutor();
+    }
+
+    /**
+     * Limits how fast a channel's reminders are delivered.
+     *
+     * @param channel the channel
+     * @param perSecond the deliveries allowed per second on average
+     * @param burst the most deliveries allowed at once after a quiet spell
+     */
+    public void setRateLimit(Reminder.Channel channel, double perSecond, int burst) {
+        if (perSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate must be positive and burst at least 1");
+        }
+        synchronized (limits) {
+            limits.put(channel, new TokenBucket(perSecond, burst));
+        }
+    }
+
+    /**
+     * Sets how often a rejected delivery is tried and how long to wait before the first retry.
+     *
+     * @param maxAttempts the attempts per reminder, including the first
+     * @param initialBackoffMs the wait before the first retry, doubled for each one after
+     */
+    public void setRetries(int maxAttempts, long initialBackoffMs) {
+        if (maxAttempts < 1 || initialBackoffMs < 0) {
+            throw new IllegalArgumentException("Need at least one attempt and a backoff of 0 or more");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoffMs;
+    }
+
+    /**
+     * Delivers every reminder of the batch at once and waits for all of them.
+     *
+     * @throws PartialSendException if some reminders could not be delivered in the attempts
+     *         allowed; it lists the reminders that were
+     */
+    @Override
+    public void send(Reminder.Channel channel, List<Reminder> batch) throws IOException {
+        TokenBucket limit;
+        synchronized (limits) {
+            limit = limits.get(channel);
+        }
+        List<Future<Boolean>> results = new ArrayList<>(batch.size());
+        for (Reminder reminder : batch) {
+            results.add(executor.submit(() -> deliver(reminder, limit)));
+        }
+        List<Reminder> sent = new ArrayList<>(batch.size());
+        IOException lastFailure = null;
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                if (results.get(i).get()) {
+                    sent.add(batch.get(i));
+                }
+            } catch (ExecutionException e) {
+                lastFailure = new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PartialSendException("Interrupted waiting for deliveries", sent);
+            }
+        }
+        if (sent.size() < batch.size()) {
+            throw new PartialSendException((batch.size() - sent.size()) + " of " + batch.size() + " "
+                    + channel + " reminders were not delivered"
+                    + (lastFailure == null ? "" : ": " + lastFailure.getMessage()), sent);
+        }
+    }
+
+    /**
+     * Delivers one reminder, waiting for a token first and retrying with backoff.
+     *
+     * @return true if the gateway accepted it
+     */
+    private boolean deliver(Reminder reminder, TokenBucket limit) throws InterruptedException {
+        long backoff = initialBackoffMs;
+        for (int attempt = 1; ; attempt++) {
+            if (limit != null) {
+                throttledNanos.addAndGet(limit.acquire());
+            }
+            try {
+                gateway.deliver(reminder);
+                delivered.incrementAndGet();
+                return true;
+            } catch (IOException e) {
+                if (attempt >= maxAttempts) {
+                    failed.incrementAndGet();
+                    return false;
+                }
+            }
+            retries.incrementAndGet();
+            Thread.sleep(backoff);
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+        }
+    }
+
+    /** @return the number of reminders the gateway accepted */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /** @return the number of reminders given up on after every attempt failed */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /** @return the number of deliveries tried again after a failure */
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /** @return the total time deliveries have waited on rate limits, in milliseconds */
+    public long getThrottledMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(throttledNanos.get());
+    }
+
+    /** @return reminders delivered per second since this was created */
+    public double getThroughput() {
+        double seconds = (System.nanoTime() - createdNanos) / 1e9;
+        return seconds <= 0 ? 0 : delivered.get() / seconds;
+    }
+
+    /**
+     * Waits for deliveries already started and stops the delivery threads.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Makes an executor running each task on a new virtual thread where the runtime has them,
+     * looked up by reflection so the class still builds and runs on Java 17.
+     */
+    private static ExecutorService newDeliveryExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(FALLBACK_THREADS, r -> {
+                Thread t = new Thread(r, "reminder-delivery");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Hands out tokens at a steady rate, holding up to a burst's worth.
+     */
+    private static class TokenBucket {
+        private final double perNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        TokenBucket(double perSecond, int burst) {
+            this.perNano = perSecond / 1e9;
+            this.capacity = burst;
+            this.tokens = burst;
+        }
+
+        /**
+         * Takes a token, waiting until one is free. Waiting callers reserve tokens in
+         * the order they arrive, so the bucket can go negative; each sleeps until its
+         * own token is due.
+         *
+         * @return the nanoseconds waited
+         */
+        long acquire() throws InterruptedException {
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                tokens = Math.min(capacity, tokens + (now - refilledAt) * perNano);
+                refilledAt = now;
+                tokens -= 1;
+                wait = tokens >= 0 ? 0 : (long) (-tokens / perNano);
+            }
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            return wait;
+        }
+    }
+
+    /**
+     * Delivers a few thousand reminders through a slow stub gateway that rejects a fixed set
+     * of them at first, checks that every one is delivered after retries, and prints the counters.
+     *
+     * @param args optional reminder count
+     * @throws Exception if delivery is interrupted
+     */
+    public static void main(String[] args) throws Exception {
+        checkRetries();
+        checkRateLimit();
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        // One reminder in 20 is rejected twice, so every one gets through on its third attempt
+        StubReminderGateway gateway = new StubReminderGateway(50, 20, 2);
+        List<Reminder> batch = new ArrayList<>(n);
+        int rejectedAtFirst = 0;
+        for (int i = 0; i < n; i++) {
+            Reminder reminder = new Reminder("P" + i, 1, 1, java.time.LocalDate.now(), "text");
+            batch.add(reminder);
+            if (gateway.isRejectedAtFirst(reminder)) {
+                rejectedAtFirst++;
+            }
+        }
+        try (ReminderDelivery delivery = new ReminderDelivery(gateway)) {
+            delivery.setRetries(3, 20);
+            delivery.setRateLimit(Reminder.Channel.TEXT, 20_000, 500);
+            long start = System.nanoTime();
+            delivery.send(Reminder.Channel.TEXT, batch); // a PartialSendException fails the run
+            Checks.checkEquals((long) n, delivery.getDeliveredCount(), "reminders delivered");
+            Checks.checkEquals(0L, delivery.getFailedCount(), "reminders given up on");
+            Checks.checkEquals(2L * rejectedAtFirst, delivery.getRetryCount(), "retries");
+            Checks.checkEquals((long) n, gateway.getAcceptedCount(), "deliveries the gateway accepted");
+            Checks.checkEquals(2L * rejectedAtFirst, gateway.getRejectedCount(), "deliveries the gateway rejected");
+            long ms = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%,d reminders in %d ms (one at a time: %,d ms)%n", n, ms, n * 50L);
+            System.out.println("virtual threads: " + !delivery.executor.getClass().getName().contains("ThreadPool"));
+            System.out.printf("delivered %,d, failed %,d, retries %,d, throttled %,d ms, %.0f/s%n",
+                    delivery.getDeliveredCount(), delivery.getFailedCount(), delivery.getRetryCount(),
+                    delivery.getThrottledMillis(), delivery.getThroughput());
+        }
+    }
+
+    /**
+     * Checks that a rejected reminder is retried up to the attempts allowed, and that a
+     * batch with one that never gets through reports exactly the others as sent, in order.
+     *
+     * @throws Exception if delivery is interrupted
+     */
+    private static void checkRetries() throws Exception {
+        Map<String, AtomicLong> attempts = new java.util.concurrent.ConcurrentHashMap<>();
+        ReminderGateway gateway = reminder -> {
+            long attempt = attempts.computeIfAbsent(reminder.getPatientId(), id -> new AtomicLong()).incrementAndGet();
+            if (reminder.getPatientId().equals("P3") || (reminder.getPatientId().equals("P5") && attempt == 1)) {
+                throw new IOException("rejected");
+            }
+        };
+        List<Reminder> batch = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            batch.add(new Reminder("P" + i, 1, 1, java.time.LocalDate.now(), "email"));
+        }
+        List<Reminder> sent = null;
+        try (ReminderDelivery delivery = new ReminderDelivery(gateway)) {
+            delivery.setRetries(3, 1);
+            try {
+                delivery.send(Reminder.Channel.EMAIL, batch);
+            } catch (PartialSendException e) {
+                sent = e.getSent();
+            }
+            Checks.checkEquals(9L, delivery.getDeliveredCount(), "reminders delivered");
+            Checks.checkEquals(1L, delivery.getFailedCount(), "reminders given up on");
+            Checks.checkEquals(3L, delivery.getRetryCount(), "retries, two for P3 and one for P5");
+        }
+        List<Reminder> expected = new ArrayList<>(batch);
+        expected.remove(3);
+        Checks.checkEquals(expected, sent, "reminders reported sent");
+        Checks.checkEquals(3L, attempts.get("P3").get(), "attempts at a reminder that is always rejected");
+        Checks.checkEquals(2L, attempts.get("P5").get(), "attempts at a reminder rejected once");
+        Checks.checkEquals(1L, attempts.get("P0").get(), "attempts at a reminder accepted first time");
+    }
+
+    /**
+     * Checks that a rate limit holds a batch back once its burst is used up.
+     *
+     * @throws Exception if delivery is interrupted
+     */
+    private static void checkRateLimit() throws Exception {
+        List<Reminder> batch = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            batch.add(new Reminder("P" + i, 1, 1, java.time.LocalDate.now(), "call"));
+        }
+        try (ReminderDelivery delivery = new ReminderDelivery(reminder -> { })) {
+            delivery.setRateLimit(Reminder.Channel.CALL, 100, 5);
+            long start = System.nanoTime();
+            delivery.send(Reminder.Channel.CALL, batch);
+            long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            // 20 past the burst at 100 a second take at least 200 ms
+            Checks.check(ms >= 190, "rate limit held the batch back, took " + ms + " ms");
+            Checks.check(delivery.getThrottledMillis() > 0, "time waiting on the rate limit counted");
+            Checks.checkEquals(25L, delivery.getDeliveredCount(), "reminders delivered under the rate limit");
+        }
+        System.out.println("ReminderDelivery checks passed");
+    }
+}
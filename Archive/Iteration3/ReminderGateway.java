@@ -0,0 +1,19 @@
+import java.io.IOException;
+
+/**
+ * ReminderGateway.java
+ * Delivers a single reminder, e.g. one SMS through a gateway's HTTP API. A call may block for
+ * as long as the gateway takes; ReminderDelivery runs many of them at once.
+ *
+ * @author Milo Keys
+ * @version October 18, 2026
+ */
+public interface ReminderGateway {
+    /**
+     * Delivers a reminder, blocking until the gateway has accepted it.
+     *
+     * @param reminder the reminder
+     * @throws IOException if the gateway did not accept it; delivery may be tried again
+     */
+    void deliver(Reminder reminder) throws IOException;
+}
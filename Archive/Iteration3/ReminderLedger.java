@@ -0,0 +1,387 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * ReminderLedger.java
+ * Records which reminders have been sent, so they are never sent twice, across restarts
+ * and across scheduler instances sharing the file.
+ *
+ * A reminder is identified by its patient, vaccine, dose number and due day. The vaccine,
+ * dose and day are packed into one long, and each patient's sent reminders are kept as a
+ * small long array under their patient ID, so the ledger holds about 8 bytes per reminder
+ * and answers "was this sent?" with one map lookup and a scan of that patient's few entries.
+ *
+ * On disk the ledger is an append-only file of [length][CRC32][payload] records, one per
+ * batch marked sent and synced before the batch counts as sent, like ClinicStore's log. A torn
+ * record left by a crash is dropped when the ledger is opened. refresh() reads records another
+ * instance has appended since, and compact() drops reminders for due days long past.
+ *
+ * Every append holds a FileLock on the file, with the records other instances appended read
+ * first, so two instances never write over each other's records. To send each reminder once
+ * across instances, a sender claims a batch before sending it: claim() records the reminders
+ * no instance has recorded yet and returns them, all under the one lock, so only one instance
+ * gets each reminder. Reminders that then fail to send are released again. A crash between
+ * claiming and sending loses those reminders rather than sending them twice.
+ *
+ * @author Milo Keys
+ * @version October 18, 2026
+ */
+public class ReminderLedger implements Closeable {
+    private static final int MAX_VACCINE_ID = (1 << 20) - 1;
+    private static final int MAX_DOSE = (1 << 12) - 1;
+    private static final long[] NONE = new long[0];
+    // FileLock is held per process, so instances in one process also share a monitor per file
+    private static final Map<Path, Object> FILE_MONITORS = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final Object fileMonitor;
+    private FileChannel channel;
+    private long readPosition;
+
+    private final Map<String, long[]> sentByPatient = new HashMap<>();
+    private int size;
+
+    /**
+     * Opens a ledger, creating the file if it does not exist, and reads every sent reminder.
+     *
+     * @param file the ledger file
+     * @throws IOException if the file cannot be read or opened
+     */
+    public ReminderLedger(Path file) throws IOException {
+        this.file = file;
+        this.fileMonitor = FILE_MONITORS.computeIfAbsent(file.toAbsolutePath().normalize(), f -> new Object());
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        synchronized (fileMonitor) {
+            FileLock lock = channel.lock();
+            try {
+                readFrom(0);
+                channel.truncate(readPosition); // drop a torn record left by a crash
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Checks whether a reminder has been sent.
+     *
+     * @param reminder the reminder
+     * @return true if a reminder for the same patient, vaccine, dose and due date was sent
+     */
+    public boolean contains(Reminder reminder) {
+        return contains(reminder.getPatientId(), reminder.getVaccineID(), reminder.getDoseNumber(),
+                reminder.getDueDate().toEpochDay());
+    }
+
+    /**
+     * Checks whether a reminder has been sent.
+     *
+     * @param patientId the patient
+     * @param vaccineId the vaccine's catalogue ID
+     * @param doseNumber the dose the reminder was for
+     * @param dueDay the epoch day the dose was due
+     * @return true if it was sent
+     */
+    public synchronized boolean contains(String patientId, int vaccineId, int doseNumber, long dueDay) {
+        long[] sent = sentByPatient.get(patientId);
+        if (sent == null || vaccineId < 0 || vaccineId > MAX_VACCINE_ID || doseNumber < 0 || doseNumber > MAX_DOSE) {
+            return false;
+        }
+        long key = pack(vaccineId, doseNumber, dueDay);
+        for (long entry : sent) {
+            if (entry == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records a batch of reminders as sent. The batch is written and synced to the file
+     * before it is added, so a reminder is never reported sent without being on disk.
+     *
+     * @param batch the reminders sent
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void markSent(List<Reminder> batch) throws IOException {
+        if (!batch.isEmpty()) {
+            synchronized (fileMonitor) {
+                FileLock lock = channel.lock();
+                try {
+                    append(batch.size(), batch);
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Records as sent the reminders of a batch that no instance sharing the file has recorded,
+     * before they are sent, so no other instance sends them too. Reading the other instances'
+     * records, checking and recording happen under one lock on the file.
+     *
+     * @param batch the reminders about to be sent
+     * @return the reminders claimed, to be sent by the caller
+     * @throws IOException if the file cannot be read or written; nothing is claimed
+     */
+    public synchronized List<Reminder> claim(List<Reminder> batch) throws IOException {
+        synchronized (fileMonitor) {
+            FileLock lock = channel.lock();
+            try {
+                readFrom(readPosition);
+                List<Reminder> claimed = new ArrayList<>(batch.size());
+                for (Reminder reminder : batch) {
+                    if (!contains(reminder)) {
+                        claimed.add(reminder);
+                    }
+                }
+                if (!claimed.isEmpty()) {
+                    append(claimed.size(), claimed);
+                }
+                return claimed;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Releases claimed reminders that could not be sent, so they can be claimed again.
+     *
+     * @param batch the reminders not sent
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void release(List<Reminder> batch) throws IOException {
+        if (!batch.isEmpty()) {
+            synchronized (fileMonitor) {
+                FileLock lock = channel.lock();
+                try {
+                    append(-batch.size(), batch); // a negative count removes the entries
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads reminders other instances have recorded in the file since it was last read.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized void refresh() throws IOException {
+        if (channel.size() > readPosition) {
+            readFrom(readPosition);
+        }
+    }
+
+    /** @return the number of reminders recorded as sent */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Rewrites the file without reminders due before a day, which can no longer be sent.
+     * The new file replaces the old one atomically. Only call this while no other instance
+     * has the ledger open, since their later appends would go to the replaced file.
+     *
+     * @param keepFromDay the earliest due epoch day to keep
+     * @return the number of reminders dropped
+     * @throws IOException if the file cannot be rewritten
+     */
+    public synchronized int compact(long keepFromDay) throws IOException {
+        synchronized (fileMonitor) {
+            FileLock lock = channel.lock();
+            try {
+                readFrom(readPosition);
+                return rewrite(keepFromDay);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private int rewrite(long keepFromDay) throws IOException {
+        int before = size;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int kept = 0;
+        for (Map.Entry<String, long[]> patient : sentByPatient.entrySet()) {
+            long[] sent = patient.getValue();
+            int n = 0;
+            for (long entry : sent) {
+                if ((int) entry >= keepFromDay) {
+                    sent[n++] = entry;
+                }
+            }
+            patient.setValue(Arrays.copyOf(sent, n));
+            for (int i = 0; i < n; i++) {
+                out.writeUTF(patient.getKey());
+                out.writeLong(sent[i]);
+            }
+            kept += n;
+        }
+        sentByPatient.values().removeIf(sent -> sent.length == 0);
+        size = kept;
+
+        byte[] body = bytes.toByteArray();
+        byte[] payload = ByteBuffer.allocate(4 + body.length).putInt(kept).put(body).array();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel written = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+            record.putInt(payload.length).putInt(checksum(payload)).put(payload).flip();
+            while (record.hasRemaining()) {
+                written.write(record);
+            }
+            written.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        FileChannel old = channel;
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        old.close(); // releases the lock on the replaced file
+        readPosition = channel.size();
+        return before - kept;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads whole records from a position to the end of the file, stopping at a torn one.
+     */
+    private void readFrom(long position) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel.position(position))));
+        while (true) {
+            byte[] payload;
+            try {
+                int length = in.readInt();
+                int crc = in.readInt();
+                if (length < 4 || length > channel.size() - position - 8) {
+                    break;
+                }
+                payload = new byte[length];
+                in.readFully(payload);
+                if (checksum(payload) != crc) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            apply(payload);
+            position += 8 + payload.length;
+        }
+        readPosition = position;
+    }
+
+    /**
+     * Writes a record at the end of the file and syncs it, then applies it. The caller holds
+     * the file lock and has read the records before the end, so the end is where ours goes.
+     *
+     * @param count the number of reminders, negative to remove them
+     */
+    private void append(int count, List<Reminder> batch) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(batch.size() * 24);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(count);
+        for (Reminder reminder : batch) {
+            out.writeUTF(reminder.getPatientId());
+            out.writeLong(pack(reminder.getVaccineID(), reminder.getDoseNumber(),
+                    reminder.getDueDate().toEpochDay()));
+        }
+        byte[] payload = bytes.toByteArray();
+        readFrom(readPosition);
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+        record.putInt(payload.length).putInt(checksum(payload)).put(payload).flip();
+        long end = readPosition;
+        while (record.hasRemaining()) {
+            end += channel.write(record, end);
+        }
+        channel.force(false);
+        readPosition = end;
+        apply(payload);
+    }
+
+    private void apply(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int count = in.readInt();
+        for (int i = Math.abs(count); i > 0; i--) {
+            if (count > 0) {
+                add(in.readUTF(), in.readLong());
+            } else {
+                remove(in.readUTF(), in.readLong());
+            }
+        }
+    }
+
+    private void add(String patientId, long key) {
+        long[] sent = sentByPatient.getOrDefault(patientId, NONE);
+        for (long entry : sent) {
+            if (entry == key) {
+                return;
+            }
+        }
+        sent = Arrays.copyOf(sent, sent.length + 1);
+        sent[sent.length - 1] = key;
+        sentByPatient.put(patientId, sent);
+        size++;
+    }
+
+    private void remove(String patientId, long key) {
+        long[] sent = sentByPatient.getOrDefault(patientId, NONE);
+        for (int i = 0; i < sent.length; i++) {
+            if (sent[i] == key) {
+                sent[i] = sent[sent.length - 1];
+                if (sent.length == 1) {
+                    sentByPatient.remove(patientId);
+                } else {
+                    sentByPatient.put(patientId, Arrays.copyOf(sent, sent.length - 1));
+                }
+                size--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Packs vaccine ID (20 bits), dose number (12 bits) and due day (low 32 bits) into a long.
+     */
+    private static long pack(int vaccineId, int doseNumber, long dueDay) {
+        if (vaccineId < 0 || vaccineId > MAX_VACCINE_ID || doseNumber < 0 || doseNumber > MAX_DOSE) {
+            throw new IllegalArgumentException("Vaccine " + vaccineId + " dose " + doseNumber + " out of range");
+        }
+        return ((long) vaccineId << 44) | ((long) doseNumber << 32) | (dueDay & 0xFFFFFFFFL);
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
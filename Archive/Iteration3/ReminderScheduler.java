@@ -0,0 +1,412 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * ReminderScheduler.java
+ * Sends reminders to patients whose next vaccine dose is due, on a timer.
+ *
+ * Each tick reads the patients due from the model's DueQueue, which only touches the top of
+ * the queue. Only this part runs on the GUI thread, like every other use of the model; the
+ * ledger is refreshed before it, and the reminders found are checked against the ledger and
+ * grouped by channel after it, on a background thread. That thread also passes each channel's
+ * reminders to the ReminderSender in batches, so neither the ledger's file nor a slow gateway
+ * ever holds up the GUI. Before a batch is sent its reminders are claimed in a ReminderLedger,
+ * which is synced to disk, so after a restart or from another scheduler sharing the ledger
+ * they are not sent again; the reminders of a batch that fails are released and tried again
+ * next tick.
+ *
+ * @author Milo Keys
+ * @version October 18, 2026
+ */
+public class ReminderScheduler implements Closeable {
+    private static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final ClinicModel model;
+    private final ReminderSender sender;
+    private final int batchSize;
+    private final ReminderLedger ledger;
+    private final ExecutorService dispatcher;
+
+    // Keys of reminders handed to the dispatcher but not yet sent
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    private Function<ImmunizationPatient, String> remindStyle = patient -> "text";
+    private Timer timer;
+
+    /**
+     * Creates a scheduler, loading the reminders already sent from the ledger.
+     *
+     * @param model the clinic whose patients are reminded
+     * @param sender where reminders are sent
+     * @param ledgerFile the ReminderLedger file recording which reminders have been sent
+     * @throws IOException if the ledger cannot be read or opened
+     */
+    public ReminderScheduler(ClinicModel model, ReminderSender sender, Path ledgerFile) throws IOException {
+        this(model, sender, ledgerFile, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a scheduler, loading the reminders already sent from the ledger.
+     *
+     * @param model the clinic whose patients are reminded
+     * @param sender where reminders are sent
+     * @param ledgerFile the file recording which reminders have been sent, created if missing
+     * @param batchSize the most reminders passed to the sender at once
+     * @throws IOException if the sent log cannot be read or opened
+     */
+    public ReminderScheduler(ClinicModel model, ReminderSender sender, Path ledgerFile, int batchSize)
+            throws IOException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+        }
+        this.model = model;
+        this.sender = sender;
+        this.batchSize = batchSize;
+        this.ledger = new ReminderLedger(ledgerFile);
+        this.dispatcher = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "reminder-dispatch");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Sets how each patient wants to be reminded. The default is a text message.
+     *
+     * @param remindStyle gives "email", "text" or "call" for a patient
+     */
+    public void setRemindStyle(Function<ImmunizationPatient, String> remindStyle) {
+        this.remindStyle = remindStyle;
+    }
+
+    /**
+     * Starts sending reminders every period, on a Swing timer.
+     *
+     * @param periodMs the time between ticks in milliseconds
+     */
+    public void start(int periodMs) {
+        start(0, periodMs);
+    }
+
+    /**
+     * Starts sending reminders every period after a first delay, on a Swing timer,
+     * e.g. to let the clinic finish starting up first.
+     *
+     * @param initialDelayMs the time before the first tick in milliseconds
+     * @param periodMs the time between ticks in milliseconds
+     */
+    public void start(int initialDelayMs, int periodMs) {
+        stop();
+        timer = new Timer(periodMs, e -> tick(EpochDays.today()));
+        timer.setInitialDelay(initialDelayMs);
+        timer.start();
+    }
+
+    /**
+     * Stops the timer. Reminders already handed to the dispatcher are still sent.
+     */
+    public void stop() {
+        if (timer != null) {
+            timer.stop();
+            timer = null;
+        }
+    }
+
+    /**
+     * Finds the reminders due on a day and sends them. The ledger is refreshed and the
+     * reminders sent on the background thread; the model is read on the Swing event thread.
+     * Can be called from any thread.
+     *
+     * @param epochDay the day, see EpochDays
+     * @return completes once the reminders found have been sent or have failed
+     */
+    public Future<?> tick(long epochDay) {
+        return CompletableFuture.runAsync(this::refreshLedger, dispatcher)
+                .thenApplyAsync(v -> findDue(epochDay), SwingUtilities::invokeLater)
+                .thenAcceptAsync(found -> dispatch(collect(found)), dispatcher)
+                .whenComplete((v, error) -> {
+                    if (error != null) {
+                        System.err.println("Could not send reminders: " + error.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * Picks up the reminders sent by other schedulers sharing the ledger.
+     */
+    private void refreshLedger() {
+        try {
+            ledger.refresh();
+        } catch (IOException e) {
+            System.err.println("Could not read the reminder ledger: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Makes a reminder for every patient due on or before a day. Each patient gets one
+     * reminder, for the vaccine they are due for first. Must be called on the thread that
+     * uses the model.
+     *
+     * @param epochDay the day, see EpochDays
+     * @return the reminders, earliest due first
+     */
+    List<Reminder> findDue(long epochDay) {
+        DueQueue queue = model.getDueQueue();
+        List<Reminder> found = new ArrayList<>();
+        for (ImmunizationPatient patient : queue.getDueBy(epochDay)) {
+            Vaccine vaccine = queue.getNextVaccine(patient);
+            found.add(new Reminder(patient.getPatientId(), vaccine.getID(), patient.getDoseNum(vaccine) + 1,
+                    LocalDate.ofEpochDay(queue.getDueDay(patient)), remindStyle.apply(patient)));
+        }
+        return found;
+    }
+
+    /**
+     * Groups reminders by channel, leaving out those already sent or on their way.
+     *
+     * @param found the reminders due
+     * @return the reminders to send by channel
+     */
+    Map<Reminder.Channel, List<Reminder>> collect(List<Reminder> found) {
+        Map<Reminder.Channel, List<Reminder>> due = new EnumMap<>(Reminder.Channel.class);
+        for (Reminder reminder : found) {
+            if (!ledger.contains(reminder) && pending.add(reminder.getKey())) {
+                due.computeIfAbsent(reminder.getChannel(), c -> new ArrayList<>()).add(reminder);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Sends the reminders, a batch at a time. Each batch is claimed in the ledger first, so
+     * reminders another scheduler has claimed since they were collected are left out, and
+     * the claimed reminders that could not be sent are released.
+     */
+    void dispatch(Map<Reminder.Channel, List<Reminder>> due) {
+        for (Map.Entry<Reminder.Channel, List<Reminder>> channel : due.entrySet()) {
+            List<Reminder> reminders = channel.getValue();
+            for (int from = 0; from < reminders.size(); from += batchSize) {
+                List<Reminder> batch = reminders.subList(from, Math.min(from + batchSize, reminders.size()));
+                List<Reminder> claimed = List.of();
+                try {
+                    claimed = ledger.claim(batch);
+                    if (!claimed.isEmpty()) {
+                        sender.send(channel.getKey(), claimed);
+                        recordSent(claimed);
+                    }
+                } catch (ReminderSender.PartialSendException e) {
+                    failedBatches.incrementAndGet();
+                    System.err.println("Could not send all " + channel.getKey() + " reminders: " + e.getMessage());
+                    recordSent(e.getSent());
+                    List<Reminder> unsent = new ArrayList<>(claimed);
+                    unsent.removeAll(e.getSent());
+                    releaseQuietly(unsent);
+                } catch (IOException | RuntimeException e) {
+                    failedBatches.incrementAndGet();
+                    System.err.println("Could not send " + batch.size() + " " + channel.getKey()
+                            + " reminders: " + e.getMessage());
+                    releaseQuietly(claimed);
+                }
+                for (Reminder reminder : batch) {
+                    pending.remove(reminder.getKey());
+                }
+            }
+        }
+    }
+
+    private void releaseQuietly(List<Reminder> unsent) {
+        try {
+            ledger.release(unsent);
+        } catch (IOException e) {
+            System.err.println("Could not release " + unsent.size() + " unsent reminders: " + e.getMessage());
+        }
+    }
+
+    private void recordSent(List<Reminder> batch) {
+        for (Reminder reminder : batch) {
+            reminder.markReminded();
+        }
+        sentCount.addAndGet(batch.size());
+    }
+
+    /**
+     * Checks whether a reminder has been sent.
+     *
+     * @param reminder the reminder
+     * @return true if a reminder with the same key has been sent
+     */
+    public boolean isSent(Reminder reminder) {
+        return ledger.contains(reminder);
+    }
+
+    /** @return the number of reminders sent since the scheduler was created */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /** @return the number of batches the sender failed to send */
+    public long getFailedBatchCount() {
+        return failedBatches.get();
+    }
+
+    /**
+     * Stops the timer, waits for reminders on their way to be sent, and closes the ledger.
+     *
+     * @throws IOException if the ledger cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        stop();
+        dispatcher.shutdown();
+        try {
+            dispatcher.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ledger.close();
+    }
+
+    /**
+     * Sends the reminders due today for a generated register through a FileReminderSender,
+     * then again after a restart to show nothing is sent twice.
+     *
+     * @param args optional patient count
+     * @throws Exception if the files cannot be written
+     */
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        Path directory = Files.createTempDirectory("reminders");
+        ClinicModel model = new ClinicModel("Demo Clinic", "Accra");
+        model.getVaccineInventory().add(new Inventory.Item(1, "Polio", "Generic", 0.5, 3, 28,
+                new ArrayList<>(), 100, 0, 0));
+        Vaccine polio = model.getVaccineInventory().get(1).toVaccine();
+        long today = EpochDays.today();
+        java.util.Random random = new java.util.Random(5);
+        for (int i = 0; i < n; i++) {
+            ImmunizationPatient patient = new ImmunizationPatient("P" + i, EpochDays.toDate(today - 400),
+                    "Child " + i, "", "", "", "", "Female", 0, null, null, 9);
+            patient.addVaccineDose(polio, today - random.nextInt(56)); // about half are due again
+            model.addPatient(patient);
+        }
+        checkPartialSend(polio, today);
+        checkSharedLedger(today);
+        long due = 0;
+        for (int i = 0; i < n; i++) {
+            if (model.getPatientAt(i).getNextDueDay(polio) <= today) {
+                due++;
+            }
+        }
+        String[] styles = {"text", "email", "call"};
+        for (int run = 1; run <= 2; run++) {
+            try (ReminderScheduler scheduler = new ReminderScheduler(model, new FileReminderSender(directory),
+                    directory.resolve("sent.ledger"))) {
+                scheduler.setRemindStyle(p -> styles[Math.floorMod(p.getPatientId().hashCode(), 3)]);
+                long start = System.nanoTime();
+                scheduler.tick(today).get();
+                System.out.printf("run %d: sent %,d reminders in %d ms%n", run,
+                        scheduler.getSentCount(), (System.nanoTime() - start) / 1_000_000);
+                // The ledger keeps the second run from sending anything again
+                Checks.checkEquals(run == 1 ? due : 0L, scheduler.getSentCount(), "reminders sent in run " + run);
+                Checks.checkEquals(0L, scheduler.getFailedBatchCount(), "failed batches in run " + run);
+            }
+        }
+        java.util.Set<String> keys = new java.util.HashSet<>();
+        for (Reminder.Channel channel : Reminder.Channel.values()) {
+            Path file = new FileReminderSender(directory).getFile(channel);
+            List<String> lines = Files.exists(file) ? Files.readAllLines(file) : List.of();
+            keys.addAll(lines);
+            System.out.println(channel + ": " + lines.size() + " lines");
+        }
+        Checks.checkEquals((int) due, keys.size(), "different reminders written");
+        System.out.println("ReminderScheduler checks passed");
+    }
+
+    /**
+     * Checks that two ledgers open on one file never both claim a reminder, that released
+     * reminders can be claimed again, and that each sees the other's records after a restart.
+     *
+     * @param today the due day of the reminders
+     * @throws Exception if the check cannot run
+     */
+    private static void checkSharedLedger(long today) throws Exception {
+        Path file = Files.createTempDirectory("reminders").resolve("shared.ledger");
+        List<Reminder> batch = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            batch.add(new Reminder("S" + i, 1, 1, LocalDate.ofEpochDay(today), "text"));
+        }
+        try (ReminderLedger first = new ReminderLedger(file); ReminderLedger second = new ReminderLedger(file)) {
+            Checks.checkEquals(3, first.claim(batch.subList(0, 3)).size(), "reminders claimed by the first ledger");
+            List<Reminder> claimed = second.claim(batch);
+            Checks.checkEquals(batch.subList(3, 6), claimed, "reminders left for the second ledger");
+            Checks.check(first.claim(batch).isEmpty(), "nothing left to claim");
+            second.release(claimed.subList(0, 1));
+            Checks.checkEquals(claimed.subList(0, 1), first.claim(batch), "released reminder claimed again");
+        }
+        try (ReminderLedger reopened = new ReminderLedger(file)) {
+            Checks.checkEquals(6, reopened.size(), "reminders recorded after reopening");
+        }
+    }
+
+    /**
+     * Checks that when a batch is only partly sent, the sent part is recorded and the
+     * rest is sent on the next tick, with nothing sent twice.
+     *
+     * @param vaccine the vaccine patients are due for
+     * @param today the day to tick on
+     * @throws Exception if the check cannot run
+     */
+    private static void checkPartialSend(Vaccine vaccine, long today) throws Exception {
+        Path directory = Files.createTempDirectory("reminders");
+        ClinicModel model = new ClinicModel("Demo Clinic", "Accra");
+        model.getVaccineInventory().add(new Inventory.Item(vaccine.getID(), vaccine.getName(), "Generic", 0.5,
+                vaccine.getNumOfDosage(), vaccine.getInterval(), new ArrayList<>(), 100, 0, 0));
+        for (int i = 0; i < 10; i++) {
+            ImmunizationPatient patient = new ImmunizationPatient("Q" + i, EpochDays.toDate(today - 400),
+                    "Child " + i, "", "", "", "", "Female", 0, null, null, 9);
+            patient.addVaccineDose(vaccine, today - vaccine.getInterval());
+            model.addPatient(patient);
+        }
+        List<String> sent = new ArrayList<>();
+        int[] calls = new int[1];
+        ReminderSender sender = (channel, batch) -> {
+            if (calls[0]++ == 0) {
+                for (Reminder reminder : batch.subList(0, 2)) {
+                    sent.add(reminder.getKey());
+                }
+                throw new ReminderSender.PartialSendException("gateway went away", new ArrayList<>(batch.subList(0, 2)));
+            }
+            for (Reminder reminder : batch) {
+                sent.add(reminder.getKey());
+            }
+        };
+        try (ReminderScheduler scheduler = new ReminderScheduler(model, sender, directory.resolve("sent.ledger"), 4)) {
+            scheduler.tick(today).get();
+            Checks.checkEquals(8L, scheduler.getSentCount(), "reminders recorded after a partly sent batch");
+            Checks.checkEquals(1L, scheduler.getFailedBatchCount(), "failed batches");
+            scheduler.tick(today).get();
+            Checks.checkEquals(10L, scheduler.getSentCount(), "reminders recorded after the next tick");
+        }
+        Checks.checkEquals(10, sent.size(), "reminders handed to the sender");
+        Checks.checkEquals(10, new java.util.HashSet<>(sent).size(), "different reminders handed to the sender");
+    }
+}
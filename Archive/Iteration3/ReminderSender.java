@@ -0,0 +1,46 @@
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * ReminderSender.java
+ * Sends reminders out through one channel, a batch at a time, e.g. to an SMS or email gateway.
+ * ReminderScheduler calls it from its own thread, never from the GUI thread.
+ *
+ * @author Milo Keys
+ * @version October 18, 2026
+ */
+public interface ReminderSender {
+    /**
+     * Sends a batch of reminders. Either the whole batch is sent and the call returns normally,
+     * or it throws and none of the batch counts as sent; the scheduler tries again later.
+     * A sender that delivers reminders one at a time throws PartialSendException instead
+     * when only some of them went out.
+     *
+     * @param channel the channel every reminder in the batch goes out by
+     * @param batch the reminders
+     * @throws IOException if the batch, or part of it, could not be sent
+     */
+    void send(Reminder.Channel channel, List<Reminder> batch) throws IOException;
+
+    /**
+     * Thrown when part of a batch was sent and the rest was not.
+     */
+    class PartialSendException extends IOException {
+        private static final long serialVersionUID = 1L;
+        private final List<Reminder> sent;
+
+        /**
+         * @param message what went wrong
+         * @param sent the reminders that were sent
+         */
+        public PartialSendException(String message, List<Reminder> sent) {
+            super(message);
+            this.sent = sent;
+        }
+
+        /** @return the reminders that were sent */
+        public List<Reminder> getSent() {
+            return sent;
+        }
+    }
+}
@@ -67,6 +67,11 @@ public class Return {
     */
     private int safetyBoxesDisposedPit;
 
+    /** 
+    * Doses given by vaccine, dose and age band, when built by a ReturnAggregator. 
+    */
+    private ReturnAggregator.MonthCounts counts;
+
     /**
      * Constructs a new Return record with all required fields.
      *
@@ -277,36 +282,29 @@ public class Return {
         this.safetyBoxesDisposedPit = safetyBoxesDisposedPit;
     }
 
+    /** 
+    * @return doses given by vaccine, dose and age band, or null if the return was entered by hand 
+    */
+    public ReturnAggregator.MonthCounts getCounts() {
+        return counts;
+    }
+
+    /** 
+    * @param counts the doses given by vaccine, dose and age band 
+    */
+    public void setCounts(ReturnAggregator.MonthCounts counts) {
+        this.counts = counts;
+    }
+
     /**
-     * Returns a detailed report in Ghana Health Service IM MONTHLY RETURNS format.
+     * Returns a detailed report in Ghana Health Service IM MONTHLY RETURNS format,
+     * with a row for every vaccine and dose on the form.
      *
      * @return the formatted report string
      */
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("GHANA HEALTH SERVICE\n");
-        sb.append("IMMUNIZATION MONTHLY RETURNS\n\n");
-        sb.append("Immunization Centre/Clinic: ").append(immunizationCentre).append("\n");
-        sb.append("Metro: ").append(metro).append("\n");
-        sb.append("Region: ").append(region).append("\n");
-        sb.append("For the month of: ").append(month).append("\n\n");
-        sb.append("| Disease          | Vaccine | No. of doses | 0-11 Months | 12-23 Months | 24+ Months | Total Administered | 2 doses | 5 doses | 10 doses | 20 doses | Used | Wastage % |\n");
-        sb.append("|------------------|---------|--------------|-------------|--------------|------------|--------------------|---------|---------|----------|----------|------|-----------|\n");
-        sb.append(String.format("| %-16s | %-7s | %-12s | %-11s | %-12s | %-10s | %-18d | %-7s | %-7s | %-8s | %-8s | %-4d | %9.1f%% | ", "Summary", "--", "--", "--", "--", "--", totalDosesAdministered, "--", "--", "--", "--", totalDosesUsed, wastageRate));
-        sb.append("\n\nVitamin A supplementation\n");
-        sb.append("| Vitamin A Deficiency | 6-11 months | 12-59 months | Post-Partum |\n");
-        sb.append("|----------------------|-------------|--------------|-------------|\n");
-        sb.append(String.format("| Number               | %-11d | %-12s | %-11s | ", vitaminADeficiency, "--", "--"));
-        sb.append(String.format("\n| AEFI reported        | %-11d | %-12s | %-11s | ", vitaminAAEFIReported, "--", "--"));
-        sb.append("\n\nInjection safety and waste management\n");
-        sb.append("| Description                                   | Count |\n");
-        sb.append("|-----------------------------------------------|-------|\n");
-        sb.append(String.format("| Safety boxes used                             | %5d |\n", safetyBoxesUsed));
-        sb.append(String.format("| Safety boxes disposed (incinerator)           | %5d |\n", safetyBoxesDisposedIncinerator));
-        sb.append(String.format("| Safety boxes disposed (pit)                   | %5d |\n", safetyBoxesDisposedPit));
-        sb.append("\nEnd Report.");
-        return sb.toString();
+        return new ReturnRenderer().render(this);
     }
 
     /**
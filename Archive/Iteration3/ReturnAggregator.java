@@ -0,0 +1,313 @@
+import java.time.Month;
+import java.time.format.TextStyle;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ReturnAggregator.java
+ * Running counts of the doses given, for building monthly returns without going back
+ * over the visits.
+ *
+ * Each dose administered on a visit is counted under the month of the visit, the vaccine,
+ * the dose number and the child's age band on the day (0-11, 12-23 or 24+ months, the
+ * columns of the Ghana Health Service return). Counts are updated as visits are added and
+ * removed and as doses are given on them, so a month's Return is read off the counts in time
+ * proportional to the number of vaccines, however many visits there were. The age band a
+ * visit was counted under is kept, so removing the visit takes its doses out of the same band
+ * even if the patient's date of birth or age has been corrected since. A visit can also be
+ * forgotten with its doses left in the counts, e.g. when its patient is removed from the
+ * register: the doses were still given in those months.
+ *
+ * @author Abdirahman Mohamed
+ * @version October 18, 2026
+ */
+public class ReturnAggregator {
+    /** Age band of children 0 to 11 months old. */
+    public static final int BAND_0_11_MONTHS = 0;
+    /** Age band of children 12 to 23 months old. */
+    public static final int BAND_12_23_MONTHS = 1;
+    /** Age band of children 24 months and above. */
+    public static final int BAND_24_MONTHS_PLUS = 2;
+    static final int BANDS = 3;
+
+    // keyed by EpochDays.monthOf
+    private final Map<Integer, MonthCounts> months = new HashMap<>();
+    // the age band each counted visit went under; the values are cached Integers, so an entry is two references
+    private final Map<Visit, Integer> bands = new IdentityHashMap<>();
+
+    /**
+     * Counts the doses given on a visit.
+     *
+     * @param visit the visit
+     */
+    public void visitAdded(Visit visit) {
+        if (visit.getDosesAdministered().isEmpty()) {
+            return;
+        }
+        int band = ageBand(visit.getPatient(), EpochDays.of(visit.getVisitDate()));
+        bands.put(visit, band);
+        count(visit, band, 1);
+    }
+
+    /**
+     * Counts a dose given on a visit after the visit was counted.
+     *
+     * @param visit the visit
+     * @param vaccine the vaccine given
+     * @param doseNumber the dose number, 1 for the first dose
+     */
+    public void doseAdded(Visit visit, Vaccine vaccine, int doseNumber) {
+        long day = EpochDays.of(visit.getVisitDate());
+        Integer band = bands.get(visit);
+        if (band == null) {
+            band = ageBand(visit.getPatient(), day); // the visit had no doses when it was added
+            bands.put(visit, band);
+        }
+        months.computeIfAbsent(EpochDays.monthOf(day), k -> new MonthCounts())
+                .add(vaccine, Math.max(1, doseNumber), band, 1);
+    }
+
+    /**
+     * Stops following a visit but leaves its doses in the counts, so they can no longer be
+     * taken back out.
+     *
+     * @param visit the visit
+     * @return the age band its doses were counted under, or -1 if none were counted
+     */
+    public int forget(Visit visit) {
+        Integer band = bands.remove(visit);
+        return band == null ? -1 : band;
+    }
+
+    /**
+     * Counts the doses given on a visit without following the visit, so they are never
+     * taken back out, e.g. to keep the doses of a patient removed from the register.
+     *
+     * @param visit the visit
+     * @param band the age band to count them under, or -1 for the patient's band on the day
+     */
+    public void addHistory(Visit visit, int band) {
+        if (!visit.getDosesAdministered().isEmpty()) {
+            count(visit, band >= 0 ? band : ageBand(visit.getPatient(), EpochDays.of(visit.getVisitDate())), 1);
+        }
+    }
+
+    /**
+     * Adds another aggregator's counts to these.
+     *
+     * @param other the counts to add
+     */
+    public void addAll(ReturnAggregator other) {
+        for (Map.Entry<Integer, MonthCounts> month : other.months.entrySet()) {
+            months.computeIfAbsent(month.getKey(), k -> new MonthCounts()).addAll(month.getValue());
+        }
+    }
+
+    /**
+     * Takes the doses given on a visit back out of the counts, from the age band they were
+     * counted under.
+     *
+     * @param visit the visit
+     */
+    public void visitRemoved(Visit visit) {
+        Integer band = bands.remove(visit);
+        if (band != null) {
+            count(visit, band, -1);
+        }
+    }
+
+    /**
+     * Gets the counts of a month.
+     *
+     * @param year the year
+     * @param month the month, 1 to 12
+     * @return the counts, empty if nothing was given that month
+     */
+    public MonthCounts getMonth(int year, int month) {
+        MonthCounts counts = months.get(year * 12 + month - 1);
+        return counts == null ? new MonthCounts() : counts;
+    }
+
+    /** @return the months with counts, each as EpochDays.monthOf gives it */
+    public Set<Integer> getMonthsCounted() {
+        return Collections.unmodifiableSet(months.keySet());
+    }
+
+    /**
+     * Counts doses of one dose of a vaccine to one age band in a month (as EpochDays.monthOf
+     * gives it), e.g. counts read back from a snapshot.
+     */
+    void add(int month, Vaccine vaccine, int doseNumber, int band, int doses) {
+        months.computeIfAbsent(month, k -> new MonthCounts()).add(vaccine, doseNumber, band, doses);
+    }
+
+    /**
+     * Builds the return of a month from the counts. The register does not record opened
+     * vials, so the doses used are the doses administered; set them on the Return when vial
+     * counts are known.
+     *
+     * @param immunizationCentre the clinic
+     * @param metro the metro or city area
+     * @param region the administrative region
+     * @param year the year
+     * @param month the month, 1 to 12
+     * @return the return, with the month's counts attached
+     */
+    public Return toReturn(String immunizationCentre, String metro, String region, int year, int month) {
+        MonthCounts counts = getMonth(year, month);
+        int administered = counts.getTotal();
+        Return monthly = new Return(immunizationCentre, metro, region,
+                Month.of(month).getDisplayName(TextStyle.FULL, Locale.ENGLISH) + " " + year,
+                administered, administered, 0.0, 0, 0, 0, 0, 0);
+        monthly.setCounts(counts);
+        return monthly;
+    }
+
+    /**
+     * Gets the age band of a patient on a day.
+     *
+     * @param patient the patient
+     * @param epochDay the day
+     * @return BAND_0_11_MONTHS, BAND_12_23_MONTHS or BAND_24_MONTHS_PLUS
+     */
+    public static int ageBand(ImmunizationPatient patient, long epochDay) {
+        int months = patient.getDateOfBirth() == null ? patient.getAge() * 12
+                : EpochDays.monthsBetween(EpochDays.ofMillis(patient.getDateOfBirth().getTime()), epochDay);
+        return months < 12 ? BAND_0_11_MONTHS : months < 24 ? BAND_12_23_MONTHS : BAND_24_MONTHS_PLUS;
+    }
+
+    private void count(Visit visit, int band, int delta) {
+        long day = EpochDays.of(visit.getVisitDate());
+        MonthCounts counts = months.computeIfAbsent(EpochDays.monthOf(day), k -> new MonthCounts());
+        List<Vaccine> given = visit.getDosesAdministered();
+        for (int i = 0; i < given.size(); i++) {
+            counts.add(given.get(i), Math.max(1, visit.getDoseNumberAt(i)), band, delta);
+        }
+    }
+
+    /**
+     * The doses given in one month, by vaccine, dose number and age band.
+     */
+    public static class MonthCounts {
+        // per vaccine ID, cell [dose * BANDS + band] for dose numbers 0 and up
+        private final Map<Integer, int[]> byVaccine = new HashMap<>();
+        private final Map<Integer, Vaccine> vaccines = new HashMap<>();
+        private int total;
+
+        /**
+         * Gets the doses given of one dose of a vaccine to one age band.
+         *
+         * @param vaccineId the vaccine's catalogue ID
+         * @param doseNumber the dose number, 1 for the first
+         * @param band the age band, e.g. BAND_0_11_MONTHS
+         * @return the doses given
+         */
+        public int get(int vaccineId, int doseNumber, int band) {
+            int[] cells = byVaccine.get(vaccineId);
+            int cell = doseNumber * BANDS + band;
+            return cells == null || doseNumber < 0 || cell >= cells.length ? 0 : cells[cell];
+        }
+
+        /**
+         * Gets the doses given of one dose of a vaccine, all age bands together.
+         *
+         * @param vaccineId the vaccine's catalogue ID
+         * @param doseNumber the dose number, 1 for the first
+         * @return the doses given
+         */
+        public int getDoseTotal(int vaccineId, int doseNumber) {
+            int sum = 0;
+            for (int band = 0; band < BANDS; band++) {
+                sum += get(vaccineId, doseNumber, band);
+            }
+            return sum;
+        }
+
+        /**
+         * Gets the doses of a vaccine given, all doses and age bands together.
+         *
+         * @param vaccineId the vaccine's catalogue ID
+         * @return the doses given
+         */
+        public int getVaccineTotal(int vaccineId) {
+            int[] cells = byVaccine.get(vaccineId);
+            int sum = 0;
+            if (cells != null) {
+                for (int count : cells) {
+                    sum += count;
+                }
+            }
+            return sum;
+        }
+
+        /**
+         * Gets the highest dose number of a vaccine counted, e.g. to know how many rows it needs.
+         *
+         * @param vaccineId the vaccine's catalogue ID
+         * @return the highest dose number, 0 if none
+         */
+        public int getMaxDose(int vaccineId) {
+            int[] cells = byVaccine.get(vaccineId);
+            return cells == null ? 0 : cells.length / BANDS - 1;
+        }
+
+        /**
+         * Gets a vaccine counted this month, e.g. to find its row on the return.
+         *
+         * @param vaccineId the vaccine's catalogue ID
+         * @return the vaccine, or null if none of it was given
+         */
+        public Vaccine getVaccine(int vaccineId) {
+            return vaccines.get(vaccineId);
+        }
+
+        /** @return the IDs of the vaccines given this month */
+        public Set<Integer> getVaccineIds() {
+            return Collections.unmodifiableSet(byVaccine.keySet());
+        }
+
+        /** @return the doses given this month, all vaccines together */
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * Adds another month's counts to these, e.g. to total the clinics of a region.
+         *
+         * @param other the counts to add
+         */
+        public void addAll(MonthCounts other) {
+            for (Map.Entry<Integer, int[]> entry : other.byVaccine.entrySet()) {
+                Vaccine vaccine = other.vaccines.get(entry.getKey());
+                int[] cells = entry.getValue();
+                for (int cell = cells.length - 1; cell >= 0; cell--) {
+                    if (cells[cell] != 0) {
+                        add(vaccine, cell / BANDS, cell % BANDS, cells[cell]);
+                    }
+                }
+            }
+        }
+
+        void add(Vaccine vaccine, int doseNumber, int band, int delta) {
+            int vaccineId = vaccine.getID();
+            vaccines.putIfAbsent(vaccineId, vaccine);
+            int cell = doseNumber * BANDS + band;
+            int[] cells = byVaccine.get(vaccineId);
+            if (cells == null || cell >= cells.length) {
+                int[] grown = new int[(doseNumber + 1) * BANDS];
+                if (cells != null) {
+                    System.arraycopy(cells, 0, grown, 0, cells.length);
+                }
+                cells = grown;
+                byVaccine.put(vaccineId, cells);
+            }
+            cells[cell] += delta;
+            total += delta;
+        }
+    }
+}
@@ -0,0 +1,418 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * ReturnRenderer.java
+ * Writes a Return out as the Ghana Health Service IM monthly returns form, with a row for
+ * every disease, vaccine and dose on the form (see documentation/ExampleMonthyReturns.txt).
+ *
+ * The counts attached to the Return by a ReturnAggregator are first laid out on the rows of
+ * the form: each vaccine is matched to its row group by name (BCG, Penta/PBATA, OPV, Measles,
+ * YF, TT) and each dose number to its row; vaccines that are not on the form get rows of their
+ * own at the end. The form is then written into one character buffer that is kept and reused
+ * from return to return, with numbers written digit by digit, so rendering the returns of every
+ * clinic in a region makes no garbage beyond the finished text. A renderer is not thread-safe;
+ * use one per thread.
+ *
+ * @author Abdirahman Mohamed
+ * @version October 18, 2026
+ */
+public class ReturnRenderer {
+    // Column widths of the vaccine table, as on the paper form
+    private static final int[] WIDTHS = {16, 7, 12, 13, 14, 20, 24, 7, 7, 8, 8, 11, 12};
+    private static final int FIRST_COUNT_COLUMN = 3;
+    private static final int TOTAL_COLUMN = 6;
+    private static final int USED_COLUMN = 11;
+    private static final int WASTAGE_COLUMN = 12;
+
+    // Row groups, the vaccines named on the form
+    private static final int NONE = -1;
+    private static final int BCG = 0;
+    private static final int PENTA = 1;
+    private static final int OPV = 2;
+    private static final int MEASLES = 3;
+    private static final int YELLOW_FEVER = 4;
+    private static final int TT = 5;
+
+    // The rows of the form: disease, vaccine, dose label, row group and dose number (0 for a birth dose)
+    private static final String[] ROW_DISEASE = {"Tuberculosis", "Diphtheria", "Pertussis", "Tetanus",
+            "Hepatitis B", "H-influenza B", "Poliomyelitis", "", "", "", "Measles", "Yellow Fever",
+            "Tetanus", "", "", "", "", ""};
+    private static final String[] ROW_VACCINE = {"BCG", "", "", "PBATA", "", "", "OPV", "", "", "",
+            "Measles", "YF", "TT", "", "", "", "", ""};
+    private static final String[] ROW_DOSES = {"1", "1st", "2nd", "3rd", "", "", "At Birth", "1st", "2nd", "3rd",
+            "1", "1", "", "1st", "2nd", "3rd", "4th", "5th"};
+    private static final int[] ROW_GROUP = {BCG, PENTA, PENTA, PENTA, NONE, NONE, OPV, OPV, OPV, OPV,
+            MEASLES, YELLOW_FEVER, NONE, TT, TT, TT, TT, TT};
+    private static final int[] ROW_DOSE = {1, 1, 2, 3, 0, 0, 0, 1, 2, 3, 1, 1, 0, 1, 2, 3, 4, 5};
+    private static final int TT_HEADING_ROW = 12;
+    private static final int ROWS = ROW_GROUP.length;
+
+    private static final String[] ORDINALS = {"At Birth", "1st", "2nd", "3rd", "4th", "5th", "6th", "7th", "8th", "9th"};
+
+    private char[] buffer = new char[8192];
+    private int length;
+    private final char[] digits = new char[11];
+
+    // Per row: doses given in each age band, then the total
+    private final int[][] cells = new int[ROWS][ReturnAggregator.BANDS + 1];
+    private final List<Vaccine> otherVaccines = new ArrayList<>();
+
+    /**
+     * Renders a return as text.
+     *
+     * @param monthly the return
+     * @return the form
+     */
+    public String render(Return monthly) {
+        fill(monthly);
+        return new String(buffer, 0, length);
+    }
+
+    /**
+     * Renders a return straight to a writer, without making a String of it.
+     *
+     * @param monthly the return
+     * @param out where the form is written
+     * @throws IOException if the writer fails
+     */
+    public void render(Return monthly, Writer out) throws IOException {
+        fill(monthly);
+        out.write(buffer, 0, length);
+    }
+
+    private void fill(Return monthly) {
+        length = 0;
+        ReturnAggregator.MonthCounts counts = monthly.getCounts();
+        layOut(counts);
+
+        text("GHANA HEALTH SERVICE\nIMMUNIZATION MONTHLY RETURNS\n\n");
+        text("Immunization Centre/Clinic: ").text(monthly.getImmunizationCentre()).newline();
+        text("Metro: ").text(monthly.getMetro()).newline();
+        text("Region: ").text(monthly.getRegion()).newline();
+        text("For the month of: ").text(monthly.getMonth()).newline().newline();
+
+        // Two header lines: the groups of columns, then the columns
+        cell("Disease", WIDTHS[0]).cell("Vaccine", WIDTHS[1]).cell("No. of doses", WIDTHS[2]);
+        centred("NUMBER GIVEN (BY AGE GROUP)", span(FIRST_COUNT_COLUMN, TOTAL_COLUMN));
+        centred("Number of Doses Used", span(TOTAL_COLUMN + 1, WASTAGE_COLUMN));
+        text("|\n");
+        cell("", WIDTHS[0]).cell("", WIDTHS[1]).cell("", WIDTHS[2]);
+        cell("0 - 11 Months", WIDTHS[3]).cell("12 - 23 Months", WIDTHS[4]).cell("24 Months and above", WIDTHS[5]);
+        cell("Total doses administered", WIDTHS[6]).cell("2 doses", WIDTHS[7]).cell("5 doses", WIDTHS[8]);
+        cell("10 doses", WIDTHS[9]).cell("20 doses", WIDTHS[10]).cell("Total doses", WIDTHS[11]);
+        cell("Wastage rate", WIDTHS[12]).text("|\n");
+        rule(WIDTHS);
+
+        for (int row = 0; row < ROWS; row++) {
+            cell(ROW_DISEASE[row], WIDTHS[0]).cell(ROW_VACCINE[row], WIDTHS[1]).cell(ROW_DOSES[row], WIDTHS[2]);
+            if (row == TT_HEADING_ROW) {
+                // TT is given to women, so its columns are pregnancy status rather than age
+                cell("Pregnant", WIDTHS[3]).cell("Non Pregnant", WIDTHS[4]).cell("Others", WIDTHS[5]);
+                blanks(TOTAL_COLUMN, WASTAGE_COLUMN);
+            } else if (ROW_GROUP[row] == NONE) {
+                blanks(FIRST_COUNT_COLUMN, WASTAGE_COLUMN);
+            } else if (ROW_GROUP[row] == TT) {
+                // Pregnancy is not recorded, so every TT dose counts under Others
+                blanks(FIRST_COUNT_COLUMN, TOTAL_COLUMN - 2);
+                number(cells[row][ReturnAggregator.BANDS], WIDTHS[5]);
+                number(cells[row][ReturnAggregator.BANDS], WIDTHS[6]);
+                blanks(TOTAL_COLUMN + 1, WASTAGE_COLUMN);
+            } else {
+                countRow(cells[row]);
+            }
+            text("|\n");
+        }
+        for (Vaccine vaccine : otherVaccines) {
+            int id = vaccine.getID();
+            for (int dose = 0; dose <= counts.getMaxDose(id); dose++) {
+                if (counts.getDoseTotal(id, dose) == 0) {
+                    continue;
+                }
+                cell("Other", WIDTHS[0]).cell(vaccine.getName(), WIDTHS[1]);
+                cell(dose < ORDINALS.length ? ORDINALS[dose] : String.valueOf(dose), WIDTHS[2]);
+                for (int band = 0; band < ReturnAggregator.BANDS; band++) {
+                    number(counts.get(id, dose, band), WIDTHS[FIRST_COUNT_COLUMN + band]);
+                }
+                number(counts.getDoseTotal(id, dose), WIDTHS[TOTAL_COLUMN]);
+                blanks(TOTAL_COLUMN + 1, WASTAGE_COLUMN);
+                text("|\n");
+            }
+        }
+        cell("Total", WIDTHS[0]).cell("", WIDTHS[1]).cell("", WIDTHS[2]);
+        blanks(FIRST_COUNT_COLUMN, TOTAL_COLUMN - 1);
+        number(monthly.getTotalDosesAdministered(), WIDTHS[TOTAL_COLUMN]);
+        blanks(TOTAL_COLUMN + 1, USED_COLUMN - 1);
+        number(monthly.getTotalDosesUsed(), WIDTHS[USED_COLUMN]);
+        percent(monthly.getWastageRate(), WIDTHS[WASTAGE_COLUMN]);
+        text("|\n");
+
+        int[] vitaminWidths = {20, 13, 14, 11, 9, 9};
+        text("\n\nVitamin A supplementation\n\n");
+        cell("Vitamin A Deficiency", 20).cell("6 - 11 months", 13).cell("12 - 59 months", 14)
+                .cell("Post-Partum", 11).cell("100000 IU", 9).cell("200000 IU", 9).text("|\n");
+        rule(vitaminWidths);
+        cell("Vitamin A", 20).number(monthly.getVitaminADeficiency(), 13);
+        cell("", 14).cell("", 11).cell("", 9).cell("", 9).text("|\n");
+        cell("Number AEFI reported", 20).number(monthly.getVitaminAAEFIReported(), 13);
+        cell("", 14).cell("", 11).cell("", 9).cell("", 9).text("|\n");
+
+        text("\n\nInjection safety and waste management\n\n");
+        cell("Number of safety boxes used", 40).number(monthly.getSafetyBoxesUsed(), 5).text("|\n");
+        cell("Number of safety boxes disposed of/burnt", 40).cell("1. Incinerator", 14)
+                .number(monthly.getSafetyBoxesDisposedIncinerator(), 5).cell("2. Pit", 6)
+                .number(monthly.getSafetyBoxesDisposedPit(), 5).text("|\n");
+        text("\nEnd Report.");
+    }
+
+    /**
+     * Adds each vaccine's counts to the rows of the form, and lists the vaccines not on it.
+     */
+    private void layOut(ReturnAggregator.MonthCounts counts) {
+        for (int[] row : cells) {
+            Arrays.fill(row, 0);
+        }
+        otherVaccines.clear();
+        if (counts == null) {
+            return;
+        }
+        for (int id : counts.getVaccineIds()) {
+            Vaccine vaccine = counts.getVaccine(id);
+            int group = groupOf(vaccine.getName());
+            if (group == NONE) {
+                otherVaccines.add(vaccine);
+                continue;
+            }
+            // An OPV course of four or more doses starts with the birth dose
+            int shift = group == OPV && vaccine.getNumOfDosage() >= 4 ? 1 : 0;
+            for (int dose = 0; dose <= counts.getMaxDose(id); dose++) {
+                int row = rowOf(group, dose - shift);
+                for (int band = 0; band < ReturnAggregator.BANDS; band++) {
+                    int given = counts.get(id, dose, band);
+                    cells[row][band] += given;
+                    cells[row][ReturnAggregator.BANDS] += given;
+                }
+            }
+        }
+        otherVaccines.sort((a, b) -> Integer.compare(a.getID(), b.getID()));
+    }
+
+    /**
+     * Finds the row of a dose in a group; doses beyond the group's last row count on the last row.
+     */
+    private static int rowOf(int group, int dose) {
+        int match = -1;
+        for (int row = 0; row < ROWS; row++) {
+            if (ROW_GROUP[row] == group) {
+                if (match < 0 || ROW_DOSE[row] <= dose) {
+                    match = row;
+                }
+            }
+        }
+        return match;
+    }
+
+    private static int groupOf(String vaccineName) {
+        String name = vaccineName == null ? "" : vaccineName.toUpperCase(Locale.ROOT);
+        if (name.contains("BCG")) {
+            return BCG;
+        } else if (name.contains("PENTA") || name.contains("PBATA") || name.contains("DTP") || name.contains("DPT")) {
+            return PENTA;
+        } else if (name.contains("OPV") || name.contains("POLIO")) {
+            return OPV;
+        } else if (name.contains("MEASLES")) {
+            return MEASLES;
+        } else if (name.contains("YELLOW") || name.equals("YF")) {
+            return YELLOW_FEVER;
+        } else if (name.startsWith("TT") || name.contains("TETANUS TOXOID")) {
+            return TT;
+        }
+        return NONE;
+    }
+
+    private void countRow(int[] row) {
+        for (int band = 0; band <= ReturnAggregator.BANDS; band++) {
+            number(row[band], WIDTHS[FIRST_COUNT_COLUMN + band]);
+        }
+        blanks(TOTAL_COLUMN + 1, WASTAGE_COLUMN);
+    }
+
+    private static int span(int fromColumn, int toColumn) {
+        int width = 0;
+        for (int column = fromColumn; column <= toColumn; column++) {
+            width += WIDTHS[column];
+        }
+        return width + 3 * (toColumn - fromColumn);
+    }
+
+    private ReturnRenderer blanks(int fromColumn, int toColumn) {
+        for (int column = fromColumn; column <= toColumn; column++) {
+            cell("", WIDTHS[column]);
+        }
+        return this;
+    }
+
+    private void rule(int[] widths) {
+        for (int width : widths) {
+            ensure(width + 3);
+            buffer[length++] = '|';
+            Arrays.fill(buffer, length, length + width + 2, '-');
+            length += width + 2;
+        }
+        text("|\n");
+    }
+
+    /** Writes "| text" padded to the width, cut short if it is longer. */
+    private ReturnRenderer cell(String text, int width) {
+        ensure(width + 3);
+        buffer[length++] = '|';
+        buffer[length++] = ' ';
+        int n = Math.min(text.length(), width);
+        text.getChars(0, n, buffer, length);
+        Arrays.fill(buffer, length + n, length + width + 1, ' ');
+        length += width + 1;
+        return this;
+    }
+
+    private void centred(String text, int width) {
+        int left = (width - text.length()) / 2;
+        ensure(width + 3);
+        buffer[length++] = '|';
+        Arrays.fill(buffer, length, length + 1 + left, ' ');
+        length += 1 + left;
+        text.getChars(0, text.length(), buffer, length);
+        length += text.length();
+        Arrays.fill(buffer, length, length + width - left - text.length() + 1, ' ');
+        length += width - left - text.length() + 1;
+    }
+
+    /** Writes "| number" right-aligned in the width. */
+    private ReturnRenderer number(int value, int width) {
+        int n = digits.length;
+        long v = Math.abs((long) value);
+        do {
+            digits[--n] = (char) ('0' + v % 10);
+            v /= 10;
+        } while (v > 0);
+        if (value < 0) {
+            digits[--n] = '-';
+        }
+        int used = digits.length - n;
+        ensure(width + 3);
+        buffer[length++] = '|';
+        Arrays.fill(buffer, length, length + 1 + width - used, ' ');
+        length += 1 + width - used;
+        System.arraycopy(digits, n, buffer, length, used);
+        length += used;
+        buffer[length++] = ' ';
+        return this;
+    }
+
+    /** Writes "| 12.5%" right-aligned in the width, to one decimal place. */
+    private void percent(double rate, int width) {
+        long tenths = Math.round(Math.abs(rate) * 10);
+        int n = digits.length;
+        digits[--n] = '%';
+        digits[--n] = (char) ('0' + tenths % 10);
+        digits[--n] = '.';
+        tenths /= 10;
+        do {
+            digits[--n] = (char) ('0' + tenths % 10);
+            tenths /= 10;
+        } while (tenths > 0 && n > 1);
+        if (rate < 0) {
+            digits[--n] = '-';
+        }
+        int used = digits.length - n;
+        ensure(width + 3);
+        buffer[length++] = '|';
+        Arrays.fill(buffer, length, length + 1 + width - used, ' ');
+        length += 1 + width - used;
+        System.arraycopy(digits, n, buffer, length, used);
+        length += used;
+        buffer[length++] = ' ';
+    }
+
+    private ReturnRenderer text(String text) {
+        String s = text == null ? "" : text;
+        ensure(s.length());
+        s.getChars(0, s.length(), buffer, length);
+        length += s.length();
+        return this;
+    }
+
+    private ReturnRenderer newline() {
+        ensure(1);
+        buffer[length++] = '\n';
+        return this;
+    }
+
+    private void ensure(int more) {
+        if (length + more > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + more));
+        }
+    }
+
+    /**
+     * Renders a sample return, then times rendering the returns of a region's clinics
+     * with one renderer against building the same form with String.format.
+     *
+     * @param args optional clinic count
+     * @throws IOException never, the output is discarded
+     */
+    public static void main(String[] args) throws IOException {
+        int clinics = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        String[] names = {"BCG", "Penta", "OPV", "Measles Rubella", "Yellow Fever", "TT", "Rotavirus"};
+        int[] courses = {1, 3, 4, 2, 1, 5, 2};
+        List<Vaccine> vaccines = new ArrayList<>();
+        for (int v = 0; v < names.length; v++) {
+            vaccines.add(new Vaccine(v + 1, names[v], "Generic", 0.5, courses[v], 28, 0, "intramuscular", "arm",
+                    new ArrayList<>(), 0));
+        }
+        java.util.Random random = new java.util.Random(7);
+        List<Return> returns = new ArrayList<>(clinics);
+        for (int c = 0; c < clinics; c++) {
+            ReturnAggregator.MonthCounts counts = new ReturnAggregator.MonthCounts();
+            for (Vaccine vaccine : vaccines) {
+                for (int dose = 1; dose <= vaccine.getNumOfDosage(); dose++) {
+                    for (int band = 0; band < ReturnAggregator.BANDS; band++) {
+                        counts.add(vaccine, dose, band, random.nextInt(40));
+                    }
+                }
+            }
+            Return monthly = new Return("Clinic " + c, "Metro " + c % 20, "Greater Accra", "October 2026",
+                    counts.getTotal(), counts.getTotal() + random.nextInt(50), 0, 3, 1, 12, 8, 4);
+            monthly.setWastageRate(100.0 * (monthly.getTotalDosesUsed() - monthly.getTotalDosesAdministered())
+                    / monthly.getTotalDosesUsed());
+            monthly.setCounts(counts);
+            returns.add(monthly);
+        }
+        ReturnRenderer renderer = new ReturnRenderer();
+        System.out.println(renderer.render(returns.get(0)));
+
+        Writer sink = Writer.nullWriter();
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (Return monthly : returns) {
+                renderer.render(monthly, sink);
+            }
+            long buffered = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (Return monthly : returns) {
+                StringBuilder sb = new StringBuilder();
+                for (int row = 0; row < ROWS + 8; row++) {
+                    sb.append(String.format("| %-16s | %-7s | %-12s | %13d | %14d | %20d | %24d | %-7s | %-7s | %-8s | %-8s | %11s | %12s |%n",
+                            "Disease", "Vaccine", "1st", row, row, row, row, "", "", "", "", "", ""));
+                }
+                sink.write(sb.toString());
+            }
+            long formatted = System.nanoTime() - start;
+            System.out.printf("%d returns: buffer %d ms, String.format %d ms%n", clinics,
+                    buffered / 1_000_000, formatted / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,356 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * ReturnRollup.java
+ * Combines the monthly returns of many clinics into totals for each metro and each region,
+ * for the regional office's consolidated reports.
+ *
+ * Doses, Vitamin A and safety-box counts are summed, and so are the per-vaccine, per-dose
+ * and per-age-band counts when the returns carry them. Wastage rates are not averaged: each
+ * total's rate is worked out again from its summed doses used and administered, so a large
+ * clinic weighs more than a small one. The returns are split into ranges that are totalled
+ * on a fork-join pool and the partial totals merged, so thousands of facilities are rolled
+ * up in well under a second. Pass the returns of one month at a time.
+ *
+ * @author Abdirahman Mohamed
+ * @version October 18, 2026
+ */
+public class ReturnRollup {
+    // returns totalled by one task before it stops splitting
+    private static final int LEAF_RETURNS = 256;
+
+    private final Map<String, Totals> regions = new TreeMap<>();
+    private final Map<String, Map<String, Totals>> metros = new TreeMap<>();
+
+    private ReturnRollup() {
+    }
+
+    /**
+     * Rolls up returns on the common fork-join pool.
+     *
+     * @param returns the returns of the clinics, all for the same month
+     * @return the metro and region totals
+     */
+    public static ReturnRollup of(List<Return> returns) {
+        return of(returns, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Rolls up returns on a fork-join pool.
+     *
+     * @param returns the returns of the clinics, all for the same month
+     * @param pool the pool to total them on
+     * @return the metro and region totals
+     */
+    public static ReturnRollup of(List<Return> returns, ForkJoinPool pool) {
+        return pool.invoke(new RollupTask(returns, 0, returns.size()));
+    }
+
+    /** @return the regions rolled up, in name order */
+    public List<String> getRegions() {
+        return new ArrayList<>(regions.keySet());
+    }
+
+    /**
+     * Gets the metros of a region, in name order.
+     *
+     * @param region the region
+     * @return the metros, empty if the region is unknown
+     */
+    public List<String> getMetros(String region) {
+        Map<String, Totals> inRegion = metros.get(region);
+        return inRegion == null ? new ArrayList<>() : new ArrayList<>(inRegion.keySet());
+    }
+
+    /**
+     * Gets the totals of a region.
+     *
+     * @param region the region
+     * @return the totals, or null if no return was from the region
+     */
+    public Totals getRegionTotals(String region) {
+        return regions.get(region);
+    }
+
+    /**
+     * Gets the totals of a metro.
+     *
+     * @param region the metro's region
+     * @param metro the metro
+     * @return the totals, or null if no return was from the metro
+     */
+    public Totals getMetroTotals(String region, String metro) {
+        Map<String, Totals> inRegion = metros.get(region);
+        return inRegion == null ? null : inRegion.get(metro);
+    }
+
+    /**
+     * Gets a consolidated return for every region, in name order.
+     *
+     * @return the region returns
+     */
+    public List<Return> getRegionReturns() {
+        List<Return> returns = new ArrayList<>(regions.size());
+        for (Map.Entry<String, Totals> region : regions.entrySet()) {
+            returns.add(region.getValue().toReturn("All facilities", region.getKey()));
+        }
+        return returns;
+    }
+
+    /**
+     * Gets a consolidated return for every metro of a region, in name order.
+     *
+     * @param region the region
+     * @return the metro returns
+     */
+    public List<Return> getMetroReturns(String region) {
+        List<Return> returns = new ArrayList<>();
+        Map<String, Totals> inRegion = metros.get(region);
+        if (inRegion != null) {
+            for (Map.Entry<String, Totals> metro : inRegion.entrySet()) {
+                returns.add(metro.getValue().toReturn(metro.getKey(), region));
+            }
+        }
+        return returns;
+    }
+
+    private void add(Return monthly) {
+        String region = nameOf(monthly.getRegion());
+        String metro = nameOf(monthly.getMetro());
+        regions.computeIfAbsent(region, k -> new Totals()).add(monthly);
+        metros.computeIfAbsent(region, k -> new TreeMap<>()).computeIfAbsent(metro, k -> new Totals()).add(monthly);
+    }
+
+    private void merge(ReturnRollup other) {
+        for (Map.Entry<String, Totals> region : other.regions.entrySet()) {
+            Totals totals = regions.putIfAbsent(region.getKey(), region.getValue());
+            if (totals != null) {
+                totals.merge(region.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, Totals>> region : other.metros.entrySet()) {
+            Map<String, Totals> inRegion = metros.computeIfAbsent(region.getKey(), k -> new TreeMap<>());
+            for (Map.Entry<String, Totals> metro : region.getValue().entrySet()) {
+                Totals totals = inRegion.putIfAbsent(metro.getKey(), metro.getValue());
+                if (totals != null) {
+                    totals.merge(metro.getValue());
+                }
+            }
+        }
+    }
+
+    private static String nameOf(String name) {
+        return name == null || name.trim().isEmpty() ? "(unknown)" : name.trim();
+    }
+
+    /**
+     * Totals a range of the returns, splitting it in two while it is large.
+     */
+    private static class RollupTask extends RecursiveTask<ReturnRollup> {
+        private static final long serialVersionUID = 1L;
+        private final List<Return> returns;
+        private final int from;
+        private final int to;
+
+        RollupTask(List<Return> returns, int from, int to) {
+            this.returns = returns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ReturnRollup compute() {
+            if (to - from <= LEAF_RETURNS) {
+                ReturnRollup rollup = new ReturnRollup();
+                for (int i = from; i < to; i++) {
+                    rollup.add(returns.get(i));
+                }
+                return rollup;
+            }
+            int mid = (from + to) >>> 1;
+            RollupTask left = new RollupTask(returns, from, mid);
+            left.fork();
+            ReturnRollup rollup = new RollupTask(returns, mid, to).compute();
+            rollup.merge(left.join());
+            return rollup;
+        }
+    }
+
+    /**
+     * The summed figures of a group of clinics.
+     */
+    public static class Totals {
+        private int facilities;
+        private String month;
+        private long dosesAdministered;
+        private long dosesUsed;
+        private long vitaminADeficiency;
+        private long vitaminAAEFIReported;
+        private long safetyBoxesUsed;
+        private long safetyBoxesDisposedIncinerator;
+        private long safetyBoxesDisposedPit;
+        private ReturnAggregator.MonthCounts counts;
+
+        void add(Return monthly) {
+            facilities++;
+            if (month == null) {
+                month = monthly.getMonth();
+            }
+            dosesAdministered += monthly.getTotalDosesAdministered();
+            dosesUsed += monthly.getTotalDosesUsed();
+            vitaminADeficiency += monthly.getVitaminADeficiency();
+            vitaminAAEFIReported += monthly.getVitaminAAEFIReported();
+            safetyBoxesUsed += monthly.getSafetyBoxesUsed();
+            safetyBoxesDisposedIncinerator += monthly.getSafetyBoxesDisposedIncinerator();
+            safetyBoxesDisposedPit += monthly.getSafetyBoxesDisposedPit();
+            if (monthly.getCounts() != null) {
+                countsToAddTo().addAll(monthly.getCounts());
+            }
+        }
+
+        void merge(Totals other) {
+            facilities += other.facilities;
+            if (month == null) {
+                month = other.month;
+            }
+            dosesAdministered += other.dosesAdministered;
+            dosesUsed += other.dosesUsed;
+            vitaminADeficiency += other.vitaminADeficiency;
+            vitaminAAEFIReported += other.vitaminAAEFIReported;
+            safetyBoxesUsed += other.safetyBoxesUsed;
+            safetyBoxesDisposedIncinerator += other.safetyBoxesDisposedIncinerator;
+            safetyBoxesDisposedPit += other.safetyBoxesDisposedPit;
+            if (other.counts != null) {
+                countsToAddTo().addAll(other.counts);
+            }
+        }
+
+        private ReturnAggregator.MonthCounts countsToAddTo() {
+            if (counts == null) {
+                counts = new ReturnAggregator.MonthCounts();
+            }
+            return counts;
+        }
+
+        /** @return the number of clinic returns in the totals */
+        public int getFacilities() {
+            return facilities;
+        }
+
+        /** @return the doses administered */
+        public long getDosesAdministered() {
+            return dosesAdministered;
+        }
+
+        /** @return the doses used from stock */
+        public long getDosesUsed() {
+            return dosesUsed;
+        }
+
+        /**
+         * Works out the wastage rate of the group from its summed doses, which weights
+         * each clinic by the doses it used.
+         *
+         * @return the doses used but not administered, as a percentage of the doses used
+         */
+        public double getWastageRate() {
+            return dosesUsed == 0 ? 0.0 : 100.0 * (dosesUsed - dosesAdministered) / dosesUsed;
+        }
+
+        /** @return the recorded Vitamin A deficiency cases */
+        public long getVitaminADeficiency() {
+            return vitaminADeficiency;
+        }
+
+        /** @return the adverse events after Vitamin A reported */
+        public long getVitaminAAEFIReported() {
+            return vitaminAAEFIReported;
+        }
+
+        /** @return the safety boxes used */
+        public long getSafetyBoxesUsed() {
+            return safetyBoxesUsed;
+        }
+
+        /**
+         * Makes a consolidated return of the totals.
+         *
+         * @param metro the metro, or a label such as "All facilities" for a region
+         * @param region the region
+         * @return the return
+         */
+        public Return toReturn(String metro, String region) {
+            Return consolidated = new Return(facilities + " facilities", metro, region, month,
+                    clamp(dosesAdministered), clamp(dosesUsed), getWastageRate(),
+                    clamp(vitaminADeficiency), clamp(vitaminAAEFIReported), clamp(safetyBoxesUsed),
+                    clamp(safetyBoxesDisposedIncinerator), clamp(safetyBoxesDisposedPit));
+            consolidated.setCounts(counts);
+            return consolidated;
+        }
+
+        private static int clamp(long total) {
+            return (int) Math.min(Integer.MAX_VALUE, total);
+        }
+    }
+
+    /**
+     * Rolls up generated returns for thousands of facilities, on one thread and in parallel,
+     * and prints a region's consolidated return.
+     *
+     * @param args optional facility count
+     */
+    public static void main(String[] args) {
+        int facilities = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        String[] regionNames = {"Ashanti", "Bono", "Central", "Eastern", "Greater Accra", "Northern",
+                "Upper East", "Upper West", "Volta", "Western"};
+        List<Vaccine> vaccines = new ArrayList<>();
+        String[] names = {"BCG", "Penta", "OPV", "Measles", "Yellow Fever", "TT"};
+        int[] courses = {1, 3, 4, 1, 1, 5};
+        for (int v = 0; v < names.length; v++) {
+            vaccines.add(new Vaccine(v + 1, names[v], "Generic", 0.5, courses[v], 28, 0, "intramuscular", "arm",
+                    new ArrayList<>(), 0));
+        }
+        java.util.Random random = new java.util.Random(11);
+        List<Return> returns = new ArrayList<>(facilities);
+        for (int f = 0; f < facilities; f++) {
+            ReturnAggregator.MonthCounts counts = new ReturnAggregator.MonthCounts();
+            for (Vaccine vaccine : vaccines) {
+                for (int dose = 1; dose <= vaccine.getNumOfDosage(); dose++) {
+                    counts.add(vaccine, dose, random.nextInt(ReturnAggregator.BANDS), 1 + random.nextInt(30));
+                }
+            }
+            int used = counts.getTotal() + random.nextInt(counts.getTotal() / 5 + 1);
+            Return monthly = new Return("Clinic " + f, "Metro " + f % 260, regionNames[f % 260 % regionNames.length],
+                    "October 2026", counts.getTotal(), used, 0, random.nextInt(5), random.nextInt(2),
+                    random.nextInt(20), random.nextInt(10), random.nextInt(10));
+            monthly.setCounts(counts);
+            returns.add(monthly);
+        }
+
+        ForkJoinPool single = new ForkJoinPool(1);
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            ReturnRollup sequential = of(returns, single);
+            long oneThread = System.nanoTime() - start;
+            start = System.nanoTime();
+            ReturnRollup parallel = of(returns);
+            long allThreads = System.nanoTime() - start;
+            System.out.printf("%,d facilities, %d regions: 1 thread %d ms, %d threads %d ms%n", facilities,
+                    parallel.getRegions().size(), oneThread / 1_000_000,
+                    ForkJoinPool.commonPool().getParallelism(), allThreads / 1_000_000);
+            if (round == 4) {
+                System.out.println(parallel.getRegionReturns().get(4));
+                Totals a = sequential.getRegionTotals("Volta");
+                Totals b = parallel.getRegionTotals("Volta");
+                System.out.println("same totals: " + (a.getDosesUsed() == b.getDosesUsed()
+                        && a.getFacilities() == b.getFacilities()));
+            }
+        }
+        single.shutdown();
+    }
+}
@@ -0,0 +1,73 @@
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * StubReminderGateway.java
+ * A local stand-in for an SMS or email gateway, for testing ReminderDelivery: each delivery
+ * sleeps for a set latency, and deliveries are counted. Failures are deterministic: every
+ * so many reminders, picked by key, are rejected on their first few attempts, so a run can
+ * tell retries working from reminders being lost.
+ *
+ * @author Milo Keys
+ * @version October 18, 2026
+ */
+public class StubReminderGateway implements ReminderGateway {
+    private final long latencyMs;
+    private final int failEvery;
+    private final int failuresEach;
+    private final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Creates a stub gateway.
+     *
+     * @param latencyMs how long each delivery blocks
+     * @param failEvery one in how many reminders is rejected at first, 0 for none
+     * @param failuresEach how many attempts at each of those are rejected
+     */
+    public StubReminderGateway(long latencyMs, int failEvery, int failuresEach) {
+        this.latencyMs = latencyMs;
+        this.failEvery = failEvery;
+        this.failuresEach = failuresEach;
+    }
+
+    /**
+     * Checks whether a reminder is one of those rejected on its first attempts.
+     *
+     * @param reminder the reminder
+     * @return true if its first failuresEach attempts are rejected
+     */
+    public boolean isRejectedAtFirst(Reminder reminder) {
+        return failEvery > 0 && Math.floorMod(reminder.getKey().hashCode(), failEvery) == 0;
+    }
+
+    @Override
+    public void deliver(Reminder reminder) throws IOException {
+        try {
+            Thread.sleep(latencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted delivering " + reminder.getKey());
+        }
+        int attempt = attempts.computeIfAbsent(reminder.getKey(), k -> new AtomicInteger()).incrementAndGet();
+        if (isRejectedAtFirst(reminder) && attempt <= failuresEach) {
+            rejected.incrementAndGet();
+            throw new IOException("Gateway rejected " + reminder.getKey());
+        }
+        accepted.incrementAndGet();
+    }
+
+    /** @return the number of deliveries accepted */
+    public long getAcceptedCount() {
+        return accepted.get();
+    }
+
+    /** @return the number of deliveries that failed */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+}
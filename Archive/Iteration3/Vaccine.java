@@ -3,19 +3,22 @@ import java.util.ArrayList;
 /**
  * Vaccine class extending Dosable
  *
+ * A vaccine's details never change once it is made. Two Vaccine objects are equal when
+ * they have the same catalogue ID; get the one shared object from a VaccineCatalogue.
+ *
  * @author Milo Keys, Ellis Fitzgerald, & Gabrielle Akers
  * @version April 25, 2025
  */
 public class Vaccine extends Dosable {
-    int ID;
-    String name;
-    String brand;
-    double dosageML;
-    int numOfDosage;
-    int interval; //in days
-    String adminMode;
-    String adminLocation;
-    ArrayList<String> diseasesTreated;
+    final int ID;
+    final String name;
+    final String brand;
+    final double dosageML;
+    final int numOfDosage;
+    final int interval; //in days
+    final String adminMode;
+    final String adminLocation;
+    final ArrayList<String> diseasesTreated;
 
     /**
      * Constructs a vaccine
@@ -109,6 +112,25 @@ public class Vaccine extends Dosable {
         return diseasesTreated;
     }
 
+    /**
+     * Vaccines are the same vaccine when they have the same catalogue ID.
+     *
+     * @param o the object to compare with
+     * @return true if o is a Vaccine with the same ID
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Vaccine && ((Vaccine) o).ID == ID;
+    }
+
+    /**
+     * @return a hash of the catalogue ID
+     */
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(ID);
+    }
+
     /**
      * Returns a comprehensive string representation of the Vaccine object,
      * including both vaccine-specific information and relevant dosage information
@@ -0,0 +1,365 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * VaccineCatalogue.java
+ * The one Vaccine object for each vaccine in the catalogue, looked up by ID or name.
+ *
+ * Everything that needs a Vaccine, the due queue, eligibility, visits loaded from the log,
+ * gets it here, so a vaccine is in memory once and the same object is used everywhere.
+ * The catalogue is an immutable snapshot behind a volatile reference: readers never lock,
+ * and a reload builds a whole new snapshot aside and swaps it in. A vaccine whose catalogue
+ * row has not changed keeps its object across reloads; only changed rows get new ones.
+ *
+ * The catalogue can be loaded from a vaccines.csv file (the Inventory format) and reloaded
+ * when the file changes, or kept in step with an Inventory as the clinic edits it.
+ *
+ * @author Milo Keys
+ * @version October 18, 2026
+ */
+public class VaccineCatalogue implements Closeable {
+
+    /**
+     * Told after the catalogue has been replaced, e.g. to rebuild the due queue.
+     */
+    public interface Listener {
+        /**
+         * @param catalogue the catalogue, already holding the new vaccines
+         */
+        void catalogueChanged(VaccineCatalogue catalogue);
+    }
+
+    /**
+     * One version of the catalogue. Never changed once published.
+     */
+    private static final class Snapshot {
+        final List<Vaccine> vaccines;
+        final Map<Integer, Vaccine> byId;
+        final Map<String, Vaccine> byName;
+        final long modified;
+        final long size;
+
+        Snapshot(List<Vaccine> vaccines, long modified, long size) {
+            this.vaccines = Collections.unmodifiableList(vaccines);
+            Map<Integer, Vaccine> ids = new HashMap<>();
+            Map<String, Vaccine> names = new HashMap<>();
+            for (Vaccine vaccine : vaccines) {
+                ids.put(vaccine.getID(), vaccine);
+                if (vaccine.getName() != null) {
+                    names.putIfAbsent(vaccine.getName().toLowerCase(Locale.ROOT), vaccine);
+                }
+            }
+            this.byId = ids;
+            this.byName = names;
+            this.modified = modified;
+            this.size = size;
+        }
+    }
+
+    private static final Snapshot EMPTY = new Snapshot(new ArrayList<>(), -1, -1);
+
+    private final Path file;
+    private volatile Snapshot snapshot = EMPTY;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService watcher;
+    private volatile int reloadFailures;
+
+    /**
+     * Creates an empty catalogue, to be filled from an Inventory with update.
+     */
+    public VaccineCatalogue() {
+        this.file = null;
+    }
+
+    /**
+     * Creates a catalogue backed by a vaccines.csv file and loads it.
+     *
+     * @param file the catalogue file
+     * @throws IOException if the file cannot be read
+     */
+    public VaccineCatalogue(Path file) throws IOException {
+        this.file = file;
+        reload();
+    }
+
+    /**
+     * Finds a vaccine by catalogue ID.
+     *
+     * @param id the catalogue ID
+     * @return the vaccine, or null if there is none with that ID
+     */
+    public Vaccine get(int id) {
+        return snapshot.byId.get(id);
+    }
+
+    /**
+     * Finds a vaccine by name, ignoring case.
+     *
+     * @param name the vaccine name
+     * @return the vaccine, or null if there is none with that name
+     */
+    public Vaccine get(String name) {
+        return name == null ? null : snapshot.byName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Gets every vaccine in catalogue order. The list is a snapshot and does not change
+     * when the catalogue is reloaded.
+     *
+     * @return an unmodifiable list of the vaccines
+     */
+    public List<Vaccine> getVaccines() {
+        return snapshot.vaccines;
+    }
+
+    /** @return the number of vaccines in the catalogue */
+    public int size() {
+        return snapshot.vaccines.size();
+    }
+
+    /**
+     * Gets the catalogue's object for a vaccine read from elsewhere, e.g. a saved log, so
+     * every copy of a vaccine becomes the same object.
+     *
+     * @param vaccine a vaccine
+     * @return the catalogue's vaccine with the same ID, or the vaccine itself if the
+     *         catalogue has none
+     */
+    public Vaccine intern(Vaccine vaccine) {
+        if (vaccine == null) {
+            return null;
+        }
+        Vaccine canonical = snapshot.byId.get(vaccine.getID());
+        return canonical == null ? vaccine : canonical;
+    }
+
+    /**
+     * Replaces the catalogue with the items of an inventory.
+     *
+     * @param inventory the vaccine inventory
+     */
+    public void update(Inventory inventory) {
+        publish(inventory.getItems(), -1, -1);
+    }
+
+    /**
+     * Reads the catalogue file again and swaps the new catalogue in.
+     *
+     * @throws IOException if the file cannot be read; the catalogue is left as it was
+     * @throws IllegalStateException if the catalogue has no file
+     */
+    public void reload() throws IOException {
+        if (file == null) {
+            throw new IllegalStateException("The catalogue has no file to reload");
+        }
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Inventory inventory = new Inventory("vaccine");
+        inventory.load(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+        publish(inventory.getItems(), attributes.lastModifiedTime().toMillis(), attributes.size());
+    }
+
+    /**
+     * Reloads the catalogue file if it has changed since it was last read.
+     *
+     * @return true if it was reloaded
+     * @throws IOException if the file cannot be read
+     */
+    public boolean refresh() throws IOException {
+        if (file == null) {
+            return false;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Snapshot current = snapshot;
+        if (attributes.lastModifiedTime().toMillis() == current.modified && attributes.size() == current.size) {
+            return false;
+        }
+        reload();
+        return true;
+    }
+
+    /**
+     * Checks the catalogue file for changes every so often on a background thread, and
+     * reloads it when it changes. A file that cannot be read, e.g. halfway through being
+     * saved, is counted as a failure and tried again next time.
+     *
+     * @param periodMillis how often to check
+     */
+    public synchronized void watch(long periodMillis) {
+        if (watcher != null) {
+            return;
+        }
+        watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "vaccine-catalogue-watch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (IOException | RuntimeException e) {
+                reloadFailures++;
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** @return the number of times the watcher could not reload the file */
+    public int getReloadFailures() {
+        return reloadFailures;
+    }
+
+    /**
+     * Registers a listener for catalogue changes.
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Stops watching the catalogue file.
+     */
+    @Override
+    public synchronized void close() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+
+    /**
+     * Builds a snapshot from catalogue items, keeping the vaccines of unchanged rows, and swaps it in.
+     */
+    private void publish(List<Inventory.Item> items, long modified, long size) {
+        synchronized (this) {
+            Snapshot current = snapshot;
+            List<Vaccine> vaccines = new ArrayList<>(items.size());
+            for (Inventory.Item item : items) {
+                Vaccine existing = current.byId.get(item.getId());
+                vaccines.add(existing != null && matches(existing, item) ? existing : item.toVaccine());
+            }
+            snapshot = new Snapshot(vaccines, modified, size);
+        }
+        for (Listener listener : listeners) {
+            listener.catalogueChanged(this);
+        }
+    }
+
+    private static boolean matches(Vaccine vaccine, Inventory.Item item) {
+        return Objects.equals(vaccine.getName(), item.getName())
+                && Objects.equals(vaccine.getBrand(), item.getBrand())
+                && vaccine.getDosageML() == item.getDosage()
+                && vaccine.getNumOfDosage() == item.getDosageCount()
+                && vaccine.getInterval() == item.getIntervalDays()
+                && vaccine.getMinAge() == item.getMinAge()
+                && vaccine.getMinWeightKG() == item.getMinWeightKG()
+                && Objects.equals(vaccine.getDiseasesTreated(), item.getTreats());
+    }
+
+    /**
+     * Looks vaccines up on several threads while the catalogue file is rewritten and
+     * reloaded underneath them, and checks that unchanged vaccines keep their objects.
+     *
+     * @param args unused
+     * @throws Exception if the file cannot be written
+     */
+    public static void main(String[] args) throws Exception {
+        Path file = Files.createTempFile("vaccines", ".csv");
+        String header = "id,name,brand,dosageml,dosage count,interval days,treats,stock,min_age,min_weight_kg\n";
+        StringBuilder rows = new StringBuilder(header);
+        for (int v = 1; v <= 40; v++) {
+            rows.append(v).append(",Vaccine ").append(v).append(",Generic,0.5,3,28,[Disease ").append(v)
+                .append("],100,0,0\n");
+        }
+        Files.write(file, rows.toString().getBytes(StandardCharsets.UTF_8));
+        VaccineCatalogue catalogue = new VaccineCatalogue(file);
+        Vaccine polio = catalogue.get(1);
+        Vaccine changing = catalogue.get(40);
+        List<Vaccine> before = catalogue.getVaccines();
+        Checks.checkEquals(40, catalogue.size(), "vaccines read");
+        Checks.check(catalogue.get("VACCINE 7") == catalogue.get(7), "lookup by name ignores case");
+        Checks.check(catalogue.intern(new Vaccine(1, "Vaccine 1", "Generic", 0.5, 3, 28, 0, "", "",
+                new ArrayList<>(), 0)) == polio, "copy of a vaccine interned to the catalogue's object");
+        Vaccine unknown = new Vaccine(99, "Unknown", "Generic", 0.5, 1, 0, 0, "", "", new ArrayList<>(), 0);
+        Checks.check(catalogue.intern(unknown) == unknown, "vaccine not in the catalogue interned to itself");
+        Checks.check(!catalogue.refresh(), "unchanged file not reloaded");
+        AtomicInteger changes = new AtomicInteger();
+        catalogue.addListener(c -> changes.incrementAndGet());
+
+        Thread[] readers = new Thread[4];
+        long[] lookups = new long[readers.length];
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<String> missing = new AtomicReference<>();
+        for (int t = 0; t < readers.length; t++) {
+            int id = t;
+            readers[t] = new Thread(() -> {
+                long n = 0;
+                while (!stop.get()) {
+                    for (int v = 1; v <= 40; v++) {
+                        if (catalogue.get(v) == null || catalogue.get("vaccine " + v) == null) {
+                            missing.compareAndSet(null, "Vaccine " + v);
+                        }
+                        n += 2;
+                    }
+                }
+                lookups[id] = n;
+            });
+            readers[t].start();
+        }
+        long start = System.nanoTime();
+        int reloads = 0;
+        while (System.nanoTime() - start < 1_000_000_000L) {
+            String changed = rows.toString().replace("40,Vaccine 40,Generic,0.5,3,28",
+                    "40,Vaccine 40,Generic,0.5," + (3 + reloads % 2) + ",28");
+            Files.write(file, changed.getBytes(StandardCharsets.UTF_8));
+            catalogue.reload();
+            reloads++;
+        }
+        stop.set(true);
+        long total = 0;
+        for (int t = 0; t < readers.length; t++) {
+            readers[t].join();
+            total += lookups[t];
+        }
+        System.out.printf("%d reloads while %d readers made %,d lookups%n", reloads, readers.length, total);
+        Checks.checkEquals(null, missing.get(), "vaccine missing during a reload");
+        Checks.checkEquals(reloads, changes.get(), "listener calls");
+        Checks.check(catalogue.get(1) == polio, "unchanged vaccine kept its object");
+        for (int v = 0; v < 39; v++) {
+            Checks.check(catalogue.getVaccines().get(v) == before.get(v), "unchanged vaccine " + (v + 1) + " kept its object");
+        }
+        Checks.check(catalogue.get(40) != changing, "changed vaccine has a new object");
+        Checks.checkEquals(3 + (reloads - 1) % 2, catalogue.get(40).getNumOfDosage(), "doses of the changed vaccine");
+        Checks.checkEquals(40, before.size(), "earlier snapshot left as it was");
+        Checks.check(before.get(39) == changing, "earlier snapshot keeps the old object");
+        Files.delete(file);
+        System.out.println("VaccineCatalogue checks passed");
+    }
+}
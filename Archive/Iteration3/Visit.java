@@ -1,64 +1,102 @@
 import java.util.Map;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
 
 /**
  * Visit.java
  * Visit class used by clinics when a patient comes in for a service.
  *
+ * The doses given on a visit are kept as two small arrays, the vaccines and their dose
+ * numbers, which are replaced rather than changed when a dose is added. A visit holds
+ * nothing of the patient's own dose counts, and can be read from any thread.
+ *
  * @author Ellis Fitzgerald & Gabrielle Akers
  * @version April 25, 2025
  */
 public class Visit{
     private ImmunizationPatient patient;
     private Date visitDate;
-    private ArrayList<Vaccine> dosesAdministered;
-    private Map<Vaccine, Integer> vaccineDoses; //this seems like a memory leak waiting to happen
+    private static final Vaccine[] NO_VACCINES = new Vaccine[0];
+    private static final int[] NO_DOSES = new int[0];
+
+    // Written numbers first and read vaccines first, so every vaccine a reader sees has its number
+    private volatile Vaccine[] vaccines = NO_VACCINES;
+    private volatile int[] doseNumbers = NO_DOSES;
     private String remarks;
+    // Given by the clinic when the visit is added, so a logged removal can name the visit
+    private int number;
+    private DoseListener doseListener;
+
+    /**
+     * Told when a dose is given on a visit, e.g. by the clinic that holds the visit, so a dose
+     * given after the visit was added is logged too. Doses put back from a saved register
+     * are not reported.
+     */
+    interface DoseListener {
+        /**
+         * @param visit         the visit the dose was given on
+         * @param vaccine       the vaccine given
+         * @param doseNumber    the dose number, 1 for the first dose
+         */
+        void doseAdded(Visit visit, Vaccine vaccine, int doseNumber);
+    }
     
     /**
      * Constructs a Visit instance with the specified patient and visit date.
-     * Initializes the dosesAdministered list and sets the vaccineDoses from the patient.
+     * No doses have been administered yet.
      *
      * @param patient the ImmunizationPatient associated with this visit
      * @param visitDate the date of the visit
+     * @throws NullPointerException if the patient is null
      */
     public Visit(ImmunizationPatient patient, Date visitDate) {
-        this.patient = patient;
+        this.patient = Objects.requireNonNull(patient, "A visit needs a patient");
         this.visitDate = visitDate;
-        this.dosesAdministered = new ArrayList<>();
-        this.vaccineDoses = patient.getVaccineDoses();
     }
         /**
      * Constructs a Visit instance with the specified patient and visit date.
-     * Initializes the dosesAdministered list and sets the vaccineDoses from the patient.
+     * No doses have been administered yet.
      *
      * @param patient the ImmunizationPatient associated with this visit
      * @param visitDate the date of the visit
      * @param remarks the remarks about a patient
+     * @throws NullPointerException if the patient is null
      */
     public Visit(ImmunizationPatient patient, Date visitDate, String remarks) {
-        this.patient = patient;
+        this.patient = Objects.requireNonNull(patient, "A visit needs a patient");
         this.visitDate = visitDate;
-        this.dosesAdministered = new ArrayList<>();
-        this.vaccineDoses = patient.getVaccineDoses();
         this.remarks = remarks;
     }
 
 
     /**
      * Adds vaccine doses to the patient if the vaccine is eligible to be administered.
-     * Iterates through the available vaccine doses, checks if each vaccine can be
-     * given to the patient using {@code isDosable}, and if so, adds the dose to the patient
-     * and records it in the dosesAdministered
+     * Goes through the vaccines the patient has already been given, checks if the next
+     * dose of each can be given using {@code isDosable}, and if so, adds the dose to the
+     * patient and records it on this visit
      */
     public void addDoses() {  	
-    	for(Vaccine vaccine : vaccineDoses.keySet()) {
-    		if(vaccine.isDosable(patient, vaccine)) {
-    			patient.addVaccineDoses(vaccine);
-    			dosesAdministered.add(vaccine);
+    	long day = EpochDays.of(visitDate);
+    	DoseCounts counts = patient.getDoseCounts();
+    	if(counts == null) {
+    		return;
+    	}
+    	List<Vaccine> due = new ArrayList<>(counts.size());
+    	for(int slot = 0; slot < counts.capacity(); slot++) {
+    		Vaccine vaccine = counts.getVaccineAt(slot);
+    		if(vaccine != null && Dosable.isDosable(patient, vaccine, day)) {
+    			due.add(vaccine);
     		}
     	}
+    	// Given after the check, so the counts are not changed while they are gone through
+    	for(Vaccine vaccine : due) {
+    		given(vaccine, patient.addVaccineDose(vaccine, day));
+    	}
     }
     /**
      * Adds vaccine doses to the patient if the vaccine is eligible to be administered.
@@ -67,16 +105,61 @@ public class Visit{
      * and records it in the dosesAdministered
      */
     public void AdminsterDose(Vaccine vaccine) {  	
-        patient.addVaccineDoses(vaccine);
-        dosesAdministered.add(vaccine);
+        given(vaccine, patient.addVaccineDose(vaccine, EpochDays.of(visitDate)));
+    }
+    /**
+     * Records a dose on this visit without counting it against the patient again,
+     * used when loading a saved register whose dose counts are already restored.
+     * Its dose number is found in the patient's dose history by the visit date.
+     *
+     * @param vaccine the vaccine that was administered
+     */
+    void restoreDose(Vaccine vaccine) {
+        long day = EpochDays.of(visitDate);
+        DoseHistory history = patient.getDoseHistory();
+        int doseNumber = 0;
+        for (int i = history == null ? -1 : history.size() - 1; i >= 0 && doseNumber == 0; i--) {
+            if (history.getVaccineId(i) == vaccine.getID() && history.getDay(i) == day) {
+                doseNumber = history.getDoseNumber(i);
+            }
+        }
+        record(vaccine, doseNumber > 0 ? doseNumber : Math.max(1, patient.getDoseNum(vaccine)));
     }
+
     /**
      * Returns the list of vaccine doses that have been administered to the patient.
      *
-     * @return an ArrayList of Vaccine objects that have been administered
+     * @return an unmodifiable List of Vaccine objects that have been administered
+     */
+    public List<Vaccine> getDosesAdministered(){
+    	return Collections.unmodifiableList(Arrays.asList(vaccines));
+    }
+
+    /**
+     * Gets which dose of its course a vaccine given on this visit was.
+     *
+     * @param vaccine the vaccine
+     * @return the dose number, 1 for the first dose, or 0 if it was not given on this visit
      */
-    public ArrayList<Vaccine> getDosesAdministered(){
-    	return dosesAdministered;
+    public int getDoseNumber(Vaccine vaccine) {
+        Vaccine[] given = vaccines;
+        int[] numbers = doseNumbers;
+        for (int i = given.length - 1; i >= 0; i--) {
+            if (given[i].getID() == vaccine.getID()) {
+                return numbers[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets which dose of its course a dose given on this visit was.
+     *
+     * @param i the position of the dose in getDosesAdministered()
+     * @return the dose number, 1 for the first dose
+     */
+    public int getDoseNumberAt(int i) {
+        return doseNumbers[i];
     }
 
     /**
@@ -92,9 +175,10 @@ public class Visit{
      * Sets the patient associated with this visit.
      *
      * @param patient the ImmunizationPatient to set
+     * @throws NullPointerException if the patient is null
      */
     public void setPatient(ImmunizationPatient patient) {
-        this.patient = patient;
+        this.patient = Objects.requireNonNull(patient, "A visit needs a patient");
     }
 
     /**
@@ -134,11 +218,58 @@ public class Visit{
     }
 
     /**
-     * Gets the map of vaccine doses associated with this visit.
+     * Gets the number the clinic gave this visit when it was added. Numbers are never
+     * reused, so unlike the date and remarks they tell two visits apart.
      *
-     * @return the Map of Vaccine to Integer representing vaccine doses
+     * @return the visit number, or 0 if the visit has not been added to a clinic
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    void setNumber(int number) {
+        this.number = number;
+    }
+
+    /**
+     * Sets who is told when a dose is given on this visit, replacing any earlier listener
+     *
+     * @param listener      the listener, or null for none
+     */
+    void setDoseListener(DoseListener listener) {
+        this.doseListener = listener;
+    }
+
+    /**
+     * Gets the doses given on this visit with their dose numbers.
+     *
+     * @return a new Map of each Vaccine given to the dose number it was
      */
     public Map<Vaccine, Integer> getVaccineDoses() {
-        return vaccineDoses;
+        Vaccine[] given = vaccines;
+        int[] numbers = doseNumbers;
+        Map<Vaccine, Integer> doses = new HashMap<>();
+        for (int i = 0; i < given.length; i++) {
+            doses.put(given[i], numbers[i]);
+        }
+        return doses;
+    }
+
+    private void given(Vaccine vaccine, int doseNumber) {
+        record(vaccine, doseNumber);
+        DoseListener listener = doseListener;
+        if (listener != null) {
+            listener.doseAdded(this, vaccine, doseNumber);
+        }
+    }
+
+    private synchronized void record(Vaccine vaccine, int doseNumber) {
+        int n = vaccines.length;
+        int[] numbers = Arrays.copyOf(doseNumbers, n + 1);
+        numbers[n] = doseNumber;
+        doseNumbers = numbers;
+        Vaccine[] given = Arrays.copyOf(vaccines, n + 1);
+        given[n] = vaccine;
+        vaccines = given;
     }
 }
\ No newline at end of file